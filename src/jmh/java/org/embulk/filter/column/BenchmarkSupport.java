@@ -0,0 +1,123 @@
+/*
+ * Copyright 2026 The Embulk project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.embulk.filter.column;
+
+import org.embulk.config.ConfigLoader;
+import org.embulk.config.ConfigSource;
+import org.embulk.filter.column.ColumnFilterPlugin.PluginTask;
+import org.embulk.spi.ExecInternal;
+import org.embulk.spi.Page;
+import org.embulk.spi.PageOutput;
+import org.embulk.test.EmbulkTestRuntime;
+import org.embulk.util.config.ConfigMapper;
+import org.embulk.util.config.ConfigMapperFactory;
+import org.junit.runner.Description;
+import org.junit.runners.model.Statement;
+
+import java.util.List;
+
+/**
+ * Embulk runtime for benchmarks, which run outside of JUnit.
+ */
+final class BenchmarkSupport
+{
+    private static final ConfigMapperFactory CONFIG_MAPPER_FACTORY = ConfigMapperFactory
+            .builder()
+            .addDefaultModules()
+            .build();
+    private static final ConfigMapper CONFIG_MAPPER = CONFIG_MAPPER_FACTORY.createConfigMapper();
+
+    private BenchmarkSupport()
+    {
+    }
+
+    interface Setup
+    {
+        void run() throws Exception;
+    }
+
+    // Runs setup in the exec session of runtime, as EmbulkTestRuntime does for each test as a rule.
+    // Benchmark methods run without the session, so they should not call Exec.
+    static void runInSession(EmbulkTestRuntime runtime, final Setup setup)
+    {
+        try {
+            runtime.apply(new Statement()
+            {
+                @Override
+                public void evaluate() throws Throwable
+                {
+                    setup.run();
+                }
+            }, Description.EMPTY).evaluate();
+        }
+        catch (RuntimeException | Error ex) {
+            throw ex;
+        }
+        catch (Throwable ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    // Only in runInSession
+    static PluginTask taskFromYamlLines(List<String> lines)
+    {
+        return taskFromConfig(configFromYamlLines(lines));
+    }
+
+    // Only in runInSession
+    static ConfigSource configFromYamlLines(List<String> lines)
+    {
+        StringBuilder builder = new StringBuilder();
+        for (String line : lines) {
+            builder.append(line).append("\n");
+        }
+        ConfigLoader loader = new ConfigLoader(ExecInternal.getModelManager());
+        return loader.fromYamlString(builder.toString());
+    }
+
+    // Also out of runInSession, for benchmarks of mapping configs
+    static PluginTask taskFromConfig(ConfigSource config)
+    {
+        return CONFIG_MAPPER.map(config, PluginTask.class);
+    }
+
+    /**
+     * PageOutput which releases pages as soon as they are built, so that a benchmark measures
+     * building pages but not keeping them.
+     */
+    static class DiscardPageOutput implements PageOutput
+    {
+        long pages;
+
+        @Override
+        public void add(Page page)
+        {
+            pages++;
+            page.release();
+        }
+
+        @Override
+        public void finish()
+        {
+        }
+
+        @Override
+        public void close()
+        {
+        }
+    }
+}
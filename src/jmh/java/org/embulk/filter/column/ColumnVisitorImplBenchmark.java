@@ -0,0 +1,211 @@
+/*
+ * Copyright 2026 The Embulk project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.embulk.filter.column;
+
+import org.embulk.filter.column.ColumnFilterPlugin.PluginTask;
+import org.embulk.spi.Page;
+import org.embulk.spi.PageBuilder;
+import org.embulk.spi.PageReader;
+import org.embulk.spi.Schema;
+import org.embulk.spi.type.Type;
+import org.embulk.spi.type.Types;
+import org.embulk.test.EmbulkTestRuntime;
+import org.embulk.test.PageTestUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records per second of ColumnVisitorImpl over scalar columns, from PageReader to PageBuilder.
+ *
+ * Run with -prof gc (as ./gradlew jmh does) to see gc.alloc.rate.norm, bytes allocated per record.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class ColumnVisitorImplBenchmark
+{
+    static final int RECORDS = 1000;
+
+    @Param({"boolean", "long", "double", "string", "timestamp"})
+    public String type;
+
+    // percent of null values in input columns
+    @Param({"0", "50", "100"})
+    public int nullPercent;
+
+    // projection: columns of half, drop: drop_columns of half, add: add_columns of a tenth, rename: columns with src of all
+    @Param({"projection", "drop", "add", "rename"})
+    public String config;
+
+    // number of input columns
+    @Param({"10", "100", "1000"})
+    public int width;
+
+    private EmbulkTestRuntime runtime;
+    private Schema inputSchema;
+    private Object[] values;
+    private List<Page> pages;
+    private Schema outputSchema;
+    private PageReader pageReader;
+    private PageBuilder pageBuilder;
+    private ColumnVisitorImpl visitor;
+
+    @Setup(Level.Trial)
+    public void setUp()
+    {
+        runtime = new EmbulkTestRuntime();
+        BenchmarkSupport.runInSession(runtime, () -> {
+            Type columnType = columnType();
+            Schema.Builder builder = Schema.builder();
+            for (int i = 0; i < width; i++) {
+                builder.add("c" + i, columnType);
+            }
+            inputSchema = builder.build();
+            PluginTask task = BenchmarkSupport.taskFromYamlLines(configLines());
+
+            outputSchema = ColumnFilterPlugin.buildOutputSchema(task, inputSchema);
+            values = PageGenerator.builder(inputSchema)
+                    .nullRatio(nullPercent / 100.0)
+                    .stringCardinality(RECORDS)
+                    .build()
+                    .values(RECORDS);
+            pageReader = new PageReader(inputSchema);
+            pageBuilder = new PageBuilder(runtime.getBufferAllocator(), outputSchema, new BenchmarkSupport.DiscardPageOutput());
+            visitor = new ColumnVisitorImpl(task, inputSchema, outputSchema, pageReader, pageBuilder);
+        });
+    }
+
+    // PageReader releases pages which it has read, so that input pages are built again for each invocation.
+    @Setup(Level.Invocation)
+    public void buildPages()
+    {
+        BenchmarkSupport.runInSession(runtime, () -> {
+            pages = PageTestUtils.buildPage(runtime.getBufferAllocator(), inputSchema, values);
+        });
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown()
+    {
+        pageBuilder.close();
+        pageReader.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(RECORDS)
+    public void visitColumns()
+    {
+        for (Page page : pages) {
+            pageReader.setPage(page);
+            while (pageReader.nextRecord()) {
+                outputSchema.visitColumns(visitor);
+                pageBuilder.addRecord();
+            }
+        }
+        pageBuilder.flush();
+    }
+
+    private List<String> configLines()
+    {
+        List<String> lines = new ArrayList<>();
+        lines.add("type: column");
+        switch (config) {
+            case "projection":
+                lines.add("columns:");
+                for (int i = 0; i < width; i += 2) {
+                    lines.add(String.format("  - {name: c%d}", i));
+                }
+                break;
+            case "drop":
+                lines.add("drop_columns:");
+                for (int i = 0; i < width; i += 2) {
+                    lines.add(String.format("  - {name: c%d}", i));
+                }
+                break;
+            case "add":
+                lines.add("add_columns:");
+                for (int i = 0; i < Math.max(1, width / 10); i++) {
+                    lines.add(String.format("  - {name: added%d, type: %s, %s}", i, type, defaultOption()));
+                }
+                break;
+            case "rename":
+                lines.add("columns:");
+                for (int i = 0; i < width; i++) {
+                    lines.add(String.format("  - {name: r%d, src: c%d}", i, i));
+                }
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown config: " + config);
+        }
+        return lines;
+    }
+
+    private String defaultOption()
+    {
+        switch (type) {
+            case "boolean":
+                return "default: true";
+            case "long":
+                return "default: 1";
+            case "double":
+                return "default: 0.5";
+            case "string":
+                return "default: added";
+            case "timestamp":
+                return "default: \"2015-07-13\", format: \"%Y-%m-%d\"";
+            default:
+                throw new IllegalArgumentException("Unknown type: " + type);
+        }
+    }
+
+    private Type columnType()
+    {
+        switch (type) {
+            case "boolean":
+                return Types.BOOLEAN;
+            case "long":
+                return Types.LONG;
+            case "double":
+                return Types.DOUBLE;
+            case "string":
+                return Types.STRING;
+            case "timestamp":
+                return Types.TIMESTAMP;
+            default:
+                throw new IllegalArgumentException("Unknown type: " + type);
+        }
+    }
+}
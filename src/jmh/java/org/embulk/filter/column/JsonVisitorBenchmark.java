@@ -0,0 +1,228 @@
+/*
+ * Copyright 2026 The Embulk project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.embulk.filter.column;
+
+import org.embulk.filter.column.ColumnFilterPlugin.PluginTask;
+import org.embulk.spi.Column;
+import org.embulk.spi.Page;
+import org.embulk.spi.PageBuilder;
+import org.embulk.spi.PageReader;
+import org.embulk.spi.Schema;
+import org.embulk.test.EmbulkTestRuntime;
+import org.embulk.test.PageTestUtils;
+import org.msgpack.value.Value;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.embulk.spi.type.Types.JSON;
+
+/**
+ * Json values per second of JsonVisitor.visit over a generated document of a json column "doc".
+ *
+ * roundTrip is the baseline of getJson and setJson without the visitor, so that the overhead of
+ * the visitor is visitRoundTrip minus roundTrip. visit measures the visitor alone without pages.
+ * visitTask measures a visitor of a task, which counts into ColumnStats and reuses its stack for all values.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class JsonVisitorBenchmark
+{
+    static final int RECORDS = 16;
+
+    // shape of the document by PageGenerator
+    // nesting of maps under "doc", through the key "k0" of each map
+    @Param({"1", "5", "20"})
+    public int depth;
+
+    // keys of each map
+    @Param({"5", "500", "5000"})
+    public int width;
+
+    // elements of "doc.arr", each of which is {"k0": long, "k1": string}
+    @Param({"0", "1000", "100000"})
+    public int arrayLength;
+
+    // keep: columns of a few paths, drop: drop_columns of a few paths,
+    // wildcard: drop_columns of "doc.arr[*].k1", add: add_columns at the deepest map
+    @Param({"keep", "drop", "wildcard", "add"})
+    public String rules;
+
+    private EmbulkTestRuntime runtime;
+    private Schema inputSchema;
+    private Value document;
+    private Object[] values;
+    private List<Page> pages;
+    private Column inputColumn;
+    private Column outputColumn;
+    private PageReader pageReader;
+    private PageBuilder pageBuilder;
+    private JsonVisitor jsonVisitor;
+    // a visitor of a task, which counts into ColumnStats and reuses its stack
+    private JsonVisitor taskJsonVisitor;
+    private String rootPath;
+
+    @Setup(Level.Trial)
+    public void setUp()
+    {
+        runtime = new EmbulkTestRuntime();
+        BenchmarkSupport.runInSession(runtime, () -> {
+            inputSchema = Schema.builder().add("doc", JSON).build();
+            PluginTask task = BenchmarkSupport.taskFromYamlLines(configLines());
+            Schema outputSchema = ColumnFilterPlugin.buildOutputSchema(task, inputSchema);
+            PreparedPlan plan = new PreparedPlan(new ColumnPlan(task, inputSchema).compile(), inputSchema, outputSchema);
+
+            document = (Value) PageGenerator.builder(inputSchema)
+                    .jsonShape(depth, width, arrayLength)
+                    .build()
+                    .records(1).get(0)[0];
+            values = new Object[RECORDS];
+            for (int i = 0; i < RECORDS; i++) {
+                values[i] = document;
+            }
+            inputColumn = inputSchema.getColumn(0);
+            outputColumn = outputSchema.getColumn(0);
+            pageReader = new PageReader(inputSchema);
+            pageBuilder = new PageBuilder(runtime.getBufferAllocator(), outputSchema, new BenchmarkSupport.DiscardPageOutput());
+            jsonVisitor = plan.getJsonVisitor();
+            taskJsonVisitor = jsonVisitor.withStats(new ColumnStats(outputSchema));
+            rootPath = plan.getJsonPath(outputColumn);
+        });
+    }
+
+    // PageReader releases pages which it has read, so that input pages are built again for each invocation.
+    @Setup(Level.Invocation)
+    public void buildPages()
+    {
+        BenchmarkSupport.runInSession(runtime, () -> {
+            pages = PageTestUtils.buildPage(runtime.getBufferAllocator(), inputSchema, values);
+        });
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown()
+    {
+        pageBuilder.close();
+        pageReader.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(RECORDS)
+    public void roundTrip()
+    {
+        for (Page page : pages) {
+            pageReader.setPage(page);
+            while (pageReader.nextRecord()) {
+                pageBuilder.setJson(outputColumn, pageReader.getJson(inputColumn));
+                pageBuilder.addRecord();
+            }
+        }
+        pageBuilder.flush();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(RECORDS)
+    public void visitRoundTrip()
+    {
+        for (Page page : pages) {
+            pageReader.setPage(page);
+            while (pageReader.nextRecord()) {
+                pageBuilder.setJson(outputColumn, jsonVisitor.visit(rootPath, pageReader.getJson(inputColumn)));
+                pageBuilder.addRecord();
+            }
+        }
+        pageBuilder.flush();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(RECORDS)
+    public void visit(Blackhole blackhole)
+    {
+        for (int i = 0; i < RECORDS; i++) {
+            blackhole.consume(jsonVisitor.visit(rootPath, document));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(RECORDS)
+    public void visitTask(Blackhole blackhole)
+    {
+        for (int i = 0; i < RECORDS; i++) {
+            blackhole.consume(taskJsonVisitor.visit(rootPath, document));
+        }
+    }
+
+    // "$.doc.k0.k0" of depth 3
+    private String deepestMapPath()
+    {
+        StringBuilder path = new StringBuilder("$.doc");
+        for (int i = 1; i < depth; i++) {
+            path.append(".k0");
+        }
+        return path.toString();
+    }
+
+    private List<String> configLines()
+    {
+        List<String> lines = new ArrayList<>();
+        lines.add("type: column");
+        switch (rules) {
+            case "keep":
+                lines.add("columns:");
+                lines.add("  - {name: \"$.doc.k1\"}");
+                lines.add("  - {name: \"$.doc.arr\"}");
+                lines.add(String.format("  - {name: \"%s.k2\"}", deepestMapPath()));
+                break;
+            case "drop":
+                lines.add("drop_columns:");
+                lines.add("  - {name: \"$.doc.k1\"}");
+                lines.add(String.format("  - {name: \"%s.k2\"}", deepestMapPath()));
+                break;
+            case "wildcard":
+                lines.add("drop_columns:");
+                lines.add("  - {name: \"$.doc.arr[*].k1\"}");
+                break;
+            case "add":
+                lines.add("add_columns:");
+                lines.add(String.format("  - {name: \"%s.added\", type: string, default: added}", deepestMapPath()));
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown rules: " + rules);
+        }
+        return lines;
+    }
+}
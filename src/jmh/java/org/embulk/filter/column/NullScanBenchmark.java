@@ -0,0 +1,222 @@
+/*
+ * Copyright 2026 The Embulk project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.embulk.filter.column;
+
+import org.embulk.filter.column.ColumnFilterPlugin.PluginTask;
+import org.embulk.spi.Column;
+import org.embulk.spi.Page;
+import org.embulk.spi.PageBuilder;
+import org.embulk.spi.PageReader;
+import org.embulk.spi.Schema;
+import org.embulk.spi.type.Types;
+import org.embulk.test.EmbulkTestRuntime;
+import org.embulk.test.PageTestUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records per second of finding null cells of all columns in pages, by PageNulls and by PageReader.isNull,
+ * and of filling defaults of all columns with ColumnVisitorImpl by each of them. Nulls of nullPercent are
+ * scattered at random, so that few columns are all null or not null in a page at 95 percent.
+ *
+ * PageNulls reads null bitmaps by words with LittleEndian, which is of VarHandle on Java 17 and later in the
+ * multi-release JAR. Compare the results of JVMs by -jvm as:
+ *
+ * ./gradlew jmh -PjmhArgs="NullScanBenchmark -jvm /path/to/jdk8/bin/java"
+ * ./gradlew jmh -PjmhArgs="NullScanBenchmark -jvm /path/to/jdk17/bin/java"
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class NullScanBenchmark
+{
+    static final int RECORDS = 10000;
+
+    // number of input columns
+    @Param({"8", "64", "200"})
+    public int width;
+
+    // percent of null values in input columns
+    @Param({"0", "50", "95"})
+    public int nullPercent;
+
+    private EmbulkTestRuntime runtime;
+    private Schema inputSchema;
+    private Object[] values;
+    private List<Page> pages;
+    private PageNulls pageNulls;
+    private PageReader pageReader;
+    private Schema outputSchema;
+    private PageBuilder pageBuilder;
+    private ColumnVisitorImpl visitor;
+    private NullScanWindow nullScanWindow;
+
+    @Setup(Level.Trial)
+    public void setUp()
+    {
+        runtime = new EmbulkTestRuntime();
+        BenchmarkSupport.runInSession(runtime, () -> {
+            Schema.Builder builder = Schema.builder();
+            for (int i = 0; i < width; i++) {
+                builder.add("c" + i, Types.LONG);
+            }
+            inputSchema = builder.build();
+            values = PageGenerator.builder(inputSchema)
+                    .nullRatio(nullPercent / 100.0)
+                    .build()
+                    .values(RECORDS);
+            pageNulls = new PageNulls(inputSchema);
+            pageReader = new PageReader(inputSchema);
+
+            List<String> lines = new ArrayList<>();
+            lines.add("type: column");
+            lines.add("columns:");
+            for (int i = 0; i < width; i++) {
+                lines.add(String.format("  - {name: c%d, default: 1}", i));
+            }
+            PluginTask task = BenchmarkSupport.taskFromYamlLines(lines);
+            outputSchema = ColumnFilterPlugin.buildOutputSchema(task, inputSchema);
+            PreparedPlan plan = new PreparedPlan(new ColumnPlan(task, inputSchema).compile(), inputSchema, outputSchema);
+            pageBuilder = new PageBuilder(runtime.getBufferAllocator(), outputSchema, new BenchmarkSupport.DiscardPageOutput());
+            visitor = new ColumnVisitorImpl(plan, pageReader, pageBuilder, new ColumnStats(outputSchema));
+            nullScanWindow = new NullScanWindow(plan, inputSchema, outputSchema, NullScanWindow.DEFAULT_WINDOW_PAGES);
+        });
+    }
+
+    // PageReader releases pages which it has read, so that input pages are built again for each invocation.
+    @Setup(Level.Invocation)
+    public void buildPages()
+    {
+        BenchmarkSupport.runInSession(runtime, () -> {
+            pages = PageTestUtils.buildPage(runtime.getBufferAllocator(), inputSchema, values);
+        });
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown()
+    {
+        pageBuilder.close();
+        pageReader.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(RECORDS)
+    public long pageNulls()
+    {
+        long nulls = 0;
+        for (Page page : pages) {
+            if (!pageNulls.scan(page)) {
+                throw new IllegalStateException("Unexpected layout of a page");
+            }
+            for (int column = 0; column < width; column++) {
+                nulls += pageNulls.getNullCount(column);
+            }
+            // as PageReader does
+            page.release();
+        }
+        return nulls;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(RECORDS)
+    public long pageReader()
+    {
+        long nulls = 0;
+        for (Page page : pages) {
+            pageReader.setPage(page);
+            while (pageReader.nextRecord()) {
+                for (Column column : inputSchema.getColumns()) {
+                    if (pageReader.isNull(column)) {
+                        nulls++;
+                    }
+                }
+            }
+        }
+        return nulls;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(RECORDS)
+    public void fillDefaultsByPageReader()
+    {
+        for (Page page : pages) {
+            visitor.setPageNulls(null);
+            visitPage(page);
+        }
+    }
+
+    // scans every page, as the filter did before NullScanWindow
+    @Benchmark
+    @OperationsPerInvocation(RECORDS)
+    public void fillDefaultsByPageNulls()
+    {
+        for (Page page : pages) {
+            visitor.setPageNulls(pageNulls.scan(page) ? pageNulls : null);
+            visitPage(page);
+        }
+    }
+
+    // scans pages while NullScanWindow finds columns all null or not null, as the filter does
+    @Benchmark
+    @OperationsPerInvocation(RECORDS)
+    public void fillDefaultsByNullScanWindow()
+    {
+        for (Page page : pages) {
+            if (nullScanWindow.isScanning()) {
+                if (!pageNulls.scan(page)) {
+                    throw new IllegalStateException("Unexpected layout of a page");
+                }
+                visitor.setPageNulls(pageNulls);
+                nullScanWindow.addScannedPage(pageNulls);
+            }
+            else {
+                visitor.setPageNulls(null);
+                nullScanWindow.addSkippedPage();
+            }
+            visitPage(page);
+        }
+    }
+
+    private void visitPage(Page page)
+    {
+        pageReader.setPage(page);
+        while (pageReader.nextRecord()) {
+            outputSchema.visitColumns(visitor);
+            pageBuilder.addRecord();
+        }
+        pageBuilder.flush();
+    }
+}
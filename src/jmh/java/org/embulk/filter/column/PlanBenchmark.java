@@ -0,0 +1,195 @@
+/*
+ * Copyright 2026 The Embulk project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.embulk.filter.column;
+
+import org.embulk.config.ConfigSource;
+import org.embulk.filter.column.ColumnFilterPlugin.PluginTask;
+import org.embulk.spi.PageBuilder;
+import org.embulk.spi.PageReader;
+import org.embulk.spi.Schema;
+import org.embulk.test.EmbulkTestRuntime;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.embulk.spi.type.Types.JSON;
+import static org.embulk.spi.type.Types.LONG;
+
+/**
+ * Milliseconds of planning for many column specs, which must stay linear in the number of specs.
+ *
+ * manyColumns builds the output schema and a visitor of size columns with src and size add_columns.
+ * manyJsonPaths builds a JsonVisitor of size jsonpaths with the cache of compiled jsonpaths cleared,
+ * and manyJsonPathsCached with the cache of the last invocation, as tasks of a transaction do.
+ * inlineColumns and columnsFile map a config of size columns and size jsonpaths, inline in columns
+ * or in columns_file, and compile its plan.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class PlanBenchmark
+{
+    // number of column specs of each kind
+    @Param({"1000", "5000", "10000"})
+    public int size;
+
+    private EmbulkTestRuntime runtime;
+    private Schema inputSchema;
+    private PluginTask manyColumnsTask;
+    private Schema jsonInputSchema;
+    private Schema jsonOutputSchema;
+    private PluginTask manyJsonPathsTask;
+    private Schema columnsFileInputSchema;
+    private ConfigSource inlineColumnsConfig;
+    private ConfigSource columnsFileConfig;
+    private Path columnsFile;
+    private PageReader pageReader;
+    private PageBuilder pageBuilder;
+
+    @Setup(Level.Trial)
+    public void setUp()
+    {
+        runtime = new EmbulkTestRuntime();
+        BenchmarkSupport.runInSession(runtime, () -> {
+            List<String> lines = new ArrayList<>();
+            lines.add("type: column");
+            lines.add("columns:");
+            Schema.Builder builder = Schema.builder();
+            for (int i = 0; i < size; i++) {
+                builder.add("c" + i, LONG);
+                lines.add(String.format("  - {name: r%d, src: c%d}", i, i));
+            }
+            lines.add("add_columns:");
+            for (int i = 0; i < size; i++) {
+                lines.add(String.format("  - {name: a%d, type: long, default: %d}", i, i));
+            }
+            inputSchema = builder.build();
+            manyColumnsTask = BenchmarkSupport.taskFromYamlLines(lines);
+            pageReader = new PageReader(inputSchema);
+            Schema outputSchema = ColumnFilterPlugin.buildOutputSchema(manyColumnsTask, inputSchema);
+            pageBuilder = new PageBuilder(runtime.getBufferAllocator(), outputSchema, new BenchmarkSupport.DiscardPageOutput());
+
+            List<String> jsonLines = new ArrayList<>();
+            jsonLines.add("type: column");
+            jsonLines.add("columns:");
+            for (int i = 0; i < size; i++) {
+                jsonLines.add(String.format("  - {name: $.json1.k%d.v}", i));
+            }
+            jsonInputSchema = Schema.builder().add("json1", JSON).build();
+            manyJsonPathsTask = BenchmarkSupport.taskFromYamlLines(jsonLines);
+            jsonOutputSchema = ColumnFilterPlugin.buildOutputSchema(manyJsonPathsTask, jsonInputSchema);
+
+            List<String> yamlLines = new ArrayList<>();
+            yamlLines.add("type: column");
+            yamlLines.add("columns:");
+            List<String> csvLines = new ArrayList<>();
+            csvLines.add("name,src");
+            Schema.Builder columnsFileBuilder = Schema.builder().add("json", JSON);
+            for (int i = 0; i < size; i++) {
+                columnsFileBuilder.add("c" + i, LONG);
+                yamlLines.add(String.format("  - {name: r%d, src: c%d}", i, i));
+                csvLines.add(String.format("r%d,c%d", i, i));
+                yamlLines.add(String.format("  - {name: \"$.json.k%d\"}", i));
+                csvLines.add(String.format("$.json.k%d,", i));
+            }
+            columnsFileInputSchema = columnsFileBuilder.build();
+            inlineColumnsConfig = BenchmarkSupport.configFromYamlLines(yamlLines);
+            columnsFile = Files.createTempFile("columns", ".csv");
+            Files.write(columnsFile, csvLines, StandardCharsets.UTF_8);
+            List<String> columnsFileLines = new ArrayList<>();
+            columnsFileLines.add("type: column");
+            columnsFileLines.add("columns_file: " + columnsFile.toAbsolutePath());
+            columnsFileConfig = BenchmarkSupport.configFromYamlLines(columnsFileLines);
+        });
+    }
+
+    // Clears the cache of compiled jsonpaths before each invocation of a benchmark which takes it
+    @State(Scope.Thread)
+    public static class ColdCache
+    {
+        @Setup(Level.Invocation)
+        public void clear()
+        {
+            JsonPathUtil.clearCache();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown()
+    {
+        pageBuilder.close();
+        pageReader.close();
+        try {
+            Files.deleteIfExists(columnsFile);
+        }
+        catch (IOException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    @Benchmark
+    public ColumnVisitorImpl manyColumns()
+    {
+        Schema outputSchema = ColumnFilterPlugin.buildOutputSchema(manyColumnsTask, inputSchema);
+        return new ColumnVisitorImpl(manyColumnsTask, inputSchema, outputSchema, pageReader, pageBuilder);
+    }
+
+    @Benchmark
+    public JsonVisitor manyJsonPaths(ColdCache coldCache)
+    {
+        return new JsonVisitor(manyJsonPathsTask, jsonInputSchema, jsonOutputSchema);
+    }
+
+    @Benchmark
+    public JsonVisitor manyJsonPathsCached()
+    {
+        return new JsonVisitor(manyJsonPathsTask, jsonInputSchema, jsonOutputSchema);
+    }
+
+    @Benchmark
+    public CompiledPlan inlineColumns()
+    {
+        return new ColumnPlan(BenchmarkSupport.taskFromConfig(inlineColumnsConfig), columnsFileInputSchema).compile();
+    }
+
+    @Benchmark
+    public CompiledPlan columnsFile()
+    {
+        return new ColumnPlan(BenchmarkSupport.taskFromConfig(columnsFileConfig), columnsFileInputSchema).compile();
+    }
+}
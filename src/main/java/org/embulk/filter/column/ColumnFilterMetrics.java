@@ -0,0 +1,204 @@
+/*
+ * Copyright 2026 The Embulk project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.embulk.filter.column;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * {@link ColumnFilterMetricsMXBean} of a transaction, shared by its tasks running in this JVM.
+ *
+ * It is registered as {@code org.embulk.filter.column:type=ColumnFilter,name=<transaction id>}
+ * by {@code transaction()} before running tasks, and unregistered after all tasks, so that counters
+ * are of the whole transaction even if tasks run one after another. Tasks add their {@link ColumnStats}
+ * per page to LongAdders, so that concurrent tasks do not contend.
+ *
+ * Tasks running in other JVMs, which have no transaction registered, count into metrics not registered.
+ */
+class ColumnFilterMetrics implements ColumnFilterMetricsMXBean
+{
+    private static final Logger logger = LoggerFactory.getLogger(ColumnFilterPlugin.class);
+    // transaction id => metrics of transactions running in this JVM
+    private static final HashMap<String, ColumnFilterMetrics> running = new HashMap<>();
+
+    private final String transactionId;
+    private final long startedNanos;
+    private ObjectName objectName;
+
+    private final AtomicInteger runningTasks = new AtomicInteger();
+    private final LongAdder records = new LongAdder();
+    private final LongAdder pagesIn = new LongAdder();
+    private final LongAdder pagesOut = new LongAdder();
+    private final LongAdder bytesIn = new LongAdder();
+    private final LongAdder bytesOut = new LongAdder();
+    private final LongAdder defaultFills = new LongAdder();
+    private final LongAdder jsonNodesVisited = new LongAdder();
+
+    private ColumnFilterMetrics(String transactionId)
+    {
+        this.transactionId = transactionId;
+        this.startedNanos = System.nanoTime();
+    }
+
+    // Called by transaction() before running tasks
+    static synchronized ColumnFilterMetrics register(String transactionId)
+    {
+        ColumnFilterMetrics metrics = new ColumnFilterMetrics(transactionId);
+        metrics.registerMBean();
+        running.put(transactionId, metrics);
+        return metrics;
+    }
+
+    // Called by transaction() after running tasks
+    static synchronized void unregister(String transactionId)
+    {
+        ColumnFilterMetrics metrics = running.remove(transactionId);
+        if (metrics != null && metrics.objectName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(metrics.objectName);
+            }
+            catch (JMException ex) {
+                logger.warn("Failed to unregister MBean {}", metrics.objectName, ex);
+            }
+        }
+    }
+
+    // @return metrics of the transaction in this JVM, or metrics not registered for a task of a transaction in another JVM
+    static synchronized ColumnFilterMetrics of(String transactionId)
+    {
+        ColumnFilterMetrics metrics = transactionId == null ? null : running.get(transactionId);
+        return metrics == null ? new ColumnFilterMetrics(transactionId) : metrics;
+    }
+
+    // Called on open() and close() of each task
+    void startTask()
+    {
+        runningTasks.incrementAndGet();
+    }
+
+    void finishTask()
+    {
+        runningTasks.decrementAndGet();
+    }
+
+    private void registerMBean()
+    {
+        try {
+            ObjectName name = ObjectName.getInstance(String.format("org.embulk.filter.column:type=ColumnFilter,name=%s", ObjectName.quote(transactionId)));
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            server.registerMBean(this, name);
+            this.objectName = name;
+        }
+        catch (JMException ex) {
+            // monitoring is not worth failing the load
+            logger.warn("Failed to register MBean of column filter", ex);
+        }
+    }
+
+    // @return null if not registered
+    ObjectName getObjectName()
+    {
+        return objectName;
+    }
+
+    // Called at the end of PageOutput.add with counts of the page
+    void addPage(long bytes, long records, long defaultFills, long jsonNodesVisited)
+    {
+        this.pagesIn.increment();
+        this.bytesIn.add(bytes);
+        this.records.add(records);
+        this.defaultFills.add(defaultFills);
+        this.jsonNodesVisited.add(jsonNodesVisited);
+    }
+
+    void addOutputPage(long bytes)
+    {
+        this.pagesOut.increment();
+        this.bytesOut.add(bytes);
+    }
+
+    @Override
+    public long getRecords()
+    {
+        return records.sum();
+    }
+
+    @Override
+    public long getPagesIn()
+    {
+        return pagesIn.sum();
+    }
+
+    @Override
+    public long getPagesOut()
+    {
+        return pagesOut.sum();
+    }
+
+    @Override
+    public long getBytesIn()
+    {
+        return bytesIn.sum();
+    }
+
+    @Override
+    public long getBytesOut()
+    {
+        return bytesOut.sum();
+    }
+
+    @Override
+    public long getDefaultFills()
+    {
+        return defaultFills.sum();
+    }
+
+    @Override
+    public long getJsonNodesVisited()
+    {
+        return jsonNodesVisited.sum();
+    }
+
+    @Override
+    public int getRunningTasks()
+    {
+        return runningTasks.get();
+    }
+
+    @Override
+    public long getElapsedMillis()
+    {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedNanos);
+    }
+
+    @Override
+    public double getPagesPerSecond()
+    {
+        long nanos = System.nanoTime() - startedNanos;
+        return nanos <= 0 ? 0.0 : pagesIn.sum() * 1.0e9 / nanos;
+    }
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright 2026 The Embulk project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.embulk.filter.column;
+
+/**
+ * Live counters of a running column filter, exposed through JMX.
+ *
+ * Counters are of the whole transaction, and reading them changes nothing, so that monitoring clients
+ * can compute rates of their own intervals from two reads of the counters.
+ */
+public interface ColumnFilterMetricsMXBean
+{
+    long getRecords();
+
+    long getPagesIn();
+
+    long getPagesOut();
+
+    long getBytesIn();
+
+    long getBytesOut();
+
+    long getDefaultFills();
+
+    long getJsonNodesVisited();
+
+    int getRunningTasks();
+
+    // milliseconds since the transaction started to run tasks
+    long getElapsedMillis();
+
+    // pages per second since the transaction started to run tasks
+    double getPagesPerSecond();
+}
@@ -16,11 +16,10 @@
 
 package org.embulk.filter.column;
 
-import io.github.medjed.jsonpathcompiler.expressions.path.PathCompiler;
 import org.embulk.config.ConfigException;
 import org.embulk.config.ConfigSource;
+import org.embulk.config.TaskReport;
 import org.embulk.config.TaskSource;
-import org.embulk.spi.Column;
 import org.embulk.spi.Exec;
 import org.embulk.spi.FilterPlugin;
 import org.embulk.spi.Page;
@@ -28,7 +27,6 @@ import org.embulk.spi.PageBuilder;
 import org.embulk.spi.PageOutput;
 import org.embulk.spi.PageReader;
 import org.embulk.spi.Schema;
-import org.embulk.spi.SchemaConfigException;
 import org.embulk.spi.type.Type;
 import org.embulk.util.config.Config;
 import org.embulk.util.config.ConfigDefault;
@@ -39,10 +37,9 @@ import org.embulk.util.config.TaskMapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
+import java.util.UUID;
 
 public class ColumnFilterPlugin implements FilterPlugin
 {
@@ -104,6 +101,15 @@ public class ColumnFilterPlugin implements FilterPlugin
         @ConfigDefault("[]")
         public List<ColumnConfig> getDropColumns();
 
+        // CSV or JSON Lines file of columns, for tens of thousands of columns
+        @Config("columns_file")
+        @ConfigDefault("null")
+        public Optional<String> getColumnsFile();
+
+        @Config("drop_columns_file")
+        @ConfigDefault("null")
+        public Optional<String> getDropColumnsFile();
+
         // From org.embulk.spi.time.TimestampParser.Task.
         @Config("default_timezone")
         @ConfigDefault("\"UTC\"")
@@ -118,6 +124,78 @@ public class ColumnFilterPlugin implements FilterPlugin
         @Config("default_date")
         @ConfigDefault("\"1970-01-01\"")
         String getDefaultDate();
+
+        // Measures time in PageOutput.add and finish, which costs System.nanoTime() per page and json value
+        @Config("instrument")
+        @ConfigDefault("false")
+        boolean getInstrument();
+
+        // Logs the compiled plan in transaction(), and cost of the first records in each task
+        @Config("explain")
+        @ConfigDefault("false")
+        boolean getExplain();
+
+        @Config("explain_sample_records")
+        @ConfigDefault("1000")
+        int getExplainSampleRecords();
+
+        // Logs the slowest json values of each task to visit, with the number of them to log
+        @Config("slow_json_samples")
+        @ConfigDefault("0")
+        int getSlowJsonSamples();
+
+        // Measures CPU time and allocated bytes of add() and finish() with ThreadMXBean
+        @Config("account_resources")
+        @ConfigDefault("false")
+        boolean getAccountResources();
+
+        // Decides whether null cells of pages are scanned ahead for default values by windows of adaptive_sample_pages pages,
+        // instead of NullScanWindow.DEFAULT_WINDOW_PAGES
+        @Config("adaptive")
+        @ConfigDefault("false")
+        boolean getAdaptive();
+
+        @Config("adaptive_sample_pages")
+        @ConfigDefault("4")
+        int getAdaptiveSamplePages();
+
+        // Limits of json values, checked before jsonpaths. Values over them are handled by json_limit_action.
+        @Config("max_json_bytes")
+        @ConfigDefault("null")
+        Optional<Long> getMaxJsonBytes();
+
+        @Config("max_json_depth")
+        @ConfigDefault("null")
+        Optional<Integer> getMaxJsonDepth();
+
+        @Config("max_array_elements")
+        @ConfigDefault("null")
+        Optional<Integer> getMaxArrayElements();
+
+        // truncate, default, or pass_through
+        @Config("json_limit_action")
+        @ConfigDefault("\"truncate\"")
+        String getJsonLimitAction();
+
+        // Time budget of visiting each json value by jsonpaths. Values over it are handled by json_budget_action.
+        @Config("json_time_budget_ms")
+        @ConfigDefault("null")
+        Optional<Long> getJsonTimeBudgetMs();
+
+        // pass_through, set_null, or default
+        @Config("json_budget_action")
+        @ConfigDefault("\"default\"")
+        String getJsonBudgetAction();
+
+        // Compiled in transaction(), and restored in open() of each task
+        CompiledPlan getCompiledPlan();
+
+        void setCompiledPlan(CompiledPlan compiledPlan);
+
+        // Tasks commit their ColumnStats with this id
+        String getTransactionId();
+
+        void setTransactionId(String transactionId);
     }
 
     @Override
@@ -127,9 +205,38 @@ public class ColumnFilterPlugin implements FilterPlugin
         final PluginTask task = CONFIG_MAPPER.map(config, PluginTask.class);
 
         configure(task);
-        Schema outputSchema = buildOutputSchema(task, inputSchema);
+        long compileCount = JsonPathUtil.getCompileCount();
+        long cacheHitCount = JsonPathUtil.getCacheHitCount();
+        Object planCompiledEvent = FlightEvents.beginPlanCompiled();
+        ColumnPlan plan = new ColumnPlan(task, inputSchema);
+        Schema outputSchema = plan.getOutputSchema();
+        task.setCompiledPlan(plan.compile());
+        FlightEvents.commitPlanCompiled(planCompiledEvent, outputSchema.getColumnCount(), task.getCompiledPlan().getJsonShouldVisit().size());
+        logger.debug("Compiled {} jsonpaths, and reused {} compiled jsonpaths to plan",
+                JsonPathUtil.getCompileCount() - compileCount, JsonPathUtil.getCacheHitCount() - cacheHitCount);
+        if (task.getExplain()) {
+            for (String line : plan.explain(task.getCompiledPlan())) {
+                logger.info("explain: {}", line);
+            }
+        }
 
-        control.run(task.dump(), outputSchema);
+        task.setTransactionId(UUID.randomUUID().toString());
+        ColumnStats.begin(task.getTransactionId());
+        ColumnFilterMetrics.register(task.getTransactionId());
+        try {
+            control.run(task.dump(), outputSchema);
+        }
+        finally {
+            ColumnFilterMetrics.unregister(task.getTransactionId());
+            List<TaskReport> taskReports = ColumnStats.collect(task.getTransactionId());
+            if (!taskReports.isEmpty()) {
+                ColumnStats stats = new ColumnStats(outputSchema, task.getInstrument(), task.getAccountResources());
+                for (TaskReport taskReport : taskReports) {
+                    stats.merge(taskReport);
+                }
+                stats.log(logger, String.format("Total of %d tasks", taskReports.size()));
+            }
+        }
     }
 
     private void configure(PluginTask task)
@@ -137,157 +244,211 @@ public class ColumnFilterPlugin implements FilterPlugin
         if (task.getColumns().size() > 0 && task.getDropColumns().size() > 0) {
             throw new ConfigException("Either of \"columns\", \"drop_columns\" can be specified.");
         }
+        boolean hasColumns = task.getColumns().size() > 0 || task.getColumnsFile().isPresent();
+        boolean hasDropColumns = task.getDropColumns().size() > 0 || task.getDropColumnsFile().isPresent();
+        if (hasColumns && hasDropColumns) {
+            throw new ConfigException("Either of \"columns\" (\"columns_file\"), \"drop_columns\" (\"drop_columns_file\") can be specified.");
+        }
+        if (task.getAdaptiveSamplePages() < 0) {
+            throw new ConfigException("\"adaptive_sample_pages\" must not be negative.");
+        }
+        JsonLimits.of(task); // validates limits
+        JsonBudget.of(task); // validates the budget
     }
 
     static Schema buildOutputSchema(PluginTask task, Schema inputSchema)
     {
-        List<ColumnConfig> columns = task.getColumns();
-        List<ColumnConfig> addColumns = task.getAddColumns();
-        List<ColumnConfig> dropColumns = task.getDropColumns();
-
-        // Automatically get column type from inputSchema for columns and dropColumns
-        List<Column> newColumns = new ArrayList<>();
-        int i = 0;
-        if (dropColumns.size() > 0) {
-            for (Column inputColumn : inputSchema.getColumns()) {
-                String name = inputColumn.getName();
-                boolean matched = false;
-                for (ColumnConfig dropColumn : dropColumns) {
-                    // skip json path notation to build outputSchema
-                    if (PathCompiler.isProbablyJsonPath(dropColumn.getName())) {
-                        continue;
+        return new ColumnPlan(task, inputSchema).getOutputSchema();
+    }
+
+    @Override
+    public PageOutput open(final TaskSource taskSource, final Schema inputSchema,
+            final Schema outputSchema, final PageOutput output)
+    {
+        final TaskMapper taskMapper = CONFIG_MAPPER_FACTORY.createTaskMapper();
+        final PluginTask task = taskMapper.map(taskSource, PluginTask.class);
+        final PreparedPlan plan = PreparedPlan.of(task.getCompiledPlan(), inputSchema, outputSchema);
+
+        final ColumnStats stats = new ColumnStats(outputSchema, task.getInstrument(), task.getAccountResources());
+        final ColumnFilterMetrics metrics = ColumnFilterMetrics.of(task.getTransactionId());
+        metrics.startTask();
+        final long sampleRecords = task.getExplain() ? task.getExplainSampleRecords() : 0L;
+        final SlowJsonSampler slowJsonSampler = task.getSlowJsonSamples() > 0 ? new SlowJsonSampler(task.getSlowJsonSamples()) : null;
+
+        return new PageOutput() {
+            private PageReader pageReader = new PageReader(inputSchema);
+            private PageBuilder pageBuilder = new PageBuilder(Exec.getBufferAllocator(), outputSchema, new PageOutput() {
+                @Override
+                public void add(Page page)
+                {
+                    int bytes = page.buffer().limit();
+                    stats.pagesOut++;
+                    stats.bytesOut += bytes;
+                    metrics.addOutputPage(bytes);
+                    long started = stats.isTimed() ? System.nanoTime() : 0L;
+                    long cpuNanos = stats.isAccounted() ? ThreadResources.currentThreadCpuTime() : -1L;
+                    long allocatedBytes = stats.isAccounted() ? ThreadResources.currentThreadAllocatedBytes() : -1L;
+                    output.add(page);
+                    if (stats.isTimed()) {
+                        stats.outputNanos += System.nanoTime() - started;
                     }
-                    if (dropColumn.getName().equals(name)) {
-                        matched = true;
-                        break;
+                    if (stats.isAccounted()) {
+                        stats.excludeResourcesSince(cpuNanos, allocatedBytes);
                     }
                 }
-                if (! matched) {
-                    Column outputColumn = new Column(i++, name, inputColumn.getType());
-                    newColumns.add(outputColumn);
-                }
-            }
-        }
-        else if (columns.size() > 0) {
-            for (ColumnConfig column : columns) {
-                // skip json path notation to build output schema
-                if (PathCompiler.isProbablyJsonPath(column.getName())) {
-                    continue;
-                }
-                if (column.getSrc().isPresent() && PathCompiler.isProbablyJsonPath(column.getSrc().get())) {
-                    continue;
-                }
 
-                String name                   = column.getName();
-                Optional<Type>   type         = column.getType();
-                Optional<Object> defaultValue = column.getDefault();
-                Optional<String> src          = column.getSrc();
-
-                String srcName = src.isPresent() ? src.get() : name;
-                Column inputColumn;
-                try {
-                    inputColumn = inputSchema.lookupColumn(srcName);
+                @Override
+                public void finish()
+                {
+                    output.finish();
                 }
-                catch (SchemaConfigException ex) {
-                    inputColumn = null;
+
+                @Override
+                public void close()
+                {
+                    output.close();
                 }
-                if (inputColumn != null) { // filter or copy column
-                    Column outputColumn = new Column(i++, name, inputColumn.getType());
-                    newColumns.add(outputColumn);
+            });
+            private ColumnVisitorImpl visitor = newVisitor();
+            // null unless the plan fills default values of input columns, for which alone a scan pays
+            private PageNulls pageNulls = plan.hasDefaultsOfInputColumns() ? new PageNulls(inputSchema) : null;
+            private NullScanWindow nullScanWindow = pageNulls == null ? null : new NullScanWindow(plan, inputSchema, outputSchema,
+                    task.getAdaptive() ? task.getAdaptiveSamplePages() : NullScanWindow.DEFAULT_WINDOW_PAGES);
+            private boolean released = false;
+            // explain: true times the first sampleRecords records
+            private long sampledRecords = 0L;
+            private long sampledNanos = 0L;
+            private long sampledJsonNanos = 0L;
+
+            private ColumnVisitorImpl newVisitor()
+            {
+                ColumnVisitorImpl visitor = new ColumnVisitorImpl(plan, pageReader, pageBuilder, stats, slowJsonSampler);
+                visitor.setJsonLimits(JsonLimits.of(task));
+                visitor.setJsonBudget(JsonBudget.of(task));
+                return visitor;
+            }
+
+            private void scanNulls(Page page)
+            {
+                if (!nullScanWindow.isScanning()) {
+                    visitor.setPageNulls(null);
+                    nullScanWindow.addSkippedPage();
+                    return;
                 }
-                else if (type.isPresent() && defaultValue.isPresent()) { // add column
-                    Column outputColumn = new Column(i++, name, type.get());
-                    newColumns.add(outputColumn);
+                // falls back to pageReader.isNull if the page is not in the layout of PageNulls
+                if (pageNulls.scan(page)) {
+                    visitor.setPageNulls(pageNulls);
+                    nullScanWindow.addScannedPage(pageNulls);
                 }
                 else {
-                    throw new SchemaConfigException(String.format("columns: Column src '%s' is not found in inputSchema. Column '%s' does not have \"type\" and \"default\"", srcName, name));
+                    visitor.setPageNulls(null);
+                    nullScanWindow.addUnscannablePage();
                 }
             }
-        }
-        else {
-            for (Column column : inputSchema.getColumns()) {
-                Column outputColumn = new Column(i++, column.getName(), column.getType());
-                newColumns.add(outputColumn);
+
+            private void logSample()
+            {
+                logger.info("explain: sampled {} records: {} ns/record, {} ns/record in json columns",
+                        sampledRecords, sampledNanos / sampledRecords, sampledJsonNanos / sampledRecords);
             }
-        }
 
-        // Add columns to last. If you want to add to head or middle, you can use `columns` option
-        if (addColumns.size() > 0) {
-            for (ColumnConfig column : addColumns) {
-                // skip json path notation to build output schema
-                if (PathCompiler.isProbablyJsonPath(column.getName())) {
-                    continue;
+            @Override
+            public void finish()
+            {
+                long started = stats.isTimed() ? System.nanoTime() : 0L;
+                long outputNanos = stats.outputNanos;
+                long cpuNanos = stats.isAccounted() ? ThreadResources.currentThreadCpuTime() : -1L;
+                long allocatedBytes = stats.isAccounted() ? ThreadResources.currentThreadAllocatedBytes() : -1L;
+                pageBuilder.finish();
+                if (stats.isTimed()) {
+                    stats.finishNanos += System.nanoTime() - started - (stats.outputNanos - outputNanos);
                 }
-                if (column.getSrc().isPresent() && PathCompiler.isProbablyJsonPath(column.getSrc().get())) {
-                    continue;
+                if (stats.isAccounted()) {
+                    stats.addResourcesSince(cpuNanos, allocatedBytes);
                 }
-
-                String name                   = column.getName();
-                Optional<Type> type           = column.getType();
-                Optional<Object> defaultValue = column.getDefault();
-                Optional<String> src          = column.getSrc();
-
-                String srcName = null;
-                Column inputColumn = null;
-                if (src.isPresent()) {
-                    srcName = src.get();
-                    try {
-                        inputColumn = inputSchema.lookupColumn(srcName);
-                    }
-                    catch (SchemaConfigException ex) {
-                        inputColumn = null;
-                    }
+                if (sampledRecords > 0 && sampledRecords < sampleRecords) {
+                    logSample(); // fewer records than explain_sample_records
                 }
-                if (inputColumn != null) { // copy column
-                    Column outputColumn = new Column(i++, name, inputColumn.getType());
-                    newColumns.add(outputColumn);
+                if (slowJsonSampler != null) {
+                    slowJsonSampler.log(logger);
                 }
-                else if (type.isPresent() && defaultValue.isPresent()) { // add column
-                    Column outputColumn = new Column(i++, name, type.get());
-                    newColumns.add(outputColumn);
+                TaskReport taskReport = stats.toTaskReport();
+                if (!ColumnStats.commit(task.getTransactionId(), this, taskReport)) {
+                    stats.log(logger, "Task of a transaction in another JVM"); // not to be totaled by transaction()
                 }
-                else {
-                    throw new SchemaConfigException(String.format("add_columns: Column src '%s' is not found in inputSchema, Column '%s' does not have \"type\" and \"default\"", srcName, name));
+                else if (stats.isTimed() || stats.isAccounted() || logger.isDebugEnabled()) {
+                    stats.log(logger, "Task");
                 }
             }
-        }
-
-        return new Schema(Collections.unmodifiableList(newColumns));
-    }
-
-    @Override
-    public PageOutput open(final TaskSource taskSource, final Schema inputSchema,
-            final Schema outputSchema, final PageOutput output)
-    {
-        final TaskMapper taskMapper = CONFIG_MAPPER_FACTORY.createTaskMapper();
-        final PluginTask task = taskMapper.map(taskSource, PluginTask.class);
-
-        return new PageOutput() {
-            private PageReader pageReader = new PageReader(inputSchema);
-            private PageBuilder pageBuilder = new PageBuilder(Exec.getBufferAllocator(), outputSchema, output);
-            private ColumnVisitorImpl visitor = new ColumnVisitorImpl(task, inputSchema, outputSchema, pageReader, pageBuilder);
 
             @Override
-            public void finish()
+            public void close()
             {
-                pageBuilder.finish();
+                try {
+                    pageBuilder.close();
+                }
+                finally {
+                    if (!released) {
+                        released = true;
+                        metrics.finishTask();
+                    }
+                }
             }
 
-            @Override
-            public void close()
+            private void addSampledRecord()
             {
-                pageBuilder.close();
+                long jsonNanos = stats.jsonNanos;
+                long started = System.nanoTime();
+                visitor.setTimingJson(true);
+                outputSchema.visitColumns(visitor);
+                pageBuilder.addRecord();
+                visitor.setTimingJson(stats.isTimed());
+                sampledNanos += System.nanoTime() - started;
+                sampledJsonNanos += stats.jsonNanos - jsonNanos;
+                stats.records++;
+                if (++sampledRecords == sampleRecords) {
+                    logSample();
+                }
             }
 
             @Override
             public void add(Page page)
             {
+                Object pageTransformedEvent = FlightEvents.beginPageTransformed();
+                long started = stats.isTimed() ? System.nanoTime() : 0L;
+                long outputNanos = stats.outputNanos;
+                long cpuNanos = stats.isAccounted() ? ThreadResources.currentThreadCpuTime() : -1L;
+                long allocatedBytes = stats.isAccounted() ? ThreadResources.currentThreadAllocatedBytes() : -1L;
+                long records = stats.records;
+                long defaults = stats.defaultsTotal;
+                long jsonNodesVisited = stats.jsonNodesVisitedTotal;
+                int bytes = page.buffer().limit();
+                stats.pagesIn++;
+                stats.bytesIn += bytes;
+                if (pageNulls != null) {
+                    scanNulls(page);
+                }
                 pageReader.setPage(page);
 
                 while (pageReader.nextRecord()) {
+                    if (sampledRecords < sampleRecords) {
+                        addSampledRecord();
+                        continue;
+                    }
                     outputSchema.visitColumns(visitor);
                     pageBuilder.addRecord();
+                    stats.records++;
+                }
+                metrics.addPage(bytes, stats.records - records, stats.defaultsTotal - defaults,
+                        stats.jsonNodesVisitedTotal - jsonNodesVisited);
+                if (stats.isTimed()) {
+                    // excludes time of the next plugin to take flushed pages
+                    stats.addPageNanos(System.nanoTime() - started - (stats.outputNanos - outputNanos));
+                }
+                if (stats.isAccounted()) {
+                    stats.addResourcesSince(cpuNanos, allocatedBytes);
                 }
+                FlightEvents.commitPageTransformed(pageTransformedEvent, stats.records - records, bytes);
             }
         };
     }
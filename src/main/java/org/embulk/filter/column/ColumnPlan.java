@@ -0,0 +1,408 @@
+/*
+ * Copyright 2026 The Embulk project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.embulk.filter.column;
+
+import io.github.medjed.jsonpathcompiler.expressions.Utils;
+import io.github.medjed.jsonpathcompiler.expressions.path.PathCompiler;
+import org.embulk.filter.column.ColumnFilterPlugin.PluginTask;
+import org.embulk.spi.Column;
+import org.embulk.spi.Schema;
+import org.embulk.spi.SchemaConfigException;
+import org.embulk.spi.type.JsonType;
+import org.embulk.spi.type.Type;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Name-indexed view of {@code columns}, {@code add_columns}, {@code drop_columns} and the input schema.
+ *
+ * Building the output schema, the output => input column map and the output => default map all
+ * look columns up by name. Doing it through this index keeps them linear in the number of columns.
+ */
+class ColumnPlan
+{
+    private final PluginTask task;
+    private final Schema inputSchema;
+    private final Schema outputSchema;
+    // columns, add_columns, and drop_columns including columns_file and drop_columns_file
+    private final List<ColumnSpec> columns;
+    private final List<ColumnSpec> addColumns;
+    private final List<ColumnSpec> dropColumns;
+    // input column name => first input column of the name, same as Schema#lookupColumn
+    private final HashMap<String, Column> inputColumnsByName = new HashMap<>();
+    // name => first column config of the name
+    private final HashMap<String, ColumnSpec> columnsByName = new HashMap<>();
+    private final HashMap<String, ColumnSpec> addColumnsByName = new HashMap<>();
+    // name => src of the first column config of the name which has src
+    private final HashMap<String, String> columnsSrcByName = new HashMap<>();
+    private final HashMap<String, String> addColumnsSrcByName = new HashMap<>();
+    // non json path names of drop_columns
+    private final HashSet<String> dropColumnNames = new HashSet<>();
+
+    ColumnPlan(PluginTask task, Schema inputSchema)
+    {
+        this.task = task;
+        this.inputSchema = inputSchema;
+        this.columns = ColumnSpec.columnsOf(task);
+        this.addColumns = ColumnSpec.addColumnsOf(task);
+        this.dropColumns = ColumnSpec.dropColumnsOf(task);
+        for (Column inputColumn : inputSchema.getColumns()) {
+            if (!inputColumnsByName.containsKey(inputColumn.getName())) {
+                inputColumnsByName.put(inputColumn.getName(), inputColumn);
+            }
+        }
+        indexColumnSpecs(columns, columnsByName, columnsSrcByName);
+        indexColumnSpecs(addColumns, addColumnsByName, addColumnsSrcByName);
+        for (ColumnSpec dropColumn : dropColumns) {
+            // skip json path notation to build outputSchema
+            if (!PathCompiler.isProbablyJsonPath(dropColumn.getName())) {
+                dropColumnNames.add(dropColumn.getName());
+            }
+        }
+        this.outputSchema = buildOutputSchema();
+    }
+
+    private static void indexColumnSpecs(List<ColumnSpec> columnSpecs,
+            HashMap<String, ColumnSpec> byName, HashMap<String, String> srcByName)
+    {
+        for (ColumnSpec columnSpec : columnSpecs) {
+            String name = columnSpec.getName();
+            if (!byName.containsKey(name)) {
+                byName.put(name, columnSpec);
+            }
+            if (columnSpec.getSrc().isPresent() && !srcByName.containsKey(name)) {
+                srcByName.put(name, columnSpec.getSrc().get());
+            }
+        }
+    }
+
+    Schema getOutputSchema()
+    {
+        return outputSchema;
+    }
+
+    // @return null if not found
+    Column lookupInputColumn(String name)
+    {
+        return inputColumnsByName.get(name);
+    }
+
+    // Input column to be copied into the output column of the name
+    // @return null if not found, e.g., add_columns with default
+    Column lookupSrcColumn(String name)
+    {
+        String srcName = columnsSrcByName.get(name);
+        if (srcName == null) {
+            srcName = addColumnsSrcByName.get(name);
+        }
+        if (srcName == null) {
+            srcName = name;
+        }
+        return lookupInputColumn(srcName);
+    }
+
+    // @return null if no default value is configured for the output column of the name
+    Object lookupDefault(String name, Type type)
+    {
+        Object defaultValue = null;
+        ColumnSpec columnSpec = columnsByName.get(name);
+        if (columnSpec != null) {
+            defaultValue = ColumnVisitorImpl.getDefault(task, name, type, columnSpec);
+        }
+        if (defaultValue == null) {
+            columnSpec = addColumnsByName.get(name);
+            if (columnSpec != null) {
+                defaultValue = ColumnVisitorImpl.getDefault(task, name, type, columnSpec);
+            }
+        }
+        return defaultValue;
+    }
+
+    // Resolve everything tasks need so that open() does not look up column configs, nor compile jsonpaths
+    CompiledPlan compile()
+    {
+        List<Integer> inputColumnIndexes = new ArrayList<>();
+        List<Object> defaultValues = new ArrayList<>();
+        for (Column outputColumn : outputSchema.getColumns()) {
+            Column inputColumn = lookupSrcColumn(outputColumn.getName());
+            inputColumnIndexes.add(inputColumn == null ? CompiledPlan.NO_INPUT_COLUMN : inputColumn.getIndex());
+            defaultValues.add(lookupDefault(outputColumn.getName(), outputColumn.getType()));
+        }
+
+        JsonVisitor jsonVisitor = new JsonVisitor(task, columns, addColumns, dropColumns);
+        LinkedHashMap<String, List<JsonColumn>> jsonColumns = new LinkedHashMap<>();
+        for (Map.Entry<String, LinkedHashMap<String, JsonColumn>> entry : jsonVisitor.jsonColumns.entrySet()) {
+            jsonColumns.put(entry.getKey(), new ArrayList<>(entry.getValue().values()));
+        }
+        LinkedHashMap<String, List<JsonColumn>> jsonAddColumns = new LinkedHashMap<>();
+        for (Map.Entry<String, LinkedHashMap<String, JsonColumn>> entry : jsonVisitor.jsonAddColumns.entrySet()) {
+            jsonAddColumns.put(entry.getKey(), new ArrayList<>(entry.getValue().values()));
+        }
+        LinkedHashMap<String, List<String>> jsonDropColumns = new LinkedHashMap<>();
+        for (Map.Entry<String, HashSet<String>> entry : jsonVisitor.jsonDropColumns.entrySet()) {
+            jsonDropColumns.put(entry.getKey(), new ArrayList<>(entry.getValue()));
+        }
+
+        return new CompiledPlan(
+                fingerprint(),
+                inputColumnIndexes,
+                CompiledPlan.encodeDefaultValues(defaultValues),
+                new ArrayList<>(jsonVisitor.shouldVisitSet),
+                jsonColumns,
+                jsonAddColumns,
+                jsonDropColumns);
+    }
+
+    // Human readable lines of the compiled plan for explain: true
+    List<String> explain(CompiledPlan plan)
+    {
+        List<String> lines = new ArrayList<>();
+        for (Column outputColumn : outputSchema.getColumns()) {
+            StringBuilder line = new StringBuilder();
+            line.append(String.format("column %d '%s' (%s)", outputColumn.getIndex(), outputColumn.getName(), outputColumn.getType()));
+            int inputColumnIndex = plan.getInputColumnIndex(outputColumn);
+            String defaultValue = plan.getDefaultValues().get(outputColumn.getIndex());
+            if (inputColumnIndex == CompiledPlan.NO_INPUT_COLUMN) {
+                line.append(" <= no input column");
+            }
+            else {
+                Column inputColumn = inputSchema.getColumn(inputColumnIndex);
+                line.append(String.format(" <= input column %d '%s'", inputColumnIndex, inputColumn.getName()));
+            }
+            if (defaultValue != null) {
+                line.append(String.format(", default %s from %s", defaultValue, defaultSourceOf(outputColumn.getName())));
+            }
+            line.append(": ").append(pathOf(plan, outputColumn, inputColumnIndex, defaultValue));
+            lines.add(line.toString());
+        }
+
+        // parent jsonpath => what JsonVisitor does under it
+        HashSet<String> parentPaths = new HashSet<>();
+        parentPaths.addAll(plan.getJsonColumns().keySet());
+        parentPaths.addAll(plan.getJsonAddColumns().keySet());
+        parentPaths.addAll(plan.getJsonDropColumns().keySet());
+        List<String> sortedParentPaths = new ArrayList<>(parentPaths);
+        Collections.sort(sortedParentPaths);
+        for (String parentPath : sortedParentPaths) {
+            StringBuilder line = new StringBuilder("jsonpath ").append(parentPath).append(":");
+            if (plan.getJsonColumns().containsKey(parentPath)) {
+                line.append(" columns ").append(jsonPathsOf(plan.getJsonColumns().get(parentPath)));
+            }
+            if (plan.getJsonAddColumns().containsKey(parentPath)) {
+                line.append(" add_columns ").append(jsonPathsOf(plan.getJsonAddColumns().get(parentPath)));
+            }
+            if (plan.getJsonDropColumns().containsKey(parentPath)) {
+                line.append(" drop_columns ").append(plan.getJsonDropColumns().get(parentPath));
+            }
+            lines.add(line.toString());
+        }
+        return lines;
+    }
+
+    private String defaultSourceOf(String name)
+    {
+        ColumnSpec columnSpec = columnsByName.get(name);
+        if (columnSpec != null && columnSpec.getDefault().isPresent()) {
+            return "columns";
+        }
+        return "add_columns";
+    }
+
+    // @return how ColumnVisitorImpl fills the column
+    private String pathOf(CompiledPlan plan, Column outputColumn, int inputColumnIndex, String defaultValue)
+    {
+        if (inputColumnIndex == CompiledPlan.NO_INPUT_COLUMN) {
+            return defaultValue == null ? "always null" : "always default";
+        }
+        if (!(outputColumn.getType() instanceof JsonType)) {
+            return "typed copy";
+        }
+        String rootPath = new StringBuilder("$['").append(Utils.escape(outputColumn.getName(), true)).append("']").toString();
+        if (plan.getJsonShouldVisit().contains(rootPath)) {
+            return "json visited by jsonpaths";
+        }
+        return "json passed through";
+    }
+
+    private static List<String> jsonPathsOf(List<JsonColumn> jsonColumns)
+    {
+        List<String> paths = new ArrayList<>(jsonColumns.size());
+        for (JsonColumn jsonColumn : jsonColumns) {
+            if (jsonColumn.getSrc().equals(jsonColumn.getPath())) {
+                paths.add(jsonColumn.getPath());
+            }
+            else {
+                paths.add(jsonColumn.getPath() + " <= " + jsonColumn.getSrc());
+            }
+        }
+        return paths;
+    }
+
+    // The same configs against the same input schema always compile into the same plan
+    private String fingerprint()
+    {
+        StringBuilder builder = new StringBuilder();
+        for (Column inputColumn : inputSchema.getColumns()) {
+            appendField(builder, inputColumn.getName());
+            appendField(builder, inputColumn.getType().getName());
+        }
+        appendColumnSpecs(builder, "columns", columns);
+        appendColumnSpecs(builder, "add_columns", addColumns);
+        appendColumnSpecs(builder, "drop_columns", dropColumns);
+        appendField(builder, task.getDefaultTimeZoneId());
+        appendField(builder, task.getDefaultTimestampFormat());
+        appendField(builder, task.getDefaultDate());
+
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        }
+        catch (NoSuchAlgorithmException ex) {
+            throw new RuntimeException(ex);
+        }
+        StringBuilder hex = new StringBuilder();
+        for (byte b : digest.digest(builder.toString().getBytes(StandardCharsets.UTF_8))) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+
+    private static void appendColumnSpecs(StringBuilder builder, String key, List<ColumnSpec> columnSpecs)
+    {
+        appendField(builder, key);
+        for (ColumnSpec columnSpec : columnSpecs) {
+            appendField(builder, columnSpec.getName());
+            appendField(builder, columnSpec.getType().isPresent() ? columnSpec.getType().get().getName() : null);
+            appendField(builder, columnSpec.getDefault().isPresent() ? columnSpec.getDefault().get().toString() : null);
+            appendField(builder, columnSpec.getSrc().orElse(null));
+            appendField(builder, columnSpec.getTimeZoneId().orElse(null));
+            appendField(builder, columnSpec.getFormat().orElse(null));
+            appendField(builder, columnSpec.getDate().orElse(null));
+        }
+    }
+
+    // length-prefixed not to confuse ["ab", "c"] with ["a", "bc"]
+    private static void appendField(StringBuilder builder, String field)
+    {
+        if (field == null) {
+            builder.append("-;");
+        }
+        else {
+            builder.append(field.length()).append(':').append(field).append(';');
+        }
+    }
+
+    private Schema buildOutputSchema()
+    {
+        // Automatically get column type from inputSchema for columns and dropColumns
+        List<Column> newColumns = new ArrayList<>();
+        int i = 0;
+        if (dropColumns.size() > 0) {
+            for (Column inputColumn : inputSchema.getColumns()) {
+                String name = inputColumn.getName();
+                if (!dropColumnNames.contains(name)) {
+                    Column outputColumn = new Column(i++, name, inputColumn.getType());
+                    newColumns.add(outputColumn);
+                }
+            }
+        }
+        else if (columns.size() > 0) {
+            for (ColumnSpec column : columns) {
+                // skip json path notation to build output schema
+                if (PathCompiler.isProbablyJsonPath(column.getName())) {
+                    continue;
+                }
+                if (column.getSrc().isPresent() && PathCompiler.isProbablyJsonPath(column.getSrc().get())) {
+                    continue;
+                }
+
+                String name                   = column.getName();
+                Optional<Type>   type         = column.getType();
+                Optional<Object> defaultValue = column.getDefault();
+                Optional<String> src          = column.getSrc();
+
+                String srcName = src.isPresent() ? src.get() : name;
+                Column inputColumn = lookupInputColumn(srcName);
+                if (inputColumn != null) { // filter or copy column
+                    Column outputColumn = new Column(i++, name, inputColumn.getType());
+                    newColumns.add(outputColumn);
+                }
+                else if (type.isPresent() && defaultValue.isPresent()) { // add column
+                    Column outputColumn = new Column(i++, name, type.get());
+                    newColumns.add(outputColumn);
+                }
+                else {
+                    throw new SchemaConfigException(String.format("columns: Column src '%s' is not found in inputSchema. Column '%s' does not have \"type\" and \"default\"", srcName, name));
+                }
+            }
+        }
+        else {
+            for (Column column : inputSchema.getColumns()) {
+                Column outputColumn = new Column(i++, column.getName(), column.getType());
+                newColumns.add(outputColumn);
+            }
+        }
+
+        // Add columns to last. If you want to add to head or middle, you can use `columns` option
+        if (addColumns.size() > 0) {
+            for (ColumnSpec column : addColumns) {
+                // skip json path notation to build output schema
+                if (PathCompiler.isProbablyJsonPath(column.getName())) {
+                    continue;
+                }
+                if (column.getSrc().isPresent() && PathCompiler.isProbablyJsonPath(column.getSrc().get())) {
+                    continue;
+                }
+
+                String name                   = column.getName();
+                Optional<Type> type           = column.getType();
+                Optional<Object> defaultValue = column.getDefault();
+                Optional<String> src          = column.getSrc();
+
+                String srcName = null;
+                Column inputColumn = null;
+                if (src.isPresent()) {
+                    srcName = src.get();
+                    inputColumn = lookupInputColumn(srcName);
+                }
+                if (inputColumn != null) { // copy column
+                    Column outputColumn = new Column(i++, name, inputColumn.getType());
+                    newColumns.add(outputColumn);
+                }
+                else if (type.isPresent() && defaultValue.isPresent()) { // add column
+                    Column outputColumn = new Column(i++, name, type.get());
+                    newColumns.add(outputColumn);
+                }
+                else {
+                    throw new SchemaConfigException(String.format("add_columns: Column src '%s' is not found in inputSchema, Column '%s' does not have \"type\" and \"default\"", srcName, name));
+                }
+            }
+        }
+
+        return new Schema(Collections.unmodifiableList(newColumns));
+    }
+}
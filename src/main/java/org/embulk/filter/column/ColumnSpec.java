@@ -0,0 +1,402 @@
+/*
+ * Copyright 2026 The Embulk project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.embulk.filter.column;
+
+import org.embulk.config.ConfigException;
+import org.embulk.filter.column.ColumnFilterPlugin.ColumnConfig;
+import org.embulk.filter.column.ColumnFilterPlugin.PluginTask;
+import org.embulk.spi.type.BooleanType;
+import org.embulk.spi.type.Type;
+import org.embulk.spi.type.Types;
+import org.embulk.util.json.JsonParser;
+import org.msgpack.value.Value;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * A column of {@code columns}, {@code add_columns} or {@code drop_columns} to plan with.
+ *
+ * It is either of a {@link ColumnConfig} in the config, or a line of {@code columns_file} or
+ * {@code drop_columns_file}. Lines of the files are read directly into specs, and they do not go
+ * through ConfigMapper which is slow for tens of thousands of columns.
+ */
+final class ColumnSpec
+{
+    private final String name;
+    private final Optional<Type> type;
+    private final Optional<Object> defaultValue;
+    private final Optional<String> src;
+    private final Optional<String> timeZoneId;
+    private final Optional<String> format;
+    private final Optional<String> date;
+
+    ColumnSpec(String name, Optional<Type> type, Optional<Object> defaultValue, Optional<String> src,
+            Optional<String> timeZoneId, Optional<String> format, Optional<String> date)
+    {
+        this.name = name;
+        this.type = type;
+        this.defaultValue = defaultValue;
+        this.src = src;
+        this.timeZoneId = timeZoneId;
+        this.format = format;
+        this.date = date;
+    }
+
+    static ColumnSpec of(ColumnConfig columnConfig)
+    {
+        return new ColumnSpec(
+                columnConfig.getName(),
+                columnConfig.getType(),
+                columnConfig.getDefault(),
+                columnConfig.getSrc(),
+                columnConfig.getTimeZoneId(),
+                columnConfig.getFormat(),
+                columnConfig.getDate());
+    }
+
+    // columns, and then lines of columns_file
+    static List<ColumnSpec> columnsOf(PluginTask task)
+    {
+        List<ColumnSpec> specs = of(task.getColumns());
+        if (task.getColumnsFile().isPresent()) {
+            specs.addAll(readFile(task.getColumnsFile().get()));
+        }
+        return specs;
+    }
+
+    static List<ColumnSpec> addColumnsOf(PluginTask task)
+    {
+        return of(task.getAddColumns());
+    }
+
+    // drop_columns, and then lines of drop_columns_file
+    static List<ColumnSpec> dropColumnsOf(PluginTask task)
+    {
+        List<ColumnSpec> specs = of(task.getDropColumns());
+        if (task.getDropColumnsFile().isPresent()) {
+            specs.addAll(readFile(task.getDropColumnsFile().get()));
+        }
+        return specs;
+    }
+
+    private static List<ColumnSpec> of(List<ColumnConfig> columnConfigs)
+    {
+        List<ColumnSpec> specs = new ArrayList<>(columnConfigs.size());
+        for (ColumnConfig columnConfig : columnConfigs) {
+            specs.add(of(columnConfig));
+        }
+        return specs;
+    }
+
+    public String getName()
+    {
+        return name;
+    }
+
+    public Optional<Type> getType()
+    {
+        return type;
+    }
+
+    public Optional<Object> getDefault()
+    {
+        return defaultValue;
+    }
+
+    public Optional<String> getSrc()
+    {
+        return src;
+    }
+
+    public Optional<String> getTimeZoneId()
+    {
+        return timeZoneId;
+    }
+
+    public Optional<String> getFormat()
+    {
+        return format;
+    }
+
+    public Optional<String> getDate()
+    {
+        return date;
+    }
+
+    static Type parseType(String typeName)
+    {
+        switch (typeName) {
+            case "boolean":
+                return Types.BOOLEAN;
+            case "long":
+                return Types.LONG;
+            case "double":
+                return Types.DOUBLE;
+            case "string":
+                return Types.STRING;
+            case "timestamp":
+                return Types.TIMESTAMP;
+            case "json":
+                return Types.JSON;
+            default:
+                throw new ConfigException(String.format("type: '%s' is not supported", typeName));
+        }
+    }
+
+    /**
+     * Reads a CSV file (.csv) or a JSON Lines file (.jsonl, .ndjson).
+     *
+     * <pre>
+     * name,src,type,default
+     * id,,,
+     * $.payload.key1,,string,foo
+     * </pre>
+     *
+     * <pre>
+     * {"name": "id"}
+     * {"name": "$.payload.key1", "type": "string", "default": "foo"}
+     * </pre>
+     *
+     * The first line of CSV is the header. Keys are the same with column configs: name, src, type,
+     * default, format, timezone, and date. Empty CSV fields are regarded as absent.
+     */
+    static List<ColumnSpec> readFile(String path)
+    {
+        boolean csv;
+        if (path.endsWith(".csv")) {
+            csv = true;
+        }
+        else if (path.endsWith(".jsonl") || path.endsWith(".ndjson")) {
+            csv = false;
+        }
+        else {
+            throw new ConfigException(String.format("Column spec file '%s' must be .csv, .jsonl, or .ndjson", path));
+        }
+
+        List<ColumnSpec> specs = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(Paths.get(path), StandardCharsets.UTF_8)) {
+            List<String> header = null;
+            JsonParser jsonParser = new JsonParser();
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.trim().isEmpty()) {
+                    continue;
+                }
+                String location = String.format("%s:%d", path, lineNumber);
+                if (!csv) {
+                    specs.add(fromJsonLine(jsonParser, line, location));
+                }
+                else if (header == null) {
+                    header = splitCsvLine(line, location);
+                }
+                else {
+                    specs.add(fromCsvLine(header, splitCsvLine(line, location), location));
+                }
+            }
+        }
+        catch (IOException ex) {
+            throw new ConfigException(String.format("Failed to read column spec file '%s'", path), ex);
+        }
+        return specs;
+    }
+
+    private static ColumnSpec fromCsvLine(List<String> header, List<String> fields, String location)
+    {
+        String name = null;
+        Optional<Type> type = Optional.empty();
+        String defaultValue = null;
+        Optional<String> src = Optional.empty();
+        Optional<String> timeZoneId = Optional.empty();
+        Optional<String> format = Optional.empty();
+        Optional<String> date = Optional.empty();
+        for (int i = 0; i < header.size() && i < fields.size(); i++) {
+            String field = fields.get(i);
+            if (field.isEmpty()) {
+                continue;
+            }
+            switch (header.get(i)) {
+                case "name":
+                    name = field;
+                    break;
+                case "type":
+                    type = Optional.of(parseType(field));
+                    break;
+                case "default":
+                    defaultValue = field;
+                    break;
+                case "src":
+                    src = Optional.of(field);
+                    break;
+                case "timezone":
+                    timeZoneId = Optional.of(field);
+                    break;
+                case "format":
+                    format = Optional.of(field);
+                    break;
+                case "date":
+                    date = Optional.of(field);
+                    break;
+                default:
+                    throw new ConfigException(String.format("%s: unknown key '%s' in the header", location, header.get(i)));
+            }
+        }
+        if (name == null) {
+            throw new ConfigException(String.format("%s: \"name\" is required", location));
+        }
+        // CSV fields are strings, but boolean defaults are Boolean as of YAML
+        Object typedDefaultValue = defaultValue;
+        if (defaultValue != null && type.isPresent() && type.get() instanceof BooleanType) {
+            typedDefaultValue = Boolean.valueOf(defaultValue);
+        }
+        return new ColumnSpec(name, type, Optional.ofNullable(typedDefaultValue), src, timeZoneId, format, date);
+    }
+
+    // RFC 4180 without line breaks in quoted fields
+    private static List<String> splitCsvLine(String line, String location)
+    {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"') {
+                    if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                        field.append('"');
+                        i++;
+                    }
+                    else {
+                        quoted = false;
+                    }
+                }
+                else {
+                    field.append(c);
+                }
+            }
+            else if (c == '"') {
+                quoted = true;
+            }
+            else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            }
+            else {
+                field.append(c);
+            }
+        }
+        if (quoted) {
+            throw new ConfigException(String.format("%s: unterminated quoted field", location));
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+    private static ColumnSpec fromJsonLine(JsonParser jsonParser, String line, String location)
+    {
+        Value value;
+        try {
+            value = jsonParser.parse(line);
+        }
+        catch (RuntimeException ex) {
+            throw new ConfigException(String.format("%s: %s", location, ex.getMessage()), ex);
+        }
+        if (!value.isMapValue()) {
+            throw new ConfigException(String.format("%s: a line must be a JSON object", location));
+        }
+        String name = null;
+        Optional<Type> type = Optional.empty();
+        Optional<Object> defaultValue = Optional.empty();
+        Optional<String> src = Optional.empty();
+        Optional<String> timeZoneId = Optional.empty();
+        Optional<String> format = Optional.empty();
+        Optional<String> date = Optional.empty();
+        for (Map.Entry<Value, Value> entry : value.asMapValue().entrySet()) {
+            Value v = entry.getValue();
+            if (v.isNilValue()) {
+                continue;
+            }
+            String key = entry.getKey().isStringValue() ? entry.getKey().asStringValue().asString() : entry.getKey().toJson();
+            switch (key) {
+                case "name":
+                    name = asString(v, key, location);
+                    break;
+                case "type":
+                    type = Optional.of(parseType(asString(v, key, location)));
+                    break;
+                case "default":
+                    defaultValue = Optional.of(toDefaultValue(v));
+                    break;
+                case "src":
+                    src = Optional.of(asString(v, key, location));
+                    break;
+                case "timezone":
+                    timeZoneId = Optional.of(asString(v, key, location));
+                    break;
+                case "format":
+                    format = Optional.of(asString(v, key, location));
+                    break;
+                case "date":
+                    date = Optional.of(asString(v, key, location));
+                    break;
+                default:
+                    throw new ConfigException(String.format("%s: unknown key '%s'", location, key));
+            }
+        }
+        if (name == null) {
+            throw new ConfigException(String.format("%s: \"name\" is required", location));
+        }
+        return new ColumnSpec(name, type, defaultValue, src, timeZoneId, format, date);
+    }
+
+    private static String asString(Value value, String key, String location)
+    {
+        if (!value.isStringValue()) {
+            throw new ConfigException(String.format("%s: \"%s\" must be a string", location, key));
+        }
+        return value.asStringValue().asString();
+    }
+
+    // Same Java types with defaults in YAML. JSON objects and arrays are for type: json, which takes a JSON string.
+    private static Object toDefaultValue(Value value)
+    {
+        if (value.isBooleanValue()) {
+            return value.asBooleanValue().getBoolean();
+        }
+        else if (value.isIntegerValue()) {
+            return value.asIntegerValue().asLong();
+        }
+        else if (value.isFloatValue()) {
+            return value.asFloatValue().toDouble();
+        }
+        else if (value.isStringValue()) {
+            return value.asStringValue().asString();
+        }
+        else {
+            return value.toJson();
+        }
+    }
+}
@@ -0,0 +1,544 @@
+/*
+ * Copyright 2026 The Embulk project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.embulk.filter.column;
+
+import org.embulk.config.TaskReport;
+import org.embulk.spi.Column;
+import org.embulk.spi.Exec;
+import org.embulk.spi.Schema;
+import org.slf4j.Logger;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Runtime counters of a task, per output column.
+ *
+ * Counters are plain longs incremented by the task thread only. A task commits them as a
+ * {@link TaskReport} in {@code finish()}, and {@code transaction()} aggregates the reports.
+ *
+ * FilterPlugin.Control.run returns no task reports to {@code transaction()}, unlike those of input and
+ * output plugins, so reports are handed over through a registry in the JVM, keyed by the id of the
+ * transaction. Only a transaction in the JVM registers its id, and it removes the id after running tasks,
+ * so that tasks running in other JVMs, which find no id registered, log their own reports instead of
+ * leaving them in the registry. Reports are keyed by the output opened for a task, and a report committed again
+ * by the same output overwrites the earlier one, not to be counted twice. FilterPlugin.open is given no task
+ * index, so that a task opened again for a retry is told from another task by no means in the filter, but the
+ * local executor does not retry tasks in a transaction, and other executors retry them in other JVMs.
+ *
+ * Bytes in and out of a column are the storage size in pages of values read and written: fixed sizes of
+ * booleans, longs, doubles and timestamps, UTF-8 bytes of strings, and msgpack bytes of json values. Bytes of
+ * json values are counted only with instrument: true, which walks each value read and written to count them.
+ */
+class ColumnStats
+{
+    // transaction id => output opened for a task => task report, of transactions running in this JVM
+    private static final ConcurrentHashMap<String, Map<Object, TaskReport>> committed = new ConcurrentHashMap<>();
+
+    private final Schema outputSchema;
+    long records;
+    long pagesIn;
+    long bytesIn;
+    long pagesOut;
+    long bytesOut;
+    // output column index => count
+    final long[] nulls;
+    final long[] defaults;
+    // String.length() of strings, which is UTF-16 chars but not bytes, not to encode strings to count them
+    final long[] stringChars;
+    // bytes of values read from the input column, and of values written to the output column, including defaults
+    final long[] columnBytesIn;
+    final long[] columnBytesOut;
+    final long[] jsonValues;
+    // nodes visited by JsonVisitor, and nodes passed through as they are without jsonpaths under them
+    final long[] jsonNodesVisited;
+    final long[] jsonNodesPassedThrough;
+    // keys or elements dropped by drop_columns, and defaults injected by columns or add_columns
+    final long[] jsonDroppedKeys;
+    final long[] jsonDefaults;
+    // values visited and written as they are, because no jsonpath rewrote them
+    final long[] jsonValuesUnchanged;
+    // values over max_json_bytes, max_json_depth and max_array_elements
+    final long[] jsonBytesViolations;
+    final long[] jsonDepthViolations;
+    final long[] jsonArrayElementsViolations;
+    // values abandoned over json_time_budget_ms
+    final long[] jsonBudgetExceeded;
+    // depth and width of visited maps and arrays. Depth of a scalar value is 0.
+    final long[] jsonMaxDepth;
+    final long[] jsonDepthSum;
+    final long[] jsonMaxWidth;
+    final long[] jsonWidthSum;
+    final long[] jsonContainers;
+    long jsonNodesVisitedTotal;
+    long defaultsTotal;
+
+    // the json value being visited, which is attributed to its column in endJsonValue()
+    private long jsonValueNodesVisited;
+    private long jsonValueNodesPassedThrough;
+    private long jsonValueDroppedKeys;
+    private long jsonValueDefaults;
+    private int jsonValueDepth;
+    private int jsonValueMaxDepth;
+    private long jsonValueMaxWidth;
+    private long jsonValueWidthSum;
+    private long jsonValueContainers;
+
+    // Timings are measured only with instrument: true, which calls System.nanoTime() in the hot path
+    private final boolean timed;
+    // nanoseconds in PageOutput.add, PageOutput.finish, and JsonVisitor.visit, except for outputNanos
+    long addNanos;
+    long finishNanos;
+    long jsonNanos;
+    // nanoseconds of the next plugin to take pages from PageBuilder
+    long outputNanos;
+    // nanoseconds to transform a page in PageOutput.add, or null if not timed
+    final LatencyHistogram pageLatency;
+
+    // CPU time and allocated bytes of the task thread are measured only with account_resources: true
+    private final boolean accounted;
+    long cpuNanos;
+    long allocatedBytes;
+
+    ColumnStats(Schema outputSchema)
+    {
+        this(outputSchema, false, false);
+    }
+
+    ColumnStats(Schema outputSchema, boolean timed, boolean accounted)
+    {
+        int size = outputSchema.getColumnCount();
+        this.outputSchema = outputSchema;
+        this.nulls = new long[size];
+        this.defaults = new long[size];
+        this.stringChars = new long[size];
+        this.columnBytesIn = new long[size];
+        this.columnBytesOut = new long[size];
+        this.jsonValues = new long[size];
+        this.jsonNodesVisited = new long[size];
+        this.jsonNodesPassedThrough = new long[size];
+        this.jsonDroppedKeys = new long[size];
+        this.jsonDefaults = new long[size];
+        this.jsonValuesUnchanged = new long[size];
+        this.jsonBytesViolations = new long[size];
+        this.jsonDepthViolations = new long[size];
+        this.jsonArrayElementsViolations = new long[size];
+        this.jsonBudgetExceeded = new long[size];
+        this.jsonMaxDepth = new long[size];
+        this.jsonDepthSum = new long[size];
+        this.jsonMaxWidth = new long[size];
+        this.jsonWidthSum = new long[size];
+        this.jsonContainers = new long[size];
+        this.timed = timed;
+        this.pageLatency = timed ? new LatencyHistogram() : null;
+        this.accounted = accounted;
+    }
+
+    boolean isTimed()
+    {
+        return timed;
+    }
+
+    boolean isAccounted()
+    {
+        return accounted;
+    }
+
+    // @param cpuNanos CPU time from ThreadResources at the start, or -1 if not supported
+    // @param allocatedBytes allocated bytes from ThreadResources at the start, or -1 if not supported
+    void addResourcesSince(long cpuNanos, long allocatedBytes)
+    {
+        if (cpuNanos >= 0) {
+            this.cpuNanos += ThreadResources.currentThreadCpuTime() - cpuNanos;
+        }
+        if (allocatedBytes >= 0) {
+            this.allocatedBytes += ThreadResources.currentThreadAllocatedBytes() - allocatedBytes;
+        }
+    }
+
+    // Takes back resources of the next plugin, which runs in the task thread while PageBuilder flushes
+    void excludeResourcesSince(long cpuNanos, long allocatedBytes)
+    {
+        if (cpuNanos >= 0) {
+            this.cpuNanos -= ThreadResources.currentThreadCpuTime() - cpuNanos;
+        }
+        if (allocatedBytes >= 0) {
+            this.allocatedBytes -= ThreadResources.currentThreadAllocatedBytes() - allocatedBytes;
+        }
+    }
+
+    void addPageNanos(long nanos)
+    {
+        addNanos += nanos;
+        pageLatency.record(nanos);
+    }
+
+    void addNull(Column outputColumn)
+    {
+        nulls[outputColumn.getIndex()]++;
+    }
+
+    void addDefault(Column outputColumn)
+    {
+        defaults[outputColumn.getIndex()]++;
+        defaultsTotal++;
+    }
+
+    // @param in bytes read from the input column, which is 0 for defaults
+    // @param out bytes written to the output column
+    void addBytes(Column outputColumn, long in, long out)
+    {
+        int i = outputColumn.getIndex();
+        columnBytesIn[i] += in;
+        columnBytesOut[i] += out;
+    }
+
+    // @param copied true if value is read from the input column, or false if it is a default
+    void addString(Column outputColumn, String value, boolean copied)
+    {
+        int i = outputColumn.getIndex();
+        long bytes = utf8Length(value);
+        stringChars[i] += value.length();
+        if (copied) {
+            columnBytesIn[i] += bytes;
+        }
+        columnBytesOut[i] += bytes;
+    }
+
+    // counts UTF-8 bytes without encoding the string, as 3 bytes for an unpaired surrogate
+    static long utf8Length(String value)
+    {
+        int length = value.length();
+        long bytes = length;
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c >= 0x800) {
+                bytes += 2; // 3 bytes of a char, or 4 bytes of a surrogate pair of 2 chars
+                if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+                    i++;
+                }
+            }
+            else if (c >= 0x80) {
+                bytes++;
+            }
+        }
+        return bytes;
+    }
+
+    void beginJsonValue()
+    {
+        jsonValueNodesVisited = 0;
+        jsonValueNodesPassedThrough = 0;
+        jsonValueDroppedKeys = 0;
+        jsonValueDefaults = 0;
+        jsonValueDepth = 0;
+        jsonValueMaxDepth = 0;
+        jsonValueMaxWidth = 0;
+        jsonValueWidthSum = 0;
+        jsonValueContainers = 0;
+    }
+
+    void endJsonValue(Column outputColumn)
+    {
+        int i = outputColumn.getIndex();
+        jsonValues[i]++;
+        jsonNodesVisited[i] += jsonValueNodesVisited;
+        jsonNodesPassedThrough[i] += jsonValueNodesPassedThrough;
+        jsonDroppedKeys[i] += jsonValueDroppedKeys;
+        jsonDefaults[i] += jsonValueDefaults;
+        jsonMaxDepth[i] = Math.max(jsonMaxDepth[i], jsonValueMaxDepth);
+        jsonDepthSum[i] += jsonValueMaxDepth;
+        jsonMaxWidth[i] = Math.max(jsonMaxWidth[i], jsonValueMaxWidth);
+        jsonWidthSum[i] += jsonValueWidthSum;
+        jsonContainers[i] += jsonValueContainers;
+        jsonNodesVisitedTotal += jsonValueNodesVisited;
+    }
+
+    void addJsonValueUnchanged(Column outputColumn)
+    {
+        jsonValuesUnchanged[outputColumn.getIndex()]++;
+    }
+
+    void addJsonLimitViolation(Column outputColumn, JsonLimits.Violation violation)
+    {
+        int i = outputColumn.getIndex();
+        switch (violation) {
+            case BYTES:
+                jsonBytesViolations[i]++;
+                break;
+            case DEPTH:
+                jsonDepthViolations[i]++;
+                break;
+            default:
+                jsonArrayElementsViolations[i]++;
+                break;
+        }
+    }
+
+    void addJsonBudgetExceeded(Column outputColumn)
+    {
+        jsonBudgetExceeded[outputColumn.getIndex()]++;
+    }
+
+    long getJsonValueNodesVisited()
+    {
+        return jsonValueNodesVisited;
+    }
+
+    int getJsonValueMaxDepth()
+    {
+        return jsonValueMaxDepth;
+    }
+
+    void addJsonNodeVisited()
+    {
+        jsonValueNodesVisited++;
+    }
+
+    void addJsonNodePassedThrough()
+    {
+        jsonValueNodesPassedThrough++;
+    }
+
+    void addJsonDroppedKey()
+    {
+        jsonValueDroppedKeys++;
+    }
+
+    void addJsonDefault()
+    {
+        jsonValueDefaults++;
+    }
+
+    void enterJsonContainer(int width)
+    {
+        jsonValueDepth++;
+        if (jsonValueDepth > jsonValueMaxDepth) {
+            jsonValueMaxDepth = jsonValueDepth;
+        }
+        if (width > jsonValueMaxWidth) {
+            jsonValueMaxWidth = width;
+        }
+        jsonValueWidthSum += width;
+        jsonValueContainers++;
+    }
+
+    void exitJsonContainer()
+    {
+        jsonValueDepth--;
+    }
+
+    TaskReport toTaskReport()
+    {
+        List<Map<String, Object>> columns = new ArrayList<>(nulls.length);
+        for (Column column : outputSchema.getColumns()) {
+            int i = column.getIndex();
+            Map<String, Object> counters = new LinkedHashMap<>();
+            counters.put("name", column.getName());
+            counters.put("nulls", nulls[i]);
+            counters.put("defaults", defaults[i]);
+            counters.put("string_chars", stringChars[i]);
+            counters.put("bytes_in", columnBytesIn[i]);
+            counters.put("bytes_out", columnBytesOut[i]);
+            if (jsonValues[i] > 0) {
+                counters.put("json_values", jsonValues[i]);
+                counters.put("json_nodes_visited", jsonNodesVisited[i]);
+                counters.put("json_nodes_passed_through", jsonNodesPassedThrough[i]);
+                counters.put("json_dropped_keys", jsonDroppedKeys[i]);
+                counters.put("json_defaults", jsonDefaults[i]);
+                counters.put("json_values_unchanged", jsonValuesUnchanged[i]);
+                counters.put("json_bytes_violations", jsonBytesViolations[i]);
+                counters.put("json_depth_violations", jsonDepthViolations[i]);
+                counters.put("json_array_elements_violations", jsonArrayElementsViolations[i]);
+                counters.put("json_budget_exceeded", jsonBudgetExceeded[i]);
+                counters.put("json_max_depth", jsonMaxDepth[i]);
+                counters.put("json_depth_sum", jsonDepthSum[i]);
+                counters.put("json_max_width", jsonMaxWidth[i]);
+                counters.put("json_width_sum", jsonWidthSum[i]);
+                counters.put("json_containers", jsonContainers[i]);
+            }
+            columns.add(counters);
+        }
+        TaskReport report = Exec.newTaskReport();
+        report.set("records", records);
+        report.set("pages_in", pagesIn);
+        report.set("bytes_in", bytesIn);
+        report.set("pages_out", pagesOut);
+        report.set("bytes_out", bytesOut);
+        report.set("columns", columns);
+        if (timed) {
+            Map<String, Object> timings = new LinkedHashMap<>();
+            timings.put("add_nanos", addNanos);
+            timings.put("finish_nanos", finishNanos);
+            timings.put("json_nanos", jsonNanos);
+            timings.put("output_nanos", outputNanos);
+            timings.put("page_latency", pageLatency.toList());
+            report.set("timings", timings);
+        }
+        if (accounted) {
+            Map<String, Object> resources = new LinkedHashMap<>();
+            resources.put("cpu_nanos", cpuNanos);
+            resources.put("allocated_bytes", allocatedBytes);
+            resources.put("cpu_nanos_per_record", perRecord(cpuNanos));
+            resources.put("allocated_bytes_per_record", perRecord(allocatedBytes));
+            resources.put("allocated_bytes_per_output_byte", perOutputByte(allocatedBytes));
+            report.set("resources", resources);
+        }
+        return report;
+    }
+
+    @SuppressWarnings("unchecked")
+    void merge(TaskReport report)
+    {
+        records += report.get(Long.class, "records", 0L);
+        pagesIn += report.get(Long.class, "pages_in", 0L);
+        bytesIn += report.get(Long.class, "bytes_in", 0L);
+        pagesOut += report.get(Long.class, "pages_out", 0L);
+        bytesOut += report.get(Long.class, "bytes_out", 0L);
+        List<Map<String, Object>> columns = report.get(List.class, "columns", Collections.emptyList());
+        for (int i = 0; i < columns.size() && i < nulls.length; i++) {
+            Map<String, Object> counters = columns.get(i);
+            nulls[i] += asLong(counters.get("nulls"));
+            defaults[i] += asLong(counters.get("defaults"));
+            stringChars[i] += asLong(counters.get("string_chars"));
+            columnBytesIn[i] += asLong(counters.get("bytes_in"));
+            columnBytesOut[i] += asLong(counters.get("bytes_out"));
+            jsonValues[i] += asLong(counters.get("json_values"));
+            jsonNodesVisited[i] += asLong(counters.get("json_nodes_visited"));
+            jsonNodesPassedThrough[i] += asLong(counters.get("json_nodes_passed_through"));
+            jsonDroppedKeys[i] += asLong(counters.get("json_dropped_keys"));
+            jsonDefaults[i] += asLong(counters.get("json_defaults"));
+            jsonValuesUnchanged[i] += asLong(counters.get("json_values_unchanged"));
+            jsonBytesViolations[i] += asLong(counters.get("json_bytes_violations"));
+            jsonDepthViolations[i] += asLong(counters.get("json_depth_violations"));
+            jsonArrayElementsViolations[i] += asLong(counters.get("json_array_elements_violations"));
+            jsonBudgetExceeded[i] += asLong(counters.get("json_budget_exceeded"));
+            jsonMaxDepth[i] = Math.max(jsonMaxDepth[i], asLong(counters.get("json_max_depth")));
+            jsonDepthSum[i] += asLong(counters.get("json_depth_sum"));
+            jsonMaxWidth[i] = Math.max(jsonMaxWidth[i], asLong(counters.get("json_max_width")));
+            jsonWidthSum[i] += asLong(counters.get("json_width_sum"));
+            jsonContainers[i] += asLong(counters.get("json_containers"));
+        }
+        if (timed && report.has("timings")) {
+            Map<String, Object> timings = report.get(Map.class, "timings");
+            addNanos += asLong(timings.get("add_nanos"));
+            finishNanos += asLong(timings.get("finish_nanos"));
+            jsonNanos += asLong(timings.get("json_nanos"));
+            outputNanos += asLong(timings.get("output_nanos"));
+            pageLatency.merge(LatencyHistogram.fromList((List<List<Number>>) timings.get("page_latency")));
+        }
+        if (accounted && report.has("resources")) {
+            // normalized ones are computed again from the sums
+            Map<String, Object> resources = report.get(Map.class, "resources");
+            cpuNanos += asLong(resources.get("cpu_nanos"));
+            allocatedBytes += asLong(resources.get("allocated_bytes"));
+        }
+    }
+
+    private double perRecord(long value)
+    {
+        return records == 0 ? 0.0 : (double) value / records;
+    }
+
+    private double perOutputByte(long value)
+    {
+        return bytesOut == 0 ? 0.0 : (double) value / bytesOut;
+    }
+
+    private static long asLong(Object number)
+    {
+        return number == null ? 0L : ((Number) number).longValue();
+    }
+
+    void log(Logger logger, String title)
+    {
+        logger.info("{}: {} records, {} pages ({} bytes) in, {} pages ({} bytes) out",
+                title, records, pagesIn, bytesIn, pagesOut, bytesOut);
+        if (timed) {
+            long nanos = addNanos + finishNanos;
+            logger.info("{}: {} records/sec, {} ms in add (json {} ms, others {} ms), {} ms in finish, {} ms in the next plugin",
+                    title, nanos == 0 ? 0L : (long) (records * 1.0e9 / nanos),
+                    addNanos / 1000000, jsonNanos / 1000000, (addNanos - jsonNanos) / 1000000, finishNanos / 1000000,
+                    outputNanos / 1000000);
+            logger.info("{}: page latency: p50 {} us, p90 {} us, p99 {} us, max {} us of {} pages",
+                    title, pageLatency.getValueAtPercentile(50.0) / 1000, pageLatency.getValueAtPercentile(90.0) / 1000,
+                    pageLatency.getValueAtPercentile(99.0) / 1000, pageLatency.getMax() / 1000, pageLatency.getTotalCount());
+        }
+        if (accounted) {
+            logger.info("{}: {} ms CPU, {} bytes allocated, {} ns CPU/record, {} bytes allocated/record, {} bytes allocated/output byte",
+                    title, cpuNanos / 1000000, allocatedBytes, String.format("%.1f", perRecord(cpuNanos)),
+                    String.format("%.1f", perRecord(allocatedBytes)), String.format("%.3f", perOutputByte(allocatedBytes)));
+        }
+        if (logger.isDebugEnabled()) {
+            for (Column column : outputSchema.getColumns()) {
+                int i = column.getIndex();
+                logger.debug("{}: column '{}': {} nulls, {} defaults, {} string chars, {} bytes in, {} bytes out",
+                        title, column.getName(), nulls[i], defaults[i], stringChars[i], columnBytesIn[i], columnBytesOut[i]);
+                if (jsonValues[i] > 0) {
+                    logger.debug("{}: column '{}': {} json nodes visited, {} passed through, {} keys dropped, {} defaults injected, "
+                            + "{} values unchanged, "
+                            + "{}/{}/{} values over max_json_bytes/max_json_depth/max_array_elements, {} values over json_time_budget_ms, "
+                            + "depth max {} avg {}, width max {} avg {}",
+                            title, column.getName(), jsonNodesVisited[i], jsonNodesPassedThrough[i], jsonDroppedKeys[i], jsonDefaults[i],
+                            jsonValuesUnchanged[i],
+                            jsonBytesViolations[i], jsonDepthViolations[i], jsonArrayElementsViolations[i], jsonBudgetExceeded[i],
+                            jsonMaxDepth[i], String.format("%.2f", (double) jsonDepthSum[i] / jsonValues[i]),
+                            jsonMaxWidth[i], String.format("%.2f", jsonContainers[i] == 0 ? 0.0 : (double) jsonWidthSum[i] / jsonContainers[i]));
+                }
+            }
+        }
+    }
+
+    // Registers the transaction before running its tasks, whose reports are then kept until collect()
+    static void begin(String transactionId)
+    {
+        committed.put(transactionId, Collections.synchronizedMap(new IdentityHashMap<Object, TaskReport>()));
+    }
+
+    // Overwrites the report committed earlier by the same output
+    // @param output PageOutput opened for the task, compared by identity
+    // @return false if the transaction is not running in this JVM, and the report is not kept
+    static boolean commit(String transactionId, Object output, TaskReport report)
+    {
+        if (transactionId == null) {
+            return false; // opened without transaction()
+        }
+        Map<Object, TaskReport> reports = committed.get(transactionId);
+        if (reports == null) {
+            return false;
+        }
+        reports.put(output, report);
+        return true;
+    }
+
+    // Removes and returns reports committed by tasks of the transaction in this JVM
+    static List<TaskReport> collect(String transactionId)
+    {
+        Map<Object, TaskReport> reports = committed.remove(transactionId);
+        if (reports == null) {
+            return Collections.<TaskReport>emptyList();
+        }
+        synchronized (reports) {
+            return new ArrayList<>(reports.values());
+        }
+    }
+}
@@ -16,15 +16,12 @@
 
 package org.embulk.filter.column;
 
-import io.github.medjed.jsonpathcompiler.expressions.Utils;
-import org.embulk.filter.column.ColumnFilterPlugin.ColumnConfig;
 import org.embulk.filter.column.ColumnFilterPlugin.PluginTask;
 import org.embulk.spi.Column;
 import org.embulk.spi.ColumnVisitor;
 import org.embulk.spi.PageBuilder;
 import org.embulk.spi.PageReader;
 import org.embulk.spi.Schema;
-import org.embulk.spi.SchemaConfigException;
 import org.embulk.spi.time.Timestamp;
 import org.embulk.spi.type.BooleanType;
 import org.embulk.spi.type.DoubleType;
@@ -41,95 +38,124 @@ import org.slf4j.LoggerFactory;
 
 import java.time.DateTimeException;
 import java.time.Instant;
-import java.util.HashMap;
-import java.util.List;
+import java.util.Arrays;
 
 public class ColumnVisitorImpl implements ColumnVisitor
 {
     private static final Logger logger = LoggerFactory.getLogger(ColumnFilterPlugin.class);
-    private final PluginTask task;
-    private final Schema inputSchema;
-    private final Schema outputSchema;
+    // null cells of an input column in the current page
+    private static final byte NULLS_UNKNOWN = 0;
+    private static final byte NULLS_NONE = 1;
+    private static final byte NULLS_ALL = 2;
+    // storage size of values of fixed-size types in pages
+    private static final long BOOLEAN_BYTES = 1L;
+    private static final long LONG_BYTES = 8L;
+    private static final long DOUBLE_BYTES = 8L;
+    private static final long TIMESTAMP_BYTES = 12L;
+    private final PreparedPlan plan;
     private final PageReader pageReader;
     private final PageBuilder pageBuilder;
-    private final HashMap<Column, Column> outputInputColumnMap = new HashMap<>();
-    private final HashMap<Column, Object> outputDefaultMap = new HashMap<>();
     private final JsonVisitor jsonVisitor;
+    private final ColumnStats stats;
+    private boolean timingJson;
+    // walks json values read and written to count their bytes, only while instrument: true
+    private final boolean countingJsonBytes;
+    // null unless slow_json_samples is set
+    private final SlowJsonSampler slowJsonSampler;
+    // null unless max_json_bytes, max_json_depth or max_array_elements is set
+    private JsonLimits jsonLimits;
+    // null unless json_time_budget_ms is set
+    private JsonBudget jsonBudget;
+    // input column index => NULLS_*, of the page given to setPageNulls
+    private byte[] inputNulls = new byte[0];
 
     ColumnVisitorImpl(PluginTask task, Schema inputSchema, Schema outputSchema, PageReader pageReader, PageBuilder pageBuilder)
     {
-        this.task = task;
-        this.inputSchema = inputSchema;
-        this.outputSchema = outputSchema;
+        this(new PreparedPlan(new ColumnPlan(task, inputSchema).compile(), inputSchema, outputSchema), pageReader, pageBuilder,
+                new ColumnStats(outputSchema));
+    }
+
+    ColumnVisitorImpl(PreparedPlan plan, PageReader pageReader, PageBuilder pageBuilder, ColumnStats stats)
+    {
+        this(plan, pageReader, pageBuilder, stats, null);
+    }
+
+    // plan is shared by tasks, and pageReader, pageBuilder, stats and slowJsonSampler are of this task
+    ColumnVisitorImpl(PreparedPlan plan, PageReader pageReader, PageBuilder pageBuilder, ColumnStats stats, SlowJsonSampler slowJsonSampler)
+    {
+        this.plan = plan;
         this.pageReader = pageReader;
         this.pageBuilder = pageBuilder;
-        buildOutputInputColumnMap();
-        buildOutputDefaultMap();
-        this.jsonVisitor = new JsonVisitor(task, inputSchema, outputSchema);
+        this.jsonVisitor = plan.getJsonVisitor().withStats(stats);
+        this.stats = stats;
+        this.timingJson = stats.isTimed();
+        this.countingJsonBytes = stats.isTimed();
+        this.slowJsonSampler = slowJsonSampler;
     }
 
-    // Map outputColumn => inputColumn
-    private void buildOutputInputColumnMap()
+    // Measures nanoseconds of json columns into stats, while instrument: true or sampling for explain: true
+    void setTimingJson(boolean timingJson)
     {
-        for (Column outputColumn : outputSchema.getColumns()) {
-            String name    = outputColumn.getName();
-            String srcName = getSrc(name, task.getColumns());
-            if (srcName == null) {
-                srcName = getSrc(name, task.getAddColumns());
-            }
-            if (srcName == null) {
-                srcName = name;
-            }
-            Column inputColumn;
-            try {
-                inputColumn = inputSchema.lookupColumn(srcName);
-            }
-            catch (SchemaConfigException ex) {
-                inputColumn = null;
-            }
-            outputInputColumnMap.put(outputColumn, inputColumn); // NOTE: inputColumn would be null
-        }
+        this.timingJson = timingJson;
     }
 
-    // Map outputColumn => default value if present
-    private void buildOutputDefaultMap()
+    void setJsonLimits(JsonLimits jsonLimits)
     {
-        for (Column outputColumn : outputSchema.getColumns()) {
-            String name = outputColumn.getName();
-            Type type = outputColumn.getType();
+        this.jsonLimits = jsonLimits;
+        jsonVisitor.setLimits(jsonLimits);
+    }
 
-            Object defaultValue = getDefault(task, name, type, task.getColumns());
-            if (defaultValue == null) {
-                defaultValue = getDefault(task, name, type, task.getAddColumns());
+    void setJsonBudget(JsonBudget jsonBudget)
+    {
+        this.jsonBudget = jsonBudget;
+        jsonVisitor.setBudget(jsonBudget);
+    }
+
+    // Gives null cells of the next page, or null to call pageReader.isNull for every cell of the next page.
+    // Cells of input columns which are all null or not null in the page are filled without pageReader.isNull.
+    void setPageNulls(PageNulls pageNulls)
+    {
+        if (pageNulls == null) {
+            Arrays.fill(inputNulls, NULLS_UNKNOWN);
+            return;
+        }
+        if (inputNulls.length != pageNulls.getColumnCount()) {
+            inputNulls = new byte[pageNulls.getColumnCount()];
+        }
+        for (int i = 0; i < inputNulls.length; i++) {
+            if (!pageNulls.hasNull(i)) {
+                inputNulls[i] = NULLS_NONE;
             }
-            if (defaultValue != null) {
-                outputDefaultMap.put(outputColumn, defaultValue);
+            else if (pageNulls.isAllNull(i)) {
+                inputNulls[i] = NULLS_ALL;
+            }
+            else {
+                inputNulls[i] = NULLS_UNKNOWN;
             }
         }
     }
 
-    static String getSrc(String name, List<ColumnConfig> columnConfigs)
+    private boolean isNull(Column inputColumn)
     {
-        for (ColumnConfig columnConfig : columnConfigs) {
-            if (columnConfig.getName().equals(name) &&
-                    columnConfig.getSrc().isPresent()) {
-                return columnConfig.getSrc().get();
+        int index = inputColumn.getIndex();
+        if (index < inputNulls.length) {
+            byte nulls = inputNulls[index];
+            if (nulls == NULLS_NONE) {
+                return false;
+            }
+            if (nulls == NULLS_ALL) {
+                return true;
             }
         }
-        return null;
+        return pageReader.isNull(inputColumn);
     }
 
-    static Object getDefault(PluginTask task, String name, Type type, List<ColumnConfig> columnConfigs)
+    ColumnStats getStats()
     {
-        for (ColumnConfig columnConfig : columnConfigs) {
-            if (columnConfig.getName().equals(name)) {
-                return getDefault(task, name, type, columnConfig);
-            }
-        }
-        return null;
+        return stats;
     }
 
-    static Object getDefault(PluginTask task, String name, Type type, ColumnConfig columnConfig)
+    static Object getDefault(PluginTask task, String name, Type type, ColumnSpec columnConfig)
     {
         if (type instanceof BooleanType) {
             if (columnConfig.getDefault().isPresent()) {
@@ -183,111 +209,243 @@ public class ColumnVisitorImpl implements ColumnVisitor
     @Override
     public void booleanColumn(Column outputColumn)
     {
-        Column inputColumn = outputInputColumnMap.get(outputColumn);
-        if (inputColumn == null || pageReader.isNull(inputColumn)) {
-            Boolean defaultValue = (Boolean) outputDefaultMap.get(outputColumn);
+        Column inputColumn = plan.getInputColumn(outputColumn);
+        if (inputColumn == null || isNull(inputColumn)) {
+            Boolean defaultValue = (Boolean) plan.getDefaultValue(outputColumn);
             if (defaultValue == null) {
                 pageBuilder.setNull(outputColumn);
+                stats.addNull(outputColumn);
             }
             else {
+                stats.addDefault(outputColumn);
                 pageBuilder.setBoolean(outputColumn, defaultValue.booleanValue());
+                stats.addBytes(outputColumn, 0L, BOOLEAN_BYTES);
             }
         }
         else {
             pageBuilder.setBoolean(outputColumn, pageReader.getBoolean(inputColumn));
+            stats.addBytes(outputColumn, BOOLEAN_BYTES, BOOLEAN_BYTES);
         }
     }
 
     @Override
     public void longColumn(Column outputColumn)
     {
-        Column inputColumn = outputInputColumnMap.get(outputColumn);
-        if (inputColumn == null || pageReader.isNull(inputColumn)) {
-            Long defaultValue = (Long) outputDefaultMap.get(outputColumn);
+        Column inputColumn = plan.getInputColumn(outputColumn);
+        if (inputColumn == null || isNull(inputColumn)) {
+            Long defaultValue = (Long) plan.getDefaultValue(outputColumn);
             if (defaultValue == null) {
                 pageBuilder.setNull(outputColumn);
+                stats.addNull(outputColumn);
             }
             else {
+                stats.addDefault(outputColumn);
                 pageBuilder.setLong(outputColumn, defaultValue.longValue());
+                stats.addBytes(outputColumn, 0L, LONG_BYTES);
             }
         }
         else {
             pageBuilder.setLong(outputColumn, pageReader.getLong(inputColumn));
+            stats.addBytes(outputColumn, LONG_BYTES, LONG_BYTES);
         }
     }
 
     @Override
     public void doubleColumn(Column outputColumn)
     {
-        Column inputColumn = outputInputColumnMap.get(outputColumn);
-        if (inputColumn == null || pageReader.isNull(inputColumn)) {
-            Double defaultValue = (Double) outputDefaultMap.get(outputColumn);
+        Column inputColumn = plan.getInputColumn(outputColumn);
+        if (inputColumn == null || isNull(inputColumn)) {
+            Double defaultValue = (Double) plan.getDefaultValue(outputColumn);
             if (defaultValue == null) {
                 pageBuilder.setNull(outputColumn);
+                stats.addNull(outputColumn);
             }
             else {
+                stats.addDefault(outputColumn);
                 pageBuilder.setDouble(outputColumn, defaultValue.doubleValue());
+                stats.addBytes(outputColumn, 0L, DOUBLE_BYTES);
             }
         }
         else {
             pageBuilder.setDouble(outputColumn, pageReader.getDouble(inputColumn));
+            stats.addBytes(outputColumn, DOUBLE_BYTES, DOUBLE_BYTES);
         }
     }
 
     @Override
     public void stringColumn(Column outputColumn)
     {
-        Column inputColumn = outputInputColumnMap.get(outputColumn);
-        if (inputColumn == null || pageReader.isNull(inputColumn)) {
-            String defaultValue = (String) outputDefaultMap.get(outputColumn);
+        Column inputColumn = plan.getInputColumn(outputColumn);
+        if (inputColumn == null || isNull(inputColumn)) {
+            String defaultValue = (String) plan.getDefaultValue(outputColumn);
             if (defaultValue == null) {
                 pageBuilder.setNull(outputColumn);
+                stats.addNull(outputColumn);
             }
             else {
+                stats.addDefault(outputColumn);
                 pageBuilder.setString(outputColumn, defaultValue);
+                stats.addString(outputColumn, defaultValue, false);
             }
         }
         else {
-            pageBuilder.setString(outputColumn, pageReader.getString(inputColumn));
+            String value = pageReader.getString(inputColumn);
+            pageBuilder.setString(outputColumn, value);
+            stats.addString(outputColumn, value, true);
         }
     }
 
     @Override
     public void jsonColumn(Column outputColumn)
     {
-        Column inputColumn = outputInputColumnMap.get(outputColumn);
-        if (inputColumn == null || pageReader.isNull(inputColumn)) {
-            Value defaultValue = (Value) outputDefaultMap.get(outputColumn);
-            if (defaultValue == null) {
-                pageBuilder.setNull(outputColumn);
+        Object jsonColumnRewrittenEvent = FlightEvents.beginJsonColumnRewritten();
+        long started = timingJson ? System.nanoTime() : 0L;
+        stats.beginJsonValue();
+        Column inputColumn = plan.getInputColumn(outputColumn);
+        if (inputColumn == null || isNull(inputColumn)) {
+            setJsonDefault(outputColumn);
+        }
+        else {
+            Value value = pageReader.getJson(inputColumn);
+            if (countingJsonBytes) {
+                stats.addBytes(outputColumn, JsonLimits.bytesOf(value), 0L);
             }
-            else {
-                String jsonPath = new StringBuilder("$['").append(Utils.escape(outputColumn.getName(), true)).append("']").toString();
-                pageBuilder.setJson(outputColumn, jsonVisitor.visit(jsonPath, defaultValue));
+            try {
+                visitAndSetJson(outputColumn, value, jsonLimits);
             }
+            catch (JsonLimits.Exceeded ex) {
+                stats.addJsonLimitViolation(outputColumn, ex.getViolation());
+                stats.beginJsonValue(); // not to count nodes of the visit abandoned
+                switch (jsonLimits.getAction()) {
+                    case TRUNCATE:
+                        visitAndSetJson(outputColumn, jsonLimits.truncate(value), null);
+                        break;
+                    case DEFAULT:
+                        setJsonDefault(outputColumn);
+                        break;
+                    default:
+                        setJson(outputColumn, value);
+                        break;
+                }
+            }
+        }
+        stats.endJsonValue(outputColumn);
+        if (jsonColumnRewrittenEvent != null) {
+            FlightEvents.commitJsonColumnRewritten(jsonColumnRewrittenEvent, outputColumn.getName(),
+                    stats.getJsonValueNodesVisited(), stats.getJsonValueMaxDepth());
+        }
+        if (timingJson) {
+            stats.jsonNanos += System.nanoTime() - started;
+        }
+    }
+
+    private void setJsonDefault(Column outputColumn)
+    {
+        Value defaultValue = (Value) plan.getDefaultValue(outputColumn);
+        if (defaultValue == null) {
+            pageBuilder.setNull(outputColumn);
+            stats.addNull(outputColumn);
         }
         else {
-            Value value = pageReader.getJson(inputColumn);
-            String jsonPath = new StringBuilder("$['").append(Utils.escape(outputColumn.getName(), true)).append("']").toString();
-            pageBuilder.setJson(outputColumn, jsonVisitor.visit(jsonPath, value));
+            stats.addDefault(outputColumn);
+            setJson(outputColumn, jsonVisitor.visit(plan.getJsonPath(outputColumn), defaultValue));
+        }
+    }
+
+    private void setJson(Column outputColumn, Value value)
+    {
+        pageBuilder.setJson(outputColumn, value);
+        if (countingJsonBytes) {
+            stats.addBytes(outputColumn, 0L, JsonLimits.bytesOf(value));
+        }
+    }
+
+    // @param visited null if visiting value was over json_time_budget_ms
+    private void setVisitedJson(Column outputColumn, Value value, Value visited)
+    {
+        if (visited != null) {
+            if (visited == value) {
+                stats.addJsonValueUnchanged(outputColumn); // no jsonpath rewrote it
+            }
+            setJson(outputColumn, visited);
+            return;
+        }
+        switch (jsonBudget.getAction()) {
+            case PASS_THROUGH:
+                setJson(outputColumn, value);
+                break;
+            case SET_NULL:
+                pageBuilder.setNull(outputColumn);
+                stats.addNull(outputColumn);
+                break;
+            default:
+                setJsonDefault(outputColumn);
+                break;
+        }
+    }
+
+    // @param limits started while visiting value, or null not to check value by limits
+    private void visitAndSetJson(Column outputColumn, Value value, JsonLimits limits)
+    {
+        if (slowJsonSampler == null) {
+            setVisitedJson(outputColumn, value, visitJson(outputColumn, value, limits));
+            return;
+        }
+        long visitStarted = System.nanoTime();
+        Value visited = visitJson(outputColumn, value, limits);
+        slowJsonSampler.offer(outputColumn, stats.records, value, System.nanoTime() - visitStarted, stats.getJsonValueMaxDepth());
+        setVisitedJson(outputColumn, value, visited);
+    }
+
+    // @return null if visiting value was over json_time_budget_ms
+    // @throws JsonLimits.Exceeded if value is over limits
+    private Value visitJson(Column outputColumn, Value value, JsonLimits limits)
+    {
+        if (jsonBudget == null && limits == null) {
+            return jsonVisitor.visit(plan.getJsonPath(outputColumn), value);
+        }
+        if (jsonBudget != null) {
+            jsonBudget.start();
+        }
+        if (limits != null) {
+            limits.start();
+        }
+        try {
+            return jsonVisitor.visit(plan.getJsonPath(outputColumn), value);
+        }
+        catch (JsonBudget.Exceeded ex) {
+            stats.addJsonBudgetExceeded(outputColumn);
+            return null;
+        }
+        finally {
+            if (jsonBudget != null) {
+                jsonBudget.stop();
+            }
+            if (limits != null) {
+                limits.stop();
+            }
         }
     }
 
     @Override
     public void timestampColumn(Column outputColumn)
     {
-        Column inputColumn = outputInputColumnMap.get(outputColumn);
-        if (inputColumn == null || pageReader.isNull(inputColumn)) {
-            Instant defaultValue = (Instant) outputDefaultMap.get(outputColumn);
+        Column inputColumn = plan.getInputColumn(outputColumn);
+        if (inputColumn == null || isNull(inputColumn)) {
+            Timestamp defaultValue = plan.getDefaultTimestamp(outputColumn);
             if (defaultValue == null) {
                 pageBuilder.setNull(outputColumn);
+                stats.addNull(outputColumn);
             }
             else {
-                pageBuilder.setTimestamp(outputColumn, Timestamp.ofInstant(defaultValue));
+                stats.addDefault(outputColumn);
+                pageBuilder.setTimestamp(outputColumn, defaultValue);
+                stats.addBytes(outputColumn, 0L, TIMESTAMP_BYTES);
             }
         }
         else {
             pageBuilder.setTimestamp(outputColumn, pageReader.getTimestamp(inputColumn));
+            stats.addBytes(outputColumn, TIMESTAMP_BYTES, TIMESTAMP_BYTES);
         }
     }
 }
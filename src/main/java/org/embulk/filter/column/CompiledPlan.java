@@ -0,0 +1,178 @@
+/*
+ * Copyright 2026 The Embulk project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.embulk.filter.column;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import org.embulk.spi.Column;
+import org.embulk.spi.type.BooleanType;
+import org.embulk.spi.type.DoubleType;
+import org.embulk.spi.type.JsonType;
+import org.embulk.spi.type.LongType;
+import org.embulk.spi.type.StringType;
+import org.embulk.spi.type.TimestampType;
+import org.embulk.spi.type.Type;
+import org.embulk.util.json.JsonParser;
+import org.msgpack.value.Value;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable result of {@link ColumnPlan#compile()}.
+ *
+ * It is built once in {@code transaction()} and shipped to tasks through {@code TaskSource}, so that
+ * {@code open()} restores it without looking up column configs or compiling jsonpaths again.
+ */
+public class CompiledPlan
+{
+    public static final int NO_INPUT_COLUMN = -1;
+
+    // identifies the configs and the input schema this plan is compiled from
+    private final String fingerprint;
+    // output column index => input column index, or NO_INPUT_COLUMN
+    private final List<Integer> inputColumnIndexes;
+    // output column index => default value encoded as a string, or null
+    private final List<String> defaultValues;
+    // jsonpath
+    private final List<String> jsonShouldVisit;
+    // parent jsonpath => [ json column ]
+    private final Map<String, List<JsonColumn>> jsonColumns;
+    // parent jsonpath => [ json column ]
+    private final Map<String, List<JsonColumn>> jsonAddColumns;
+    // parent jsonpath => [ jsonpath ]
+    private final Map<String, List<String>> jsonDropColumns;
+
+    @JsonCreator
+    CompiledPlan(
+            @JsonProperty("fingerprint") String fingerprint,
+            @JsonProperty("input_column_indexes") List<Integer> inputColumnIndexes,
+            @JsonProperty("default_values") List<String> defaultValues,
+            @JsonProperty("json_should_visit") List<String> jsonShouldVisit,
+            @JsonProperty("json_columns") Map<String, List<JsonColumn>> jsonColumns,
+            @JsonProperty("json_add_columns") Map<String, List<JsonColumn>> jsonAddColumns,
+            @JsonProperty("json_drop_columns") Map<String, List<String>> jsonDropColumns)
+    {
+        this.fingerprint = fingerprint;
+        this.inputColumnIndexes = Collections.unmodifiableList(inputColumnIndexes);
+        this.defaultValues = Collections.unmodifiableList(defaultValues);
+        this.jsonShouldVisit = Collections.unmodifiableList(jsonShouldVisit);
+        this.jsonColumns = Collections.unmodifiableMap(jsonColumns);
+        this.jsonAddColumns = Collections.unmodifiableMap(jsonAddColumns);
+        this.jsonDropColumns = Collections.unmodifiableMap(jsonDropColumns);
+    }
+
+    @JsonProperty("fingerprint")
+    public String getFingerprint()
+    {
+        return fingerprint;
+    }
+
+    @JsonProperty("input_column_indexes")
+    public List<Integer> getInputColumnIndexes()
+    {
+        return inputColumnIndexes;
+    }
+
+    @JsonProperty("default_values")
+    public List<String> getDefaultValues()
+    {
+        return defaultValues;
+    }
+
+    @JsonProperty("json_should_visit")
+    public List<String> getJsonShouldVisit()
+    {
+        return jsonShouldVisit;
+    }
+
+    @JsonProperty("json_columns")
+    public Map<String, List<JsonColumn>> getJsonColumns()
+    {
+        return jsonColumns;
+    }
+
+    @JsonProperty("json_add_columns")
+    public Map<String, List<JsonColumn>> getJsonAddColumns()
+    {
+        return jsonAddColumns;
+    }
+
+    @JsonProperty("json_drop_columns")
+    public Map<String, List<String>> getJsonDropColumns()
+    {
+        return jsonDropColumns;
+    }
+
+    public int getInputColumnIndex(Column outputColumn)
+    {
+        return inputColumnIndexes.get(outputColumn.getIndex());
+    }
+
+    // @return null if no default value is configured
+    public Object getDefaultValue(Column outputColumn)
+    {
+        return decodeDefaultValue(defaultValues.get(outputColumn.getIndex()), outputColumn.getType());
+    }
+
+    static List<String> encodeDefaultValues(List<Object> defaultValues)
+    {
+        List<String> encoded = new ArrayList<>(defaultValues.size());
+        for (Object defaultValue : defaultValues) {
+            if (defaultValue == null) {
+                encoded.add(null);
+            }
+            else if (defaultValue instanceof Value) {
+                encoded.add(((Value) defaultValue).toJson());
+            }
+            else {
+                // Boolean, Long, Double, String, and Instant are restored from their toString()
+                encoded.add(defaultValue.toString());
+            }
+        }
+        return encoded;
+    }
+
+    static Object decodeDefaultValue(String encoded, Type type)
+    {
+        if (encoded == null) {
+            return null;
+        }
+        if (type instanceof BooleanType) {
+            return Boolean.valueOf(encoded);
+        }
+        else if (type instanceof LongType) {
+            return Long.valueOf(encoded);
+        }
+        else if (type instanceof DoubleType) {
+            return Double.valueOf(encoded);
+        }
+        else if (type instanceof StringType) {
+            return encoded;
+        }
+        else if (type instanceof JsonType) {
+            return new JsonParser().parse(encoded);
+        }
+        else if (type instanceof TimestampType) {
+            return Instant.parse(encoded);
+        }
+        return null;
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright 2026 The Embulk project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.embulk.filter.column;
+
+/**
+ * Java Flight Recorder events of the filter.
+ *
+ * Java 8 does not have the jdk.jfr API, so this one does nothing. The JAR is multi-release, and
+ * Java 11 and later load {@code META-INF/versions/11/org/embulk/filter/column/FlightEvents.class}
+ * built from {@code src/main/java11} instead, which emits the events.
+ *
+ * Each begin method returns an event to pass to its commit method, or null when the event is not
+ * enabled. Callers should not compute anything for the event before they get non-null.
+ */
+final class FlightEvents
+{
+    private FlightEvents()
+    {
+    }
+
+    static Object beginPageTransformed()
+    {
+        return null;
+    }
+
+    static void commitPageTransformed(Object event, long records, long bytes)
+    {
+    }
+
+    static Object beginJsonColumnRewritten()
+    {
+        return null;
+    }
+
+    static void commitJsonColumnRewritten(Object event, String columnName, long nodes, int depth)
+    {
+    }
+
+    static Object beginPlanCompiled()
+    {
+        return null;
+    }
+
+    static void commitPlanCompiled(Object event, int outputColumns, int jsonPaths)
+    {
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2026 The Embulk project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.embulk.filter.column;
+
+import org.embulk.config.ConfigException;
+import org.embulk.filter.column.ColumnFilterPlugin.PluginTask;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time budget of visiting each json value by json_time_budget_ms.
+ *
+ * JsonVisitor counts every node it iterates by addNode(), including nodes passed through or dropped by jsonpaths,
+ * so that a wide container of few visited jsonpaths is bounded too. A value is timed from start(), and
+ * System.nanoTime() is called again only every CHECK_INTERVAL nodes, so that values of fewer nodes cost only the counter.
+ * A value over the budget is abandoned by Exceeded, which is thrown without its stack trace.
+ *
+ * It is of a task, and not thread-safe.
+ */
+final class JsonBudget
+{
+    // nodes between checks of System.nanoTime(), a power of 2
+    static final int CHECK_INTERVAL = 256;
+
+    // what to write for a value over the budget, by json_budget_action
+    enum Action
+    {
+        // writes the value as it is
+        PASS_THROUGH,
+        // writes null
+        SET_NULL,
+        // writes the default value of the column, or null
+        DEFAULT;
+
+        static Action of(String name)
+        {
+            try {
+                return valueOf(name.toUpperCase(Locale.ENGLISH));
+            }
+            catch (IllegalArgumentException ex) {
+                throw new ConfigException(String.format("json_budget_action: '%s' is not one of pass_through, set_null, or default", name));
+            }
+        }
+    }
+
+    // Thrown out of JsonVisitor when the value being visited is over the budget
+    static final class Exceeded extends RuntimeException
+    {
+        private Exceeded()
+        {
+            super("json value over json_time_budget_ms", null, false, false);
+        }
+    }
+
+    private static final Exceeded EXCEEDED = new Exceeded();
+
+    private final long budgetNanos;
+    private final Action action;
+    // between start() and stop(), out of which values such as defaults are not timed
+    private boolean running;
+    private int nodes;
+    private long deadline;
+
+    JsonBudget(long budgetNanos, Action action)
+    {
+        this.budgetNanos = budgetNanos;
+        this.action = action;
+    }
+
+    // @return null if json_time_budget_ms is not set
+    static JsonBudget of(PluginTask task)
+    {
+        Action action = Action.of(task.getJsonBudgetAction());
+        if (!task.getJsonTimeBudgetMs().isPresent()) {
+            return null;
+        }
+        long budgetMs = task.getJsonTimeBudgetMs().get();
+        if (budgetMs <= 0) {
+            throw new ConfigException("\"json_time_budget_ms\" must be positive.");
+        }
+        return new JsonBudget(TimeUnit.MILLISECONDS.toNanos(budgetMs), action);
+    }
+
+    Action getAction()
+    {
+        return action;
+    }
+
+    void start()
+    {
+        running = true;
+        nodes = 0;
+        deadline = System.nanoTime() + budgetNanos;
+    }
+
+    void stop()
+    {
+        running = false;
+    }
+
+    void addNode()
+    {
+        if ((++nodes & (CHECK_INTERVAL - 1)) == 0 && running) {
+            check();
+        }
+    }
+
+    private void check()
+    {
+        if (System.nanoTime() - deadline >= 0) {
+            throw EXCEEDED;
+        }
+    }
+}
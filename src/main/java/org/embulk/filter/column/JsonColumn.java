@@ -16,20 +16,26 @@
 
 package org.embulk.filter.column;
 
+import com.fasterxml.jackson.annotation.JsonAutoDetect;
+import com.fasterxml.jackson.annotation.JsonAutoDetect.Visibility;
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
 import io.github.medjed.jsonpathcompiler.expressions.Path;
 import io.github.medjed.jsonpathcompiler.expressions.path.ArrayIndexOperation;
 import io.github.medjed.jsonpathcompiler.expressions.path.ArrayPathToken;
-import io.github.medjed.jsonpathcompiler.expressions.path.PathCompiler;
 import io.github.medjed.jsonpathcompiler.expressions.path.PathToken;
 import io.github.medjed.jsonpathcompiler.expressions.path.PropertyPathToken;
 import io.github.medjed.jsonpathcompiler.expressions.path.RootPathToken;
 import io.github.medjed.jsonpathcompiler.expressions.path.WildcardPathToken;
 import org.embulk.config.ConfigException;
 import org.embulk.spi.type.Type;
+import org.embulk.util.json.JsonParser;
 import org.msgpack.value.StringValue;
 import org.msgpack.value.Value;
 import org.msgpack.value.ValueFactory;
 
+// Serialized into TaskSource as a part of CompiledPlan so that tasks do not compile jsonpaths again
+@JsonAutoDetect(getterVisibility = Visibility.NONE, isGetterVisibility = Visibility.NONE, fieldVisibility = Visibility.NONE)
 public class JsonColumn
 {
     private final String path;
@@ -63,8 +69,8 @@ public class JsonColumn
 
     public JsonColumn(String path, Type type, Value defaultValue, String src)
     {
-        Path compiledPath = PathCompiler.compile(path);
-        Path compiledSrc = src == null ? compiledPath : PathCompiler.compile(src);
+        Path compiledPath = JsonPathUtil.compile(path);
+        Path compiledSrc = src == null ? compiledPath : JsonPathUtil.compile(src);
         RootPathToken compiledRoot = (RootPathToken) compiledPath.getRoot();
         RootPathToken compiledSrcRoot = (RootPathToken) compiledSrc.getRoot();
         this.path = compiledPath.toString();
@@ -92,6 +98,38 @@ public class JsonColumn
         }
     }
 
+    // Restore an already compiled json column without compiling jsonpaths
+    @JsonCreator
+    private JsonColumn(
+            @JsonProperty("path") String path,
+            @JsonProperty("type") String typeName,
+            @JsonProperty("default") String defaultJson,
+            @JsonProperty("src") String src,
+            @JsonProperty("parent_path") String parentPath,
+            @JsonProperty("tail_index") Long tailIndex,
+            @JsonProperty("tail_name") String tailName,
+            @JsonProperty("src_parent_path") String srcParentPath,
+            @JsonProperty("src_tail_index") Long srcTailIndex,
+            @JsonProperty("src_tail_name") String srcTailName)
+    {
+        this.path = path;
+        this.type = typeName == null ? null : ColumnSpec.parseType(typeName);
+        this.defaultValue = (defaultJson == null ? ValueFactory.newNil() : new JsonParser().parse(defaultJson));
+        this.src = src;
+
+        this.pathValue = ValueFactory.newString(path);
+        this.parentPath = parentPath;
+        this.tailIndex = tailIndex;
+        this.parentPathValue = ValueFactory.newString(parentPath);
+        this.tailNameValue = tailName == null ? ValueFactory.newNil() : ValueFactory.newString(tailName);
+
+        this.srcValue = ValueFactory.newString(src);
+        this.srcParentPath = srcParentPath;
+        this.srcTailIndex = srcTailIndex;
+        this.srcParentPathValue = ValueFactory.newString(srcParentPath);
+        this.srcTailNameValue = srcTailName == null ? ValueFactory.newNil() : ValueFactory.newString(srcTailName);
+    }
+
     // $['foo'] or $.foo => foo
     // $['foo'][0] or $.foo[0] or $['foo'][*] or $.foo[*] => null
     private String getTailName(RootPathToken root)
@@ -124,6 +162,7 @@ public class JsonColumn
         }
     }
 
+    @JsonProperty("path")
     public String getPath()
     {
         return path;
@@ -139,6 +178,7 @@ public class JsonColumn
         return defaultValue;
     }
 
+    @JsonProperty("src")
     public String getSrc()
     {
         return src;
@@ -149,11 +189,13 @@ public class JsonColumn
         return pathValue;
     }
 
+    @JsonProperty("parent_path")
     public String getParentPath()
     {
         return parentPath;
     }
 
+    @JsonProperty("tail_index")
     public Long getTailIndex()
     {
         return tailIndex;
@@ -174,11 +216,13 @@ public class JsonColumn
         return srcValue;
     }
 
+    @JsonProperty("src_parent_path")
     public String getSrcParentPath()
     {
         return srcParentPath;
     }
 
+    @JsonProperty("src_tail_index")
     public Long getSrcTailIndex()
     {
         return srcTailIndex;
@@ -194,20 +238,44 @@ public class JsonColumn
         return srcTailNameValue;
     }
 
+    @JsonProperty("type")
+    private String getTypeName()
+    {
+        return type == null ? null : type.getName();
+    }
+
+    @JsonProperty("default")
+    private String getDefaultJson()
+    {
+        return defaultValue.isNilValue() ? null : defaultValue.toJson();
+    }
+
+    @JsonProperty("tail_name")
+    private String getTailName()
+    {
+        return tailNameValue.isNilValue() ? null : tailNameValue.asStringValue().asString();
+    }
+
+    @JsonProperty("src_tail_name")
+    private String getSrcTailName()
+    {
+        return srcTailNameValue.isNilValue() ? null : srcTailNameValue.asStringValue().asString();
+    }
+
     // like File.dirname
     public static String parentPath(String path)
     {
-        return PathCompiler.compile(path).getParentPath();
+        return JsonPathUtil.compile(path).getParentPath();
     }
 
     public static String tailName(String path)
     {
-        return ((RootPathToken) PathCompiler.compile(path).getRoot()).getTailPath();
+        return ((RootPathToken) JsonPathUtil.compile(path).getRoot()).getTailPath();
     }
 
     public static Long getTailIndex(String path)
     {
-        Path compiledPath = PathCompiler.compile(path);
+        Path compiledPath = JsonPathUtil.compile(path);
         PathToken tail = ((RootPathToken) compiledPath.getRoot()).getTail();
         if (tail instanceof ArrayPathToken) {
             ArrayIndexOperation arrayIndexOperation = ((ArrayPathToken) tail).getArrayIndexOperation();
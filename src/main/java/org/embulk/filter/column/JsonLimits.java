@@ -0,0 +1,453 @@
+/*
+ * Copyright 2026 The Embulk project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.embulk.filter.column;
+
+import org.embulk.config.ConfigException;
+import org.embulk.filter.column.ColumnFilterPlugin.PluginTask;
+import org.msgpack.value.ArrayValue;
+import org.msgpack.value.IntegerValue;
+import org.msgpack.value.MapValue;
+import org.msgpack.value.Value;
+import org.msgpack.value.ValueFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Limits of json values by max_json_bytes, max_json_depth and max_array_elements, checked while JsonVisitor visits values.
+ *
+ * Bytes of a value are its size in msgpack, summed up while walking the value. JsonVisitor calls the hooks of this for
+ * nodes it iterates between start() and stop(), and subtrees it does not iterate, such as those passed through or
+ * dropped by jsonpaths, are walked by addSubtree(), so that each node of a value is counted once in the visit.
+ * A walk stops as soon as it finds a limit exceeded, by Exceeded thrown without its stack trace, so that it does not
+ * walk a large value further than the limits. Each container is checked by its size before its elements, whose bytes
+ * are a byte or more each, so that a container over max_array_elements or max_json_bytes by its size alone is found
+ * without walking it. Scalars are not sized without max_json_bytes.
+ *
+ * It is of a task, and not thread-safe.
+ */
+final class JsonLimits
+{
+    enum Violation
+    {
+        BYTES, DEPTH, ARRAY_ELEMENTS
+    }
+
+    // what to do with a value over a limit, by json_limit_action
+    enum Action
+    {
+        // cuts arrays to max_array_elements, containers deeper than max_json_depth to nil, and elements after max_json_bytes
+        TRUNCATE,
+        // writes the default value of the column, or null
+        DEFAULT,
+        // writes the value as it is, without visiting it by jsonpaths
+        PASS_THROUGH;
+
+        static Action of(String name)
+        {
+            try {
+                return valueOf(name.toUpperCase(Locale.ENGLISH));
+            }
+            catch (IllegalArgumentException ex) {
+                throw new ConfigException(String.format("json_limit_action: '%s' is not one of truncate, default, or pass_through", name));
+            }
+        }
+    }
+
+    // Thrown out of JsonVisitor when the value being visited is over a limit
+    static final class Exceeded extends RuntimeException
+    {
+        private final Violation violation;
+
+        private Exceeded(Violation violation)
+        {
+            super("json value over " + violation, null, false, false);
+            this.violation = violation;
+        }
+
+        Violation getViolation()
+        {
+            return violation;
+        }
+    }
+
+    private static final Exceeded BYTES_EXCEEDED = new Exceeded(Violation.BYTES);
+    private static final Exceeded DEPTH_EXCEEDED = new Exceeded(Violation.DEPTH);
+    private static final Exceeded ARRAY_ELEMENTS_EXCEEDED = new Exceeded(Violation.ARRAY_ELEMENTS);
+
+    private final long maxBytes;
+    private final int maxDepth;
+    private final int maxArrayElements;
+    private final Action action;
+    // false without max_json_bytes, not to size scalars
+    private final boolean checksBytes;
+    // bytes of the value being walked
+    private long bytes;
+    // between start() and stop(), out of which hooks count nothing, such as for defaults injected
+    private boolean running;
+    // containers entered by JsonVisitor
+    private int depth;
+
+    JsonLimits(long maxBytes, int maxDepth, int maxArrayElements, Action action)
+    {
+        this.maxBytes = maxBytes;
+        this.maxDepth = maxDepth;
+        this.maxArrayElements = maxArrayElements;
+        this.action = action;
+        this.checksBytes = maxBytes < Long.MAX_VALUE;
+    }
+
+    // @return null if no limit is configured
+    static JsonLimits of(PluginTask task)
+    {
+        Action action = Action.of(task.getJsonLimitAction());
+        if (!task.getMaxJsonBytes().isPresent() && !task.getMaxJsonDepth().isPresent() && !task.getMaxArrayElements().isPresent()) {
+            return null;
+        }
+        return new JsonLimits(
+                checkNotNegative("max_json_bytes", task.getMaxJsonBytes().orElse(Long.MAX_VALUE)),
+                (int) checkNotNegative("max_json_depth", task.getMaxJsonDepth().orElse(Integer.MAX_VALUE)),
+                (int) checkNotNegative("max_array_elements", task.getMaxArrayElements().orElse(Integer.MAX_VALUE)),
+                action);
+    }
+
+    private static long checkNotNegative(String name, long value)
+    {
+        if (value < 0) {
+            throw new ConfigException(String.format("\"%s\" must not be negative.", name));
+        }
+        return value;
+    }
+
+    Action getAction()
+    {
+        return action;
+    }
+
+    void start()
+    {
+        running = true;
+        bytes = 0;
+        depth = 0;
+    }
+
+    void stop()
+    {
+        running = false;
+    }
+
+    // Stops counting nodes which are not of the value, such as elements injected by add_columns
+    // @return whether it was running, to be given to resume()
+    boolean pause()
+    {
+        boolean wasRunning = running;
+        running = false;
+        return wasRunning;
+    }
+
+    void resume(boolean wasRunning)
+    {
+        running = wasRunning;
+    }
+
+    // A map or an array visited, before its elements
+    void enterContainer(int size, boolean isArray)
+    {
+        if (!running) {
+            return;
+        }
+        if (++depth > maxDepth) {
+            throw DEPTH_EXCEEDED;
+        }
+        if (isArray && size > maxArrayElements) {
+            throw ARRAY_ELEMENTS_EXCEEDED;
+        }
+        bytes += containerHeaderBytes(size);
+        if (bytes + (isArray ? size : 2L * size) > maxBytes) {
+            throw BYTES_EXCEEDED;
+        }
+    }
+
+    void exitContainer()
+    {
+        if (running) {
+            depth--;
+        }
+    }
+
+    // A scalar visited
+    void addScalar(Value value)
+    {
+        if (running && checksBytes) {
+            bytes += scalarBytes(value);
+            if (bytes > maxBytes) {
+                throw BYTES_EXCEEDED;
+            }
+        }
+    }
+
+    // A key, an element or a value not iterated by JsonVisitor, which is walked here
+    void addSubtree(Value value)
+    {
+        if (!running || (!checksBytes && !isContainer(value))) {
+            return;
+        }
+        Violation violation = check(value, depth + 1);
+        if (violation != null) {
+            throw exceededOf(violation);
+        }
+    }
+
+    // Elements of an array entered, which JsonVisitor picks by jsonpaths of columns instead of iterating
+    void addElements(ArrayValue arrayValue)
+    {
+        if (running) {
+            for (Value element : arrayValue) {
+                addSubtree(element);
+            }
+        }
+    }
+
+    // Entries of a map entered, which JsonVisitor picks by jsonpaths of columns instead of iterating
+    void addEntries(MapValue mapValue)
+    {
+        if (running) {
+            for (Map.Entry<Value, Value> entry : mapValue.entrySet()) {
+                addSubtree(entry.getKey());
+                addSubtree(entry.getValue());
+            }
+        }
+    }
+
+    private static Exceeded exceededOf(Violation violation)
+    {
+        switch (violation) {
+            case BYTES:
+                return BYTES_EXCEEDED;
+            case DEPTH:
+                return DEPTH_EXCEEDED;
+            default:
+                return ARRAY_ELEMENTS_EXCEEDED;
+        }
+    }
+
+    // Walks the whole value by itself, out of JsonVisitor
+    // @return the first limit found exceeded by the value, or null
+    Violation check(Value value)
+    {
+        bytes = 0;
+        return check(value, 1);
+    }
+
+    private Violation check(Value value, int depth)
+    {
+        if (value.isArrayValue()) {
+            if (depth > maxDepth) {
+                return Violation.DEPTH;
+            }
+            ArrayValue arrayValue = value.asArrayValue();
+            if (arrayValue.size() > maxArrayElements) {
+                return Violation.ARRAY_ELEMENTS;
+            }
+            bytes += containerHeaderBytes(arrayValue.size());
+            if (bytes + arrayValue.size() > maxBytes) {
+                return Violation.BYTES;
+            }
+            for (Value element : arrayValue) {
+                if (!checksBytes && !isContainer(element)) {
+                    continue;
+                }
+                Violation violation = check(element, depth + 1);
+                if (violation != null) {
+                    return violation;
+                }
+            }
+        }
+        else if (value.isMapValue()) {
+            if (depth > maxDepth) {
+                return Violation.DEPTH;
+            }
+            MapValue mapValue = value.asMapValue();
+            bytes += containerHeaderBytes(mapValue.size());
+            if (bytes + 2L * mapValue.size() > maxBytes) {
+                return Violation.BYTES;
+            }
+            for (Map.Entry<Value, Value> entry : mapValue.entrySet()) {
+                Violation violation = null;
+                if (checksBytes || isContainer(entry.getKey())) {
+                    violation = check(entry.getKey(), depth + 1);
+                }
+                if (violation == null && (checksBytes || isContainer(entry.getValue()))) {
+                    violation = check(entry.getValue(), depth + 1);
+                }
+                if (violation != null) {
+                    return violation;
+                }
+            }
+        }
+        else if (checksBytes) {
+            bytes += scalarBytes(value);
+        }
+        return bytes > maxBytes ? Violation.BYTES : null;
+    }
+
+    private static boolean isContainer(Value value)
+    {
+        return value.isArrayValue() || value.isMapValue();
+    }
+
+    // @return the value cut to the limits, whose bytes are max_json_bytes or less
+    Value truncate(Value value)
+    {
+        bytes = 0;
+        Value truncated = truncate(value, 1);
+        return truncated == null ? ValueFactory.newNil() : truncated;
+    }
+
+    // @return null if the value does not fit in the rest of max_json_bytes
+    private Value truncate(Value value, int depth)
+    {
+        if ((value.isArrayValue() || value.isMapValue()) && depth > maxDepth) {
+            value = ValueFactory.newNil();
+        }
+        if (value.isArrayValue()) {
+            ArrayValue arrayValue = value.asArrayValue();
+            int size = Math.min(arrayValue.size(), maxArrayElements);
+            long mark = bytes;
+            bytes += containerHeaderBytes(size);
+            if (bytes > maxBytes) {
+                bytes = mark;
+                return null;
+            }
+            List<Value> elements = new ArrayList<>();
+            for (int i = 0; i < size; i++) {
+                Value element = truncate(arrayValue.get(i), depth + 1);
+                if (element == null) {
+                    break;
+                }
+                elements.add(element);
+            }
+            return ValueFactory.newArray(elements);
+        }
+        else if (value.isMapValue()) {
+            long mark = bytes;
+            bytes += containerHeaderBytes(value.asMapValue().size());
+            if (bytes > maxBytes) {
+                bytes = mark;
+                return null;
+            }
+            List<Value> keyValues = new ArrayList<>();
+            for (Map.Entry<Value, Value> entry : value.asMapValue().entrySet()) {
+                long entryMark = bytes;
+                Value key = truncate(entry.getKey(), depth + 1);
+                Value element = key == null ? null : truncate(entry.getValue(), depth + 1);
+                if (element == null) {
+                    bytes = entryMark;
+                    break;
+                }
+                keyValues.add(key);
+                keyValues.add(element);
+            }
+            return ValueFactory.newMap(keyValues.toArray(new Value[0]));
+        }
+        long scalarBytes = scalarBytes(value);
+        if (bytes + scalarBytes > maxBytes) {
+            return null;
+        }
+        bytes += scalarBytes;
+        return value;
+    }
+
+    // @return size of value in msgpack, walking all of it
+    static long bytesOf(Value value)
+    {
+        if (value.isArrayValue()) {
+            ArrayValue arrayValue = value.asArrayValue();
+            long bytes = containerHeaderBytes(arrayValue.size());
+            for (Value element : arrayValue) {
+                bytes += bytesOf(element);
+            }
+            return bytes;
+        }
+        if (value.isMapValue()) {
+            MapValue mapValue = value.asMapValue();
+            long bytes = containerHeaderBytes(mapValue.size());
+            for (Map.Entry<Value, Value> entry : mapValue.entrySet()) {
+                bytes += bytesOf(entry.getKey()) + bytesOf(entry.getValue());
+            }
+            return bytes;
+        }
+        return scalarBytes(value);
+    }
+
+    // header of msgpack arrays and maps, which is for the size of the original even if elements are cut
+    private static int containerHeaderBytes(int size)
+    {
+        return size < 16 ? 1 : size < 65536 ? 3 : 5;
+    }
+
+    private static long scalarBytes(Value value)
+    {
+        switch (value.getValueType()) {
+            case NIL:
+            case BOOLEAN:
+                return 1;
+            case INTEGER:
+                return integerBytes(value.asIntegerValue());
+            case FLOAT:
+                return 9;
+            case STRING:
+                return rawBytes(value.asStringValue().asByteBuffer().remaining(), 32);
+            case BINARY:
+                return rawBytes(value.asBinaryValue().asByteBuffer().remaining(), 0);
+            default:
+                return 6 + value.asExtensionValue().getData().length;
+        }
+    }
+
+    // @param fixLength length under which the header is of a byte, which is 32 for strings and 0 for binaries
+    private static long rawBytes(int length, int fixLength)
+    {
+        if (length < fixLength) {
+            return 1 + length;
+        }
+        return (length < 256 ? 2 : length < 65536 ? 3 : 5) + length;
+    }
+
+    private static int integerBytes(IntegerValue value)
+    {
+        if (!value.isInLongRange()) {
+            return 9;
+        }
+        long v = value.asLong();
+        if (v >= -32 && v < 128) {
+            return 1;
+        }
+        if (v >= -128 && v < 256) {
+            return 2;
+        }
+        if (v >= -32768 && v < 65536) {
+            return 3;
+        }
+        if (v >= Integer.MIN_VALUE && v <= 0xFFFFFFFFL) {
+            return 5;
+        }
+        return 9;
+    }
+}
@@ -28,15 +28,64 @@ import io.github.medjed.jsonpathcompiler.expressions.path.RootPathToken;
 import io.github.medjed.jsonpathcompiler.expressions.path.ScanPathToken;
 import org.embulk.config.ConfigException;
 
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
 public class JsonPathUtil
 {
+    // Compiled paths of finished transactions are not referred anymore. Just forget them all when it gets full.
+    private static final int MAX_CACHED_PATHS = 65536;
+    // jsonpath => compiled path
+    private static final ConcurrentHashMap<String, Path> compiledPathCache = new ConcurrentHashMap<>();
+    private static final AtomicLong compileCount = new AtomicLong();
+    private static final AtomicLong cacheHitCount = new AtomicLong();
+
     private JsonPathUtil() {}
 
+    /**
+     * Same as PathCompiler.compile, but memoized because the same jsonpath is compiled many times to plan.
+     *
+     * @throws InvalidPathException if the path is invalid, which is not memoized
+     */
+    public static Path compile(String path)
+    {
+        Path compiledPath = compiledPathCache.get(path);
+        if (compiledPath != null) {
+            cacheHitCount.incrementAndGet();
+            return compiledPath;
+        }
+        compiledPath = PathCompiler.compile(path);
+        compileCount.incrementAndGet();
+        if (compiledPathCache.size() >= MAX_CACHED_PATHS) {
+            compiledPathCache.clear();
+        }
+        compiledPathCache.put(path, compiledPath);
+        return compiledPath;
+    }
+
+    // Forgets compiled paths, as a new JVM does
+    static void clearCache()
+    {
+        compiledPathCache.clear();
+    }
+
+    // Number of actual PathCompiler.compile calls by compile(String)
+    public static long getCompileCount()
+    {
+        return compileCount.get();
+    }
+
+    // Number of compile(String) calls answered from the cache
+    public static long getCacheHitCount()
+    {
+        return cacheHitCount.get();
+    }
+
     public static void assertJsonPathFormat(String path)
     {
         Path compiledPath;
         try {
-            compiledPath = PathCompiler.compile(path);
+            compiledPath = compile(path);
         }
         catch (InvalidPathException e) {
             throw new ConfigException(String.format("jsonpath %s, %s", path, e.getMessage()));
@@ -82,7 +131,7 @@ public class JsonPathUtil
     {
         Path compiledPath;
         try {
-            compiledPath = PathCompiler.compile(path);
+            compiledPath = compile(path);
         }
         catch (InvalidPathException e) {
             throw new ConfigException(String.format("jsonpath %s, %s", path, e.getMessage()));
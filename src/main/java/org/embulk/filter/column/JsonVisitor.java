@@ -23,7 +23,6 @@ import io.github.medjed.jsonpathcompiler.expressions.path.PathCompiler;
 import io.github.medjed.jsonpathcompiler.expressions.path.PathToken;
 import io.github.medjed.jsonpathcompiler.expressions.path.WildcardPathToken;
 import org.embulk.config.ConfigException;
-import org.embulk.filter.column.ColumnFilterPlugin.ColumnConfig;
 import org.embulk.filter.column.ColumnFilterPlugin.PluginTask;
 
 import org.embulk.spi.Schema;
@@ -45,6 +44,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
@@ -54,29 +54,152 @@ import java.util.Map;
 public class JsonVisitor
 {
     static final Logger logger = LoggerFactory.getLogger(ColumnFilterPlugin.class);
-    final PluginTask task;
-    final Schema inputSchema;
-    final Schema outputSchema;
+    // These are not modified after construction, so that one JsonVisitor can be shared by tasks.
     // jsonpath
-    final HashSet<String> shouldVisitSet = new HashSet<>();
+    final HashSet<String> shouldVisitSet;
     // parent jsonpath => { jsonpath => json column }
-    final HashMap<String, LinkedHashMap<String, JsonColumn>> jsonColumns = new HashMap<>();
+    final HashMap<String, LinkedHashMap<String, JsonColumn>> jsonColumns;
     // parent jsonpath => { jsonpath => json column }
-    final HashMap<String, LinkedHashMap<String, JsonColumn>> jsonAddColumns = new HashMap<>();
+    final HashMap<String, LinkedHashMap<String, JsonColumn>> jsonAddColumns;
     // parent jsonpath => [ jsonpath ]
-    final HashMap<String, HashSet<String>> jsonDropColumns = new HashMap<>();
+    final HashMap<String, HashSet<String>> jsonDropColumns;
+    // counters of a task, or null for the shared one
+    private final ColumnStats stats;
+    // elements of containers being rebuilt, reused by values of a task, or null for the shared one
+    private final ValueStack stack;
+    // time budget of values of a task, or null
+    private JsonBudget budget;
+    // limits of values of a task, or null
+    private JsonLimits limits;
+
+    // Values pushed in order, and popped as the elements of each container rebuilt
+    static final class ValueStack
+    {
+        private Value[] values;
+        private int size;
+
+        ValueStack(int capacity)
+        {
+            this.values = new Value[capacity];
+        }
+
+        int size()
+        {
+            return size;
+        }
+
+        void push(Value value)
+        {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, Math.max(8, size * 2));
+            }
+            values[size++] = value;
+        }
+
+        // @return values pushed since mark, which are removed
+        Value[] popSince(int mark)
+        {
+            Value[] popped = Arrays.copyOfRange(values, mark, size);
+            discardSince(mark);
+            return popped;
+        }
+
+        void discardSince(int mark)
+        {
+            Arrays.fill(values, mark, size, null);
+            size = mark;
+        }
+
+        void clear()
+        {
+            Arrays.fill(values, 0, size, null);
+            size = 0;
+        }
+    }
 
     JsonVisitor(PluginTask task, Schema inputSchema, Schema outputSchema)
     {
-        this.task         = task;
-        this.inputSchema  = inputSchema;
-        this.outputSchema = outputSchema;
+        this(task, ColumnSpec.columnsOf(task), ColumnSpec.addColumnsOf(task), ColumnSpec.dropColumnsOf(task));
+    }
 
-        buildShouldVisitSet();
-        buildJsonSchema();
+    JsonVisitor(PluginTask task, List<ColumnSpec> columns, List<ColumnSpec> addColumns, List<ColumnSpec> dropColumns)
+    {
+        this();
+        buildShouldVisitSet(columns, addColumns, dropColumns);
+        buildJsonSchema(task, columns, addColumns, dropColumns);
     }
 
-    static Value getDefault(PluginTask task, String name, Type type, ColumnConfig columnConfig)
+    // Restore jsonpaths compiled in transaction() without compiling them again
+    JsonVisitor(CompiledPlan plan)
+    {
+        this();
+        this.shouldVisitSet.addAll(plan.getJsonShouldVisit());
+        for (Map.Entry<String, List<JsonColumn>> entry : plan.getJsonColumns().entrySet()) {
+            LinkedHashMap<String, JsonColumn> columns = new LinkedHashMap<>();
+            for (JsonColumn jsonColumn : entry.getValue()) {
+                columns.put(jsonColumn.getPath(), jsonColumn);
+            }
+            this.jsonColumns.put(entry.getKey(), columns);
+        }
+        for (Map.Entry<String, List<JsonColumn>> entry : plan.getJsonAddColumns().entrySet()) {
+            LinkedHashMap<String, JsonColumn> columns = new LinkedHashMap<>();
+            for (JsonColumn jsonColumn : entry.getValue()) {
+                columns.put(jsonColumn.getPath(), jsonColumn);
+            }
+            this.jsonAddColumns.put(entry.getKey(), columns);
+        }
+        for (Map.Entry<String, List<String>> entry : plan.getJsonDropColumns().entrySet()) {
+            this.jsonDropColumns.put(entry.getKey(), new HashSet<>(entry.getValue()));
+        }
+    }
+
+    private JsonVisitor()
+    {
+        this.shouldVisitSet = new HashSet<>();
+        this.jsonColumns = new HashMap<>();
+        this.jsonAddColumns = new HashMap<>();
+        this.jsonDropColumns = new HashMap<>();
+        this.stats = null;
+        this.stack = null;
+    }
+
+    private JsonVisitor(JsonVisitor shared, ColumnStats stats)
+    {
+        this.shouldVisitSet = shared.shouldVisitSet;
+        this.jsonColumns = shared.jsonColumns;
+        this.jsonAddColumns = shared.jsonAddColumns;
+        this.jsonDropColumns = shared.jsonDropColumns;
+        this.stats = stats;
+        this.stack = new ValueStack(0);
+    }
+
+    // @return a visitor of a task which shares jsonpaths with this, and counts into stats
+    JsonVisitor withStats(ColumnStats stats)
+    {
+        return new JsonVisitor(this, stats);
+    }
+
+    // Counts nodes iterated, whether visited, passed through or dropped, into budget, which throws JsonBudget.Exceeded while it is started and over.
+    // Only for a visitor of a task.
+    void setBudget(JsonBudget budget)
+    {
+        if (stats == null) {
+            throw new IllegalStateException("JsonVisitor shared by tasks cannot have a budget");
+        }
+        this.budget = budget;
+    }
+
+    // Counts bytes and depth of nodes iterated, and walks subtrees passed through or dropped, into limits,
+    // which throws JsonLimits.Exceeded while it is started and over. Only for a visitor of a task.
+    void setLimits(JsonLimits limits)
+    {
+        if (stats == null) {
+            throw new IllegalStateException("JsonVisitor shared by tasks cannot have limits");
+        }
+        this.limits = limits;
+    }
+
+    static Value getDefault(PluginTask task, String name, Type type, ColumnSpec columnConfig)
     {
         Object defaultValue = ColumnVisitorImpl.getDefault(task, name, type, columnConfig);
         if (defaultValue == null) {
@@ -107,7 +230,7 @@ public class JsonVisitor
 
     private void jsonColumnsPut(String path, JsonColumn value)
     {
-        Path compiledPath = PathCompiler.compile(path);
+        Path compiledPath = JsonPathUtil.compile(path);
         String parentPath = compiledPath.getParentPath();
         if (! jsonColumns.containsKey(parentPath)) {
             jsonColumns.put(parentPath, new LinkedHashMap<String, JsonColumn>());
@@ -117,7 +240,7 @@ public class JsonVisitor
 
     private boolean jsonColumnsContainsKey(String path)
     {
-        Path compiledPath = PathCompiler.compile(path);
+        Path compiledPath = JsonPathUtil.compile(path);
         String parentPath = compiledPath.getParentPath();
         if (jsonColumns.containsKey(parentPath)) {
             return jsonColumns.get(parentPath).containsKey(compiledPath.toString());
@@ -129,7 +252,7 @@ public class JsonVisitor
 
     private void jsonAddColumnsPut(String path, JsonColumn value)
     {
-        Path compiledPath = PathCompiler.compile(path);
+        Path compiledPath = JsonPathUtil.compile(path);
         String parentPath = compiledPath.getParentPath();
         if (! jsonAddColumns.containsKey(parentPath)) {
             jsonAddColumns.put(parentPath, new LinkedHashMap<String, JsonColumn>());
@@ -139,7 +262,7 @@ public class JsonVisitor
 
     private boolean jsonAddColumnsContainsKey(String path)
     {
-        Path compiledPath = PathCompiler.compile(path);
+        Path compiledPath = JsonPathUtil.compile(path);
         String parentPath = compiledPath.getParentPath();
         if (jsonAddColumns.containsKey(parentPath)) {
             return jsonAddColumns.get(parentPath).containsKey(compiledPath.toString());
@@ -151,7 +274,7 @@ public class JsonVisitor
 
     private void jsonDropColumnsPut(String path)
     {
-        Path compiledPath = PathCompiler.compile(path);
+        Path compiledPath = JsonPathUtil.compile(path);
         String parentPath = compiledPath.getParentPath();
         if (! jsonDropColumns.containsKey(parentPath)) {
             jsonDropColumns.put(parentPath, new HashSet<String>());
@@ -159,10 +282,9 @@ public class JsonVisitor
         jsonDropColumns.get(parentPath).add(compiledPath.toString());
     }
 
-    private void buildJsonColumns()
+    private void buildJsonColumns(PluginTask task, List<ColumnSpec> columns)
     {
-        List<ColumnConfig> columns = task.getColumns();
-        for (ColumnConfig column : columns) {
+        for (ColumnSpec column : columns) {
             String name = column.getName();
             // skip NON json path notation to build output schema
             if (! PathCompiler.isProbablyJsonPath(name)) {
@@ -193,10 +315,9 @@ public class JsonVisitor
         }
     }
 
-    private void buildJsonAddColumns()
+    private void buildJsonAddColumns(PluginTask task, List<ColumnSpec> addColumns)
     {
-        List<ColumnConfig> addColumns = task.getAddColumns();
-        for (ColumnConfig column : addColumns) {
+        for (ColumnSpec column : addColumns) {
             String name = column.getName();
             // skip NON json path notation to build output schema
             if (! PathCompiler.isProbablyJsonPath(name)) {
@@ -226,10 +347,9 @@ public class JsonVisitor
         }
     }
 
-    private void buildJsonDropColumns()
+    private void buildJsonDropColumns(List<ColumnSpec> dropColumns)
     {
-        List<ColumnConfig> dropColumns = task.getDropColumns();
-        for (ColumnConfig dropColumn : dropColumns) {
+        for (ColumnSpec dropColumn : dropColumns) {
             String name = dropColumn.getName();
             // skip NON json path notation to build output schema
             if (! PathCompiler.isProbablyJsonPath(name)) {
@@ -240,28 +360,28 @@ public class JsonVisitor
     }
 
     // build jsonColumns, jsonAddColumns, and jsonDropColumns
-    private void buildJsonSchema()
+    private void buildJsonSchema(PluginTask task, List<ColumnSpec> columns, List<ColumnSpec> addColumns, List<ColumnSpec> dropColumns)
     {
-        if (task.getDropColumns().size() > 0) {
-            buildJsonDropColumns();
+        if (dropColumns.size() > 0) {
+            buildJsonDropColumns(dropColumns);
         }
-        else if (task.getColumns().size() > 0) {
-            buildJsonColumns();
+        else if (columns.size() > 0) {
+            buildJsonColumns(task, columns);
         }
         // Add columns to last. If you want to add to head or middle, you can use `columns` option
-        if (task.getAddColumns().size() > 0) {
-            buildJsonAddColumns();
+        if (addColumns.size() > 0) {
+            buildJsonAddColumns(task, addColumns);
         }
     }
 
     // json partial path => Boolean to avoid unnecessary type: json visit
-    private void buildShouldVisitSet()
+    private void buildShouldVisitSet(List<ColumnSpec> columns, List<ColumnSpec> addColumns, List<ColumnSpec> dropColumns)
     {
-        ArrayList<ColumnConfig> columnConfigs = new ArrayList<>(task.getColumns());
-        columnConfigs.addAll(task.getAddColumns());
-        columnConfigs.addAll(task.getDropColumns());
+        ArrayList<ColumnSpec> columnConfigs = new ArrayList<>(columns);
+        columnConfigs.addAll(addColumns);
+        columnConfigs.addAll(dropColumns);
 
-        for (ColumnConfig columnConfig : columnConfigs) {
+        for (ColumnSpec columnConfig : columnConfigs) {
             String name = columnConfig.getName();
             if (!PathCompiler.isProbablyJsonPath(name)) {
                 continue;
@@ -270,7 +390,7 @@ public class JsonVisitor
             for (JsonColumn ancestorJsonColumn : getAncestorJsonColumnList(name)) {
                 this.shouldVisitSet.add(ancestorJsonColumn.getPath());
             }
-            Path path = PathCompiler.compile(name);
+            Path path = JsonPathUtil.compile(name);
             this.shouldVisitSet.add(path.toString());
         }
     }
@@ -291,7 +411,7 @@ public class JsonVisitor
         ArrayList<JsonColumn> ancestorJsonColumnList = new ArrayList<>();
         Path compiledPath;
         try {
-            compiledPath = PathCompiler.compile(path);
+            compiledPath = JsonPathUtil.compile(path);
         }
         catch (InvalidPathException e) {
             throw new ConfigException(String.format("jsonpath %s, %s", path, e.getMessage()));
@@ -336,22 +456,44 @@ public class JsonVisitor
         return newPath;
     }
 
-    Value visitArray(String rootPath, ArrayValue arrayValue)
+    // @return arrayValue itself if no jsonpath rewrote it, or a new array
+    Value visitArray(String rootPath, ArrayValue arrayValue, ValueStack stack)
     {
         int size = arrayValue.size();
-        ArrayList<Value> newValue = new ArrayList<>(size);
-        int j = 0;
+        ValueStack newValue = stack;
+        int mark = newValue.size();
+        boolean rewritten = false;
         if (this.jsonDropColumns.containsKey(rootPath)) {
             HashSet<String> jsonDropColumns = this.jsonDropColumns.get(rootPath);
             for (int i = 0; i < size; i++) {
                 String newPath = newArrayJsonPath(rootPath, i);
                 if (! jsonDropColumns.contains(newPath)) {
                     Value v = arrayValue.get(i);
-                    newValue.add(j++, visit(newPath, v));
+                    Value visited = visit(newPath, v, stack);
+                    rewritten |= visited != v;
+                    newValue.push(visited);
+                }
+                else {
+                    rewritten = true;
+                    if (stats != null) {
+                        stats.addJsonDroppedKey();
+                    }
+                    if (budget != null) {
+                        budget.addNode();
+                    }
+                    if (limits != null) {
+                        limits.addSubtree(arrayValue.get(i));
+                    }
                 }
             }
         }
         else if (this.jsonColumns.containsKey(rootPath)) {
+            rewritten = true;
+            boolean limited = false;
+            if (limits != null) {
+                limits.addElements(arrayValue); // elements picked below may be of other indexes, or defaults
+                limited = limits.pause();
+            }
             for (JsonColumn jsonColumn : this.jsonColumns.get(rootPath).values()) {
                 int i = jsonColumn.getTailIndex().intValue();
                 if (i == JsonColumn.WILDCARD_INDEX) {
@@ -361,10 +503,13 @@ public class JsonVisitor
                             Value v = arrayValue.get(i);
                             if (v == null) {
                                 v = jsonColumn.getDefaultValue();
+                                if (stats != null) {
+                                    stats.addJsonDefault();
+                                }
                             }
                             String newPath = jsonColumn.getPath(); // == newArrayJsonPath(rootPath, i); // [*]
-                            Value visited = visit(newPath, v);
-                            newValue.add(j++, visited == null ? ValueFactory.newNil() : visited);
+                            Value visited = visit(newPath, v, stack);
+                            newValue.push(visited == null ? ValueFactory.newNil() : visited);
                         }
                         else {
                             assert (false); // not supported yet
@@ -376,21 +521,30 @@ public class JsonVisitor
                     Value v = (src < arrayValue.size() ? arrayValue.get(src) : null);
                     if (v == null) {
                         v = jsonColumn.getDefaultValue();
+                        if (stats != null) {
+                            stats.addJsonDefault();
+                        }
                     }
                     String newPath = jsonColumn.getPath();
-                    Value visited = visit(newPath, v);
-                    newValue.add(j++, visited == null ? ValueFactory.newNil() : visited);
+                    Value visited = visit(newPath, v, stack);
+                    newValue.push(visited == null ? ValueFactory.newNil() : visited);
                 }
             }
+            if (limits != null) {
+                limits.resume(limited);
+            }
         }
         else {
             for (int i = 0; i < size; i++) {
                 String newPath = newArrayJsonPath(rootPath, i);
                 Value v = arrayValue.get(i);
-                newValue.add(j++, visit(newPath, v));
+                Value visited = visit(newPath, v, stack);
+                rewritten |= visited != v;
+                newValue.push(visited);
             }
         }
         if (this.jsonAddColumns.containsKey(rootPath)) {
+            boolean limited = limits != null && limits.pause(); // elements copied or injected are not of the value
             for (JsonColumn jsonColumn : this.jsonAddColumns.get(rootPath).values()) {
                 int i = jsonColumn.getTailIndex().intValue();
                 if (i == JsonColumn.WILDCARD_INDEX || i < size) {
@@ -402,46 +556,86 @@ public class JsonVisitor
                 Value v = (src < arrayValue.size() ? arrayValue.get(src) : null);
                 if (v == null) {
                     v = jsonColumn.getDefaultValue();
+                    if (stats != null) {
+                        stats.addJsonDefault();
+                    }
                 }
                 String newPath = jsonColumn.getPath();
-                Value visited = visit(newPath, v);
+                Value visited = visit(newPath, v, stack);
                 // this ignores specified index, but appends to last now
-                newValue.add(j++, visited == null ? ValueFactory.newNil() : visited);
+                newValue.push(visited == null ? ValueFactory.newNil() : visited);
+                rewritten = true;
+            }
+            if (limits != null) {
+                limits.resume(limited);
             }
         }
-        return ValueFactory.newArray(newValue.toArray(new Value[0]), true);
+        if (! rewritten) {
+            newValue.discardSince(mark);
+            return arrayValue;
+        }
+        return ValueFactory.newArray(newValue.popSince(mark), true);
     }
 
-    Value visitMap(String rootPath, MapValue mapValue)
+    // @return mapValue itself if no jsonpath rewrote it, or a new map
+    Value visitMap(String rootPath, MapValue mapValue, ValueStack stack)
     {
-        int size = mapValue.size();
-        int i = 0;
-        ArrayList<Value> newValue = new ArrayList<>(size * 2);
+        ValueStack newValue = stack;
+        int mark = newValue.size();
+        boolean rewritten = false;
         if (this.jsonDropColumns.containsKey(rootPath)) {
             HashSet<String> jsonDropColumns = this.jsonDropColumns.get(rootPath);
             for (Map.Entry<Value, Value> entry : mapValue.entrySet()) {
                 Value k = entry.getKey();
                 Value v = entry.getValue();
                 String newPath = newMapJsonPath(rootPath, k);
+                if (limits != null) {
+                    limits.addSubtree(k);
+                }
                 if (! jsonDropColumns.contains(newPath)) {
-                    Value visited = visit(newPath, v);
-                    newValue.add(i++, k);
-                    newValue.add(i++, visited);
+                    Value visited = visit(newPath, v, stack);
+                    rewritten |= visited != v;
+                    newValue.push(k);
+                    newValue.push(visited);
+                }
+                else {
+                    rewritten = true;
+                    if (stats != null) {
+                        stats.addJsonDroppedKey();
+                    }
+                    if (budget != null) {
+                        budget.addNode();
+                    }
+                    if (limits != null) {
+                        limits.addSubtree(v);
+                    }
                 }
             }
         }
         else if (this.jsonColumns.containsKey(rootPath)) {
+            rewritten = true;
+            boolean limited = false;
+            if (limits != null) {
+                limits.addEntries(mapValue); // values picked below may be of other keys, or defaults
+                limited = limits.pause();
+            }
             Map<Value, Value> map = mapValue.map();
             for (JsonColumn jsonColumn : this.jsonColumns.get(rootPath).values()) {
                 Value src = jsonColumn.getSrcTailNameValue();
                 Value v = map.get(src);
                 if (v == null) {
                     v = jsonColumn.getDefaultValue();
+                    if (stats != null) {
+                        stats.addJsonDefault();
+                    }
                 }
                 String newPath = jsonColumn.getPath();
-                Value visited = visit(newPath, v);
-                newValue.add(i++, jsonColumn.getTailNameValue());
-                newValue.add(i++, visited == null ? ValueFactory.newNil() : visited);
+                Value visited = visit(newPath, v, stack);
+                newValue.push(jsonColumn.getTailNameValue());
+                newValue.push(visited == null ? ValueFactory.newNil() : visited);
+            }
+            if (limits != null) {
+                limits.resume(limited);
             }
         }
         else {
@@ -449,12 +643,17 @@ public class JsonVisitor
                 Value k = entry.getKey();
                 Value v = entry.getValue();
                 String newPath = newMapJsonPath(rootPath, k);
-                Value visited = visit(newPath, v);
-                newValue.add(i++, k);
-                newValue.add(i++, visited);
+                if (limits != null) {
+                    limits.addSubtree(k);
+                }
+                Value visited = visit(newPath, v, stack);
+                rewritten |= visited != v;
+                newValue.push(k);
+                newValue.push(visited);
             }
         }
         if (this.jsonAddColumns.containsKey(rootPath)) {
+            boolean limited = limits != null && limits.pause(); // values copied or injected are not of the value
             Map<Value, Value> map = mapValue.map();
             for (JsonColumn jsonColumn : this.jsonAddColumns.get(rootPath).values()) {
                 Value k = jsonColumn.getTailNameValue();
@@ -467,31 +666,93 @@ public class JsonVisitor
                 Value v = map.get(src);
                 if (v == null) {
                     v = jsonColumn.getDefaultValue();
+                    if (stats != null) {
+                        stats.addJsonDefault();
+                    }
                 }
                 String newPath = jsonColumn.getPath();
-                Value visited = visit(newPath, v);
-                newValue.add(i++, jsonColumn.getTailNameValue());
-                newValue.add(i++, visited == null ? ValueFactory.newNil() : visited);
+                Value visited = visit(newPath, v, stack);
+                newValue.push(jsonColumn.getTailNameValue());
+                newValue.push(visited == null ? ValueFactory.newNil() : visited);
+                rewritten = true;
+            }
+            if (limits != null) {
+                limits.resume(limited);
             }
         }
-        return ValueFactory.newMap(newValue.toArray(new Value[0]), true);
+        if (! rewritten) {
+            newValue.discardSince(mark);
+            return mapValue;
+        }
+        return ValueFactory.newMap(newValue.popSince(mark), true);
     }
 
+    // Pushes elements of all containers into one stack, which a visitor of a task reuses for its values,
+    // so that a large value costs only the arrays of its result.
     public Value visit(String rootPath, Value value)
     {
+        ValueStack stack = this.stack == null ? new ValueStack(0) : this.stack;
+        stack.clear(); // left by an exception of the last value
+        return visit(rootPath, value, stack);
+    }
+
+    // @param stack elements of the containers being rebuilt
+    private Value visit(String rootPath, Value value, ValueStack stack)
+    {
+        if (budget != null && value != null) {
+            budget.addNode();
+        }
         if (! shouldVisit(rootPath)) {
+            if (stats != null && value != null) {
+                stats.addJsonNodePassedThrough();
+            }
+            if (limits != null && value != null) {
+                limits.addSubtree(value);
+            }
             return value;
         }
+        if (stats != null && value != null) {
+            stats.addJsonNodeVisited();
+        }
         if (value == null) {
             return null;
         }
         else if (value.isArrayValue()) {
-            return visitArray(rootPath, value.asArrayValue());
+            if (stats == null) {
+                return visitArray(rootPath, value.asArrayValue(), stack);
+            }
+            ArrayValue arrayValue = value.asArrayValue();
+            stats.enterJsonContainer(arrayValue.size());
+            if (limits != null) {
+                limits.enterContainer(arrayValue.size(), true);
+            }
+            Value visited = visitArray(rootPath, arrayValue, stack);
+            if (limits != null) {
+                limits.exitContainer();
+            }
+            stats.exitJsonContainer();
+            return visited;
         }
         else if (value.isMapValue()) {
-            return visitMap(rootPath, value.asMapValue());
+            if (stats == null) {
+                return visitMap(rootPath, value.asMapValue(), stack);
+            }
+            MapValue mapValue = value.asMapValue();
+            stats.enterJsonContainer(mapValue.size());
+            if (limits != null) {
+                limits.enterContainer(mapValue.size(), false);
+            }
+            Value visited = visitMap(rootPath, mapValue, stack);
+            if (limits != null) {
+                limits.exitContainer();
+            }
+            stats.exitJsonContainer();
+            return visited;
         }
         else {
+            if (limits != null) {
+                limits.addScalar(value);
+            }
             return value;
         }
     }
@@ -0,0 +1,153 @@
+/*
+ * Copyright 2026 The Embulk project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.embulk.filter.column;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Histogram of nanoseconds in log-linear buckets, in the same way with HdrHistogram.
+ *
+ * Each power of two is split into {@value #SUB_BUCKET_COUNT} linear sub-buckets, so that a recorded
+ * value is off by less than 1/16 of it. All buckets are allocated up front, and {@link #record(long)}
+ * does not allocate.
+ */
+class LatencyHistogram
+{
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    // values less than SUB_BUCKET_COUNT are exact, and each of the rest powers of two up to 2^62 has sub-buckets
+    private static final int BUCKET_COUNT = (63 - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT;
+
+    private final long[] counts = new long[BUCKET_COUNT];
+    private long totalCount;
+    private long max;
+
+    void record(long value)
+    {
+        if (value < 0) {
+            value = 0; // nanoTime is not monotonic on some platforms
+        }
+        counts[indexOf(value)]++;
+        totalCount++;
+        if (value > max) {
+            max = value;
+        }
+    }
+
+    long getTotalCount()
+    {
+        return totalCount;
+    }
+
+    long getMax()
+    {
+        return max;
+    }
+
+    // @return the highest value equivalent to the recorded value at the percentile, 0 if empty
+    long getValueAtPercentile(double percentile)
+    {
+        if (totalCount == 0) {
+            return 0L;
+        }
+        long countAtPercentile = Math.max(1L, (long) Math.ceil(totalCount * percentile / 100.0));
+        long count = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            count += counts[i];
+            if (count >= countAtPercentile) {
+                return Math.min(highestEquivalentValue(i), max);
+            }
+        }
+        return max;
+    }
+
+    void merge(LatencyHistogram other)
+    {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts[i] += other.counts[i];
+        }
+        totalCount += other.totalCount;
+        max = Math.max(max, other.max);
+    }
+
+    // [ [ bucket index, count ] ] of non-empty buckets, and [ -1, max ] at last
+    List<List<Long>> toList()
+    {
+        List<List<Long>> list = new ArrayList<>();
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            if (counts[i] != 0) {
+                list.add(pair(i, counts[i]));
+            }
+        }
+        list.add(pair(-1, max));
+        return list;
+    }
+
+    static LatencyHistogram fromList(List<? extends List<? extends Number>> list)
+    {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (List<? extends Number> pair : list) {
+            int i = pair.get(0).intValue();
+            long value = pair.get(1).longValue();
+            if (i == -1) {
+                histogram.max = Math.max(histogram.max, value);
+            }
+            else {
+                histogram.counts[i] += value;
+                histogram.totalCount += value;
+            }
+        }
+        return histogram;
+    }
+
+    private static List<Long> pair(long first, long second)
+    {
+        List<Long> pair = new ArrayList<>(2);
+        pair.add(first);
+        pair.add(second);
+        return pair;
+    }
+
+    static int indexOf(long value)
+    {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKET_COUNT - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT + subBucket;
+    }
+
+    static long lowestEquivalentValue(int index)
+    {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int exponent = index / SUB_BUCKET_COUNT + SUB_BUCKET_BITS - 1;
+        int subBucket = index % SUB_BUCKET_COUNT;
+        return (long) (SUB_BUCKET_COUNT + subBucket) << (exponent - SUB_BUCKET_BITS);
+    }
+
+    static long highestEquivalentValue(int index)
+    {
+        if (index + 1 >= BUCKET_COUNT) {
+            return Long.MAX_VALUE;
+        }
+        return lowestEquivalentValue(index + 1) - 1;
+    }
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright 2026 The Embulk project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.embulk.filter.column;
+
+/**
+ * Reads little-endian words from bytes of pages, for Java 8.
+ *
+ * Java 17 and later load the variant of META-INF/versions/17 instead, which reads through VarHandle.
+ */
+final class LittleEndian
+{
+    private LittleEndian()
+    {
+    }
+
+    static int getInt(byte[] bytes, int offset)
+    {
+        return (bytes[offset] & 0xFF)
+                | (bytes[offset + 1] & 0xFF) << 8
+                | (bytes[offset + 2] & 0xFF) << 16
+                | (bytes[offset + 3] & 0xFF) << 24;
+    }
+
+    static long getLong(byte[] bytes, int offset)
+    {
+        return (getInt(bytes, offset) & 0xFFFFFFFFL) | (long) getInt(bytes, offset + 4) << 32;
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2026 The Embulk project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.embulk.filter.column;
+
+import org.embulk.spi.Column;
+import org.embulk.spi.Schema;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Decides whether null cells of the next page are scanned ahead with {@link PageNulls}.
+ *
+ * A scan pays for reading the null bitmaps of the page, and pays back only for input columns whose cells are all null
+ * or not null in the page. Pages are scanned while some input column read by the plan is so in every page of a window.
+ * Once no input column is so in a window, pages are not scanned until RETRY_WINDOWS windows of pages are skipped,
+ * and then a window of pages is scanned again in case the data has changed. Once a page is not of the layout
+ * which PageNulls reads, pages are never scanned again.
+ *
+ * It is of a task, and not thread-safe.
+ */
+final class NullScanWindow
+{
+    private static final Logger logger = LoggerFactory.getLogger(ColumnFilterPlugin.class);
+    // pages of a window without adaptive: true
+    static final int DEFAULT_WINDOW_PAGES = 4;
+    // windows of pages skipped for a window scanned, which costs scans of 1 / (RETRY_WINDOWS + 1) of pages at most
+    static final int RETRY_WINDOWS = 16;
+
+    private final int windowSize;
+    // input column index => true if an output column reads it
+    private final boolean[] readInputColumns;
+    // input column index => pages in the window whose cells of the column are all null or not null
+    private final int[] uniformPages;
+    private int windowPages;
+    private long pages;
+    private boolean scanning = true;
+    // false once a page could not be scanned
+    private boolean scannable = true;
+    private int skippedPages;
+
+    NullScanWindow(PreparedPlan plan, Schema inputSchema, Schema outputSchema, int windowSize)
+    {
+        this.windowSize = Math.max(1, windowSize);
+        this.readInputColumns = new boolean[inputSchema.getColumnCount()];
+        for (Column outputColumn : outputSchema.getColumns()) {
+            Column inputColumn = plan.getInputColumn(outputColumn);
+            if (inputColumn != null) {
+                readInputColumns[inputColumn.getIndex()] = true;
+            }
+        }
+        this.uniformPages = new int[inputSchema.getColumnCount()];
+    }
+
+    boolean isScanning()
+    {
+        return scanning;
+    }
+
+    // @param pageNulls null cells of the page scanned
+    void addScannedPage(PageNulls pageNulls)
+    {
+        pages++;
+        for (int i = 0; i < readInputColumns.length; i++) {
+            if (readInputColumns[i] && (!pageNulls.hasNull(i) || pageNulls.isAllNull(i))) {
+                uniformPages[i]++;
+            }
+        }
+        if (++windowPages < windowSize) {
+            return;
+        }
+        boolean uniform = false;
+        for (int i = 0; i < uniformPages.length; i++) {
+            uniform |= uniformPages[i] == windowPages;
+            uniformPages[i] = 0;
+        }
+        windowPages = 0;
+        if (!uniform) {
+            scanning = false;
+            logger.debug("Stopped scanning null cells after {} pages", pages);
+        }
+    }
+
+    // Called for a page which PageNulls.scan could not scan, because pages are not of its layout
+    void addUnscannablePage()
+    {
+        pages++;
+        scanning = false;
+        scannable = false;
+        logger.debug("Stopped scanning null cells of pages of an unexpected layout after {} pages", pages);
+    }
+
+    // Called for a page not scanned while isScanning() is false
+    void addSkippedPage()
+    {
+        pages++;
+        if (scannable && ++skippedPages >= windowSize * RETRY_WINDOWS) {
+            skippedPages = 0;
+            scanning = true;
+            logger.debug("Scanning null cells again after {} pages", pages);
+        }
+    }
+}
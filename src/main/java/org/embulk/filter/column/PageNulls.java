@@ -0,0 +1,141 @@
+/*
+ * Copyright 2026 The Embulk project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.embulk.filter.column;
+
+import org.embulk.spi.Buffer;
+import org.embulk.spi.Page;
+import org.embulk.spi.Schema;
+
+import java.util.Arrays;
+
+/**
+ * Numbers of null cells of each column in a page, scanned from raw bytes of the page.
+ *
+ * Bytes of a page are in the layout of PageBuilder of embulk-core 0.10 and 0.11: an int of the number of records,
+ * and then records of an int of the record size, a null bitmap of (columnCount + 7) / 8 bytes, and fixed-size values.
+ * Null bitmaps are read in place from the array of the buffer, a word of 64 columns at a time, and only their set bits
+ * are visited. The layout is not of the SPI, so that a page is scanned only if its size and all its record sizes are
+ * of the layout, and otherwise {@link NullScanWindow} stops scanning pages for the task.
+ */
+final class PageNulls
+{
+    private static final int PAGE_HEADER_SIZE = 4;
+    private static final int RECORD_HEADER_SIZE = 4;
+
+    private final int columnCount;
+    private final int recordSize;
+    private final int[] nullCounts;
+    private int recordCount;
+
+    PageNulls(Schema schema)
+    {
+        this.columnCount = schema.getColumnCount();
+        this.recordSize = RECORD_HEADER_SIZE + (columnCount + 7) / 8 + schema.getFixedStorageSize();
+        this.nullCounts = new int[columnCount];
+    }
+
+    // @return false if the buffer has no array, or the page is not in the layout expected,
+    //         and then the page should be read by PageReader
+    boolean scan(Page page)
+    {
+        Buffer buffer = page.buffer();
+        byte[] array;
+        try {
+            array = buffer.array();
+        }
+        catch (UnsupportedOperationException ex) {
+            return false;
+        }
+        return array != null && scan(array, buffer.offset(), buffer.limit());
+    }
+
+    // @param offset index of the page in bytes
+    // @param limit size of the page
+    boolean scan(byte[] bytes, int offset, int limit)
+    {
+        recordCount = 0;
+        Arrays.fill(nullCounts, 0);
+        if (limit < PAGE_HEADER_SIZE || offset < 0 || (long) offset + limit > bytes.length) {
+            return false;
+        }
+        int records = LittleEndian.getInt(bytes, offset);
+        // no bytes out of records, as PageBuilder flushes
+        if (records < 0 || PAGE_HEADER_SIZE + (long) records * recordSize != limit) {
+            return false;
+        }
+
+        int position = offset + PAGE_HEADER_SIZE;
+        for (int record = 0; record < records; record++) {
+            if (LittleEndian.getInt(bytes, position) != recordSize) {
+                Arrays.fill(nullCounts, 0);
+                return false;
+            }
+            int nullBitmap = position + RECORD_HEADER_SIZE;
+            for (int base = 0; base < columnCount; base += 64) {
+                long nulls = readBits(bytes, nullBitmap + (base >>> 3), Math.min(64, columnCount - base));
+                while (nulls != 0L) {
+                    nullCounts[base + Long.numberOfTrailingZeros(nulls)]++;
+                    nulls &= nulls - 1;
+                }
+            }
+            position += recordSize;
+        }
+        recordCount = records;
+        return true;
+    }
+
+    // @return bits of count columns from offset, reading a word at once unless it runs over the array
+    private static long readBits(byte[] bytes, int offset, int count)
+    {
+        long bits;
+        if (offset + 8 <= bytes.length) {
+            bits = LittleEndian.getLong(bytes, offset);
+        }
+        else {
+            bits = 0L;
+            for (int i = 0; i < (count + 7) / 8; i++) {
+                bits |= (bytes[offset + i] & 0xFFL) << (i * 8);
+            }
+        }
+        return count == 64 ? bits : bits & ((1L << count) - 1);
+    }
+
+    int getColumnCount()
+    {
+        return columnCount;
+    }
+
+    int getRecordCount()
+    {
+        return recordCount;
+    }
+
+    int getNullCount(int column)
+    {
+        return nullCounts[column];
+    }
+
+    boolean isAllNull(int column)
+    {
+        return nullCounts[column] == recordCount;
+    }
+
+    boolean hasNull(int column)
+    {
+        return nullCounts[column] != 0;
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2026 The Embulk project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.embulk.filter.column;
+
+import io.github.medjed.jsonpathcompiler.expressions.Utils;
+import org.embulk.spi.Column;
+import org.embulk.spi.Schema;
+import org.embulk.spi.time.Timestamp;
+
+import java.time.Instant;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * {@link CompiledPlan} restored for execution: input columns, decoded default values and jsonpath tables.
+ *
+ * It is immutable after construction, and shared by all tasks of the same plan running in a JVM.
+ * Per-task state such as PageReader and PageBuilder stays in {@link ColumnVisitorImpl}.
+ */
+class PreparedPlan
+{
+    // Plans of finished transactions are not referred anymore. Just forget them all when it gets full.
+    private static final int MAX_CACHED_PLANS = 16;
+    // fingerprint => prepared plan
+    private static final ConcurrentHashMap<String, PreparedPlan> cache = new ConcurrentHashMap<>();
+
+    // output column index => input column, or null
+    private final Column[] inputColumns;
+    // output column index => default value, or null
+    private final Object[] defaultValues;
+    // output column index => default value of a timestamp column, built once not to allocate it for each record
+    private final Timestamp[] defaultTimestamps;
+    // output column index => root jsonpath of the column
+    private final String[] jsonPaths;
+    private final JsonVisitor jsonVisitor;
+    // true if an output column fills its default value in null cells of its input column
+    private final boolean defaultsOfInputColumns;
+
+    PreparedPlan(CompiledPlan plan, Schema inputSchema, Schema outputSchema)
+    {
+        int size = outputSchema.getColumnCount();
+        this.inputColumns = new Column[size];
+        this.defaultValues = new Object[size];
+        this.defaultTimestamps = new Timestamp[size];
+        this.jsonPaths = new String[size];
+        boolean defaultsOfInputColumns = false;
+        for (Column outputColumn : outputSchema.getColumns()) {
+            int i = outputColumn.getIndex();
+            int inputColumnIndex = plan.getInputColumnIndex(outputColumn);
+            inputColumns[i] = inputColumnIndex == CompiledPlan.NO_INPUT_COLUMN ? null : inputSchema.getColumn(inputColumnIndex);
+            defaultValues[i] = plan.getDefaultValue(outputColumn);
+            if (defaultValues[i] instanceof Instant) {
+                defaultTimestamps[i] = Timestamp.ofInstant((Instant) defaultValues[i]);
+            }
+            jsonPaths[i] = new StringBuilder("$['").append(Utils.escape(outputColumn.getName(), true)).append("']").toString();
+            defaultsOfInputColumns |= inputColumns[i] != null && defaultValues[i] != null;
+        }
+        this.defaultsOfInputColumns = defaultsOfInputColumns;
+        this.jsonVisitor = new JsonVisitor(plan);
+    }
+
+    static PreparedPlan of(final CompiledPlan plan, final Schema inputSchema, final Schema outputSchema)
+    {
+        if (plan.getFingerprint() == null) {
+            return new PreparedPlan(plan, inputSchema, outputSchema);
+        }
+        PreparedPlan prepared = cache.get(plan.getFingerprint());
+        if (prepared != null) {
+            return prepared;
+        }
+        if (cache.size() >= MAX_CACHED_PLANS) {
+            cache.clear();
+        }
+        // Only one of concurrent tasks prepares the plan, and others wait for it
+        return cache.computeIfAbsent(plan.getFingerprint(), fingerprint -> new PreparedPlan(plan, inputSchema, outputSchema));
+    }
+
+    // @return null if the output column does not have its input column
+    Column getInputColumn(Column outputColumn)
+    {
+        return inputColumns[outputColumn.getIndex()];
+    }
+
+    // @return null if no default value is configured
+    Object getDefaultValue(Column outputColumn)
+    {
+        return defaultValues[outputColumn.getIndex()];
+    }
+
+    // @return the default value of a timestamp column, or null
+    Timestamp getDefaultTimestamp(Column outputColumn)
+    {
+        return defaultTimestamps[outputColumn.getIndex()];
+    }
+
+    String getJsonPath(Column outputColumn)
+    {
+        return jsonPaths[outputColumn.getIndex()];
+    }
+
+    // Null cells of pages are worth scanning ahead only if they are filled with default values
+    boolean hasDefaultsOfInputColumns()
+    {
+        return defaultsOfInputColumns;
+    }
+
+    JsonVisitor getJsonVisitor()
+    {
+        return jsonVisitor;
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2026 The Embulk project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.embulk.filter.column;
+
+import org.embulk.spi.Column;
+import org.msgpack.value.Value;
+import org.slf4j.Logger;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Top-K slowest json values of a task to visit, for slow_json_samples.
+ *
+ * The fastest sample is at the head of the heap. A value is serialized only when it is slower than
+ * that, so that fast values cost a System.nanoTime() and a comparison.
+ */
+class SlowJsonSampler
+{
+    static final int MAX_VALUE_CHARS = 256;
+
+    static class Sample
+    {
+        final String columnName;
+        final long record;
+        final int size;
+        final int depth;
+        final long nanos;
+        final String value;
+
+        Sample(String columnName, long record, int size, int depth, long nanos, String value)
+        {
+            this.columnName = columnName;
+            this.record = record;
+            this.size = size;
+            this.depth = depth;
+            this.nanos = nanos;
+            this.value = value;
+        }
+    }
+
+    private static final Comparator<Sample> FASTEST_FIRST = new Comparator<Sample>() {
+        @Override
+        public int compare(Sample a, Sample b)
+        {
+            return Long.compare(a.nanos, b.nanos);
+        }
+    };
+
+    private final int capacity;
+    private final PriorityQueue<Sample> heap;
+
+    SlowJsonSampler(int capacity)
+    {
+        this.capacity = capacity;
+        this.heap = new PriorityQueue<>(capacity, FASTEST_FIRST);
+    }
+
+    // @param record index of the record in this task
+    // @param depth depth of maps and arrays visited in the value
+    void offer(Column outputColumn, long record, Value value, long nanos, int depth)
+    {
+        if (heap.size() >= capacity) {
+            if (nanos <= heap.peek().nanos) {
+                return;
+            }
+            heap.poll();
+        }
+        String json = value.toJson();
+        String truncated = json.length() > MAX_VALUE_CHARS ? json.substring(0, MAX_VALUE_CHARS) + "..." : json;
+        heap.add(new Sample(outputColumn.getName(), record, json.length(), depth, nanos, truncated));
+    }
+
+    // @return samples, the slowest first
+    List<Sample> getSamples()
+    {
+        List<Sample> samples = new ArrayList<>(heap);
+        Collections.sort(samples, Collections.reverseOrder(FASTEST_FIRST));
+        return samples;
+    }
+
+    void log(Logger logger)
+    {
+        for (Sample sample : getSamples()) {
+            logger.info("Slow json: {} us in column '{}' of record {} in the task, {} chars, depth {}: {}",
+                    sample.nanos / 1000, sample.columnName, sample.record, sample.size, sample.depth, sample.value);
+        }
+    }
+}
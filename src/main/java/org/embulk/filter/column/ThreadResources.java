@@ -0,0 +1,77 @@
+/*
+ * Copyright 2026 The Embulk project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.embulk.filter.column;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * CPU time and allocated bytes of the current thread, through ThreadMXBean.
+ *
+ * Allocated bytes are available only on JVMs of com.sun.management.ThreadMXBean, such as HotSpot.
+ * Each returns -1 where it is not supported.
+ */
+final class ThreadResources
+{
+    private static final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+    private static final boolean cpuTimeSupported = isCpuTimeSupported();
+    private static final boolean allocatedBytesSupported = isAllocatedBytesSupported();
+
+    private ThreadResources()
+    {
+    }
+
+    private static boolean isCpuTimeSupported()
+    {
+        try {
+            return threadMXBean.isCurrentThreadCpuTimeSupported() && threadMXBean.isThreadCpuTimeEnabled();
+        }
+        catch (UnsupportedOperationException ex) {
+            return false;
+        }
+    }
+
+    private static boolean isAllocatedBytesSupported()
+    {
+        try {
+            return threadMXBean instanceof com.sun.management.ThreadMXBean
+                    && ((com.sun.management.ThreadMXBean) threadMXBean).isThreadAllocatedMemorySupported()
+                    && ((com.sun.management.ThreadMXBean) threadMXBean).isThreadAllocatedMemoryEnabled();
+        }
+        catch (LinkageError | UnsupportedOperationException ex) {
+            return false;
+        }
+    }
+
+    static boolean isSupported()
+    {
+        return cpuTimeSupported && allocatedBytesSupported;
+    }
+
+    static long currentThreadCpuTime()
+    {
+        return cpuTimeSupported ? threadMXBean.getCurrentThreadCpuTime() : -1L;
+    }
+
+    static long currentThreadAllocatedBytes()
+    {
+        if (!allocatedBytesSupported) {
+            return -1L;
+        }
+        return ((com.sun.management.ThreadMXBean) threadMXBean).getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+}
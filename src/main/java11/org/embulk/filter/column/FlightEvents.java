@@ -0,0 +1,150 @@
+/*
+ * Copyright 2026 The Embulk project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.embulk.filter.column;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Java Flight Recorder events of the filter, for Java 11 and later.
+ *
+ * Disabled events cost a check of isEnabled(), which JFR turns into a constant while it is not recording.
+ */
+final class FlightEvents
+{
+    // only to check whether the event type is enabled, and never committed
+    private static final PageTransformed PAGE_TRANSFORMED = new PageTransformed();
+    private static final JsonColumnRewritten JSON_COLUMN_REWRITTEN = new JsonColumnRewritten();
+    private static final PlanCompiled PLAN_COMPILED = new PlanCompiled();
+
+    private FlightEvents()
+    {
+    }
+
+    @Name("org.embulk.filter.column.PageTransformed")
+    @Label("Page Transformed")
+    @Category({"Embulk", "Column Filter"})
+    @Description("A page transformed in PageOutput.add")
+    static final class PageTransformed extends Event
+    {
+        @Label("Records")
+        long records;
+
+        @Label("Bytes")
+        @DataAmount
+        long bytes;
+    }
+
+    @Name("org.embulk.filter.column.JsonColumnRewritten")
+    @Label("JSON Column Rewritten")
+    @Category({"Embulk", "Column Filter"})
+    @Description("A json value visited by jsonpaths")
+    @Enabled(false) // one per value, so to be enabled explicitly
+    static final class JsonColumnRewritten extends Event
+    {
+        @Label("Column")
+        String columnName;
+
+        @Label("Nodes Visited")
+        long nodes;
+
+        @Label("Depth")
+        int depth;
+    }
+
+    @Name("org.embulk.filter.column.PlanCompiled")
+    @Label("Plan Compiled")
+    @Category({"Embulk", "Column Filter"})
+    @Description("Column plan compiled in transaction()")
+    static final class PlanCompiled extends Event
+    {
+        @Label("Output Columns")
+        int outputColumns;
+
+        @Label("JSON Paths")
+        int jsonPaths;
+    }
+
+    static Object beginPageTransformed()
+    {
+        if (!PAGE_TRANSFORMED.isEnabled()) {
+            return null;
+        }
+        PageTransformed event = new PageTransformed();
+        event.begin();
+        return event;
+    }
+
+    static void commitPageTransformed(Object event, long records, long bytes)
+    {
+        if (event == null) {
+            return;
+        }
+        PageTransformed pageTransformed = (PageTransformed) event;
+        pageTransformed.records = records;
+        pageTransformed.bytes = bytes;
+        pageTransformed.commit();
+    }
+
+    static Object beginJsonColumnRewritten()
+    {
+        if (!JSON_COLUMN_REWRITTEN.isEnabled()) {
+            return null;
+        }
+        JsonColumnRewritten event = new JsonColumnRewritten();
+        event.begin();
+        return event;
+    }
+
+    static void commitJsonColumnRewritten(Object event, String columnName, long nodes, int depth)
+    {
+        if (event == null) {
+            return;
+        }
+        JsonColumnRewritten jsonColumnRewritten = (JsonColumnRewritten) event;
+        jsonColumnRewritten.columnName = columnName;
+        jsonColumnRewritten.nodes = nodes;
+        jsonColumnRewritten.depth = depth;
+        jsonColumnRewritten.commit();
+    }
+
+    static Object beginPlanCompiled()
+    {
+        if (!PLAN_COMPILED.isEnabled()) {
+            return null;
+        }
+        PlanCompiled event = new PlanCompiled();
+        event.begin();
+        return event;
+    }
+
+    static void commitPlanCompiled(Object event, int outputColumns, int jsonPaths)
+    {
+        if (event == null) {
+            return;
+        }
+        PlanCompiled planCompiled = (PlanCompiled) event;
+        planCompiled.outputColumns = outputColumns;
+        planCompiled.jsonPaths = jsonPaths;
+        planCompiled.commit();
+    }
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright 2026 The Embulk project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.embulk.filter.column;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+
+/**
+ * Reads little-endian words from bytes of pages, for Java 17 and later.
+ *
+ * A VarHandle of a byte array view is compiled into a single load of a word, instead of loads of each byte.
+ */
+final class LittleEndian
+{
+    private static final VarHandle INT = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final VarHandle LONG = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private LittleEndian()
+    {
+    }
+
+    static int getInt(byte[] bytes, int offset)
+    {
+        return (int) INT.get(bytes, offset);
+    }
+
+    static long getLong(byte[] bytes, int offset)
+    {
+        return (long) LONG.get(bytes, offset);
+    }
+}
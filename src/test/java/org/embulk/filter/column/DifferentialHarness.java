@@ -0,0 +1,479 @@
+/*
+ * Copyright 2026 The Embulk project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.embulk.filter.column;
+
+import org.embulk.config.ConfigException;
+import org.embulk.config.ConfigLoader;
+import org.embulk.config.ConfigSource;
+import org.embulk.filter.column.ColumnFilterPlugin.PluginTask;
+import org.embulk.spi.Buffer;
+import org.embulk.spi.Column;
+import org.embulk.spi.Exec;
+import org.embulk.spi.ExecInternal;
+import org.embulk.spi.Page;
+import org.embulk.spi.PageBuilder;
+import org.embulk.spi.PageOutput;
+import org.embulk.spi.PageReader;
+import org.embulk.spi.Schema;
+import org.embulk.spi.type.Type;
+import org.embulk.spi.util.Pages;
+import org.embulk.test.EmbulkTestRuntime;
+import org.embulk.test.PageTestUtils;
+import org.embulk.test.TestPageBuilderReader.MockPageOutput;
+import org.embulk.util.config.ConfigMapper;
+import org.embulk.util.config.ConfigMapperFactory;
+import org.msgpack.value.Value;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.embulk.spi.type.Types.BOOLEAN;
+import static org.embulk.spi.type.Types.DOUBLE;
+import static org.embulk.spi.type.Types.JSON;
+import static org.embulk.spi.type.Types.LONG;
+import static org.embulk.spi.type.Types.STRING;
+import static org.embulk.spi.type.Types.TIMESTAMP;
+
+/**
+ * Property-based differential testing of engines against the reference engine.
+ *
+ * Each case is a random schema, config and records generated from a seed. A case fails if an engine
+ * builds output pages which are not byte-identical to those of the reference, or throws where the
+ * reference does not. A failed case is shrunk greedily to a minimal reproduction, by removing records,
+ * config entries and input columns while it still fails.
+ */
+class DifferentialHarness
+{
+    private static final ConfigMapperFactory CONFIG_MAPPER_FACTORY = ConfigMapperFactory
+            .builder()
+            .addDefaultModules()
+            .build();
+    private static final ConfigMapper CONFIG_MAPPER = CONFIG_MAPPER_FACTORY.createConfigMapper();
+
+    private static final Type[] TYPES = {BOOLEAN, LONG, DOUBLE, STRING, TIMESTAMP, JSON};
+    private static final String[] SECTIONS = {"columns", "add_columns", "drop_columns"};
+    private static final int MAX_SHRINK_RUNS = 2000;
+
+    interface Engine
+    {
+        String getName();
+
+        // @return pages built from input pages, which are released by the engine
+        List<Page> run(PluginTask task, ConfigSource config, Schema inputSchema, Schema outputSchema, List<Page> input);
+    }
+
+    // ReferenceColumnVisitor over PageReader and PageBuilder, the frozen filter of before plans were compiled in transaction
+    static final Engine REFERENCE = new Engine()
+    {
+        @Override
+        public String getName()
+        {
+            return "reference";
+        }
+
+        @Override
+        public List<Page> run(PluginTask task, ConfigSource config, Schema inputSchema, Schema outputSchema, List<Page> input)
+        {
+            MockPageOutput output = new MockPageOutput();
+            PageReader pageReader = new PageReader(inputSchema);
+            PageBuilder pageBuilder = new PageBuilder(Exec.getBufferAllocator(), outputSchema, output);
+            ReferenceColumnVisitor visitor = new ReferenceColumnVisitor(task, inputSchema, outputSchema, pageReader, pageBuilder);
+            for (Page page : input) {
+                pageReader.setPage(page);
+                while (pageReader.nextRecord()) {
+                    outputSchema.visitColumns(visitor);
+                    pageBuilder.addRecord();
+                }
+            }
+            pageBuilder.finish();
+            pageBuilder.close();
+            pageReader.close();
+            return output.pages;
+        }
+    };
+
+    // ColumnFilterPlugin through transaction and open, with the compiled plan in TaskSource
+    static final Engine PLUGIN = new Engine()
+    {
+        @Override
+        public String getName()
+        {
+            return "plugin";
+        }
+
+        @Override
+        public List<Page> run(PluginTask task, ConfigSource config, Schema inputSchema, Schema outputSchema, List<Page> input)
+        {
+            return runPlugin(config, inputSchema, input);
+        }
+    };
+
+    // ColumnFilterPlugin with adaptive: true, which scans null cells of pages ahead for default values with a window of a page
+    static final Engine ADAPTIVE = new Engine()
+    {
+        @Override
+        public String getName()
+        {
+            return "adaptive";
+        }
+
+        @Override
+        public List<Page> run(PluginTask task, ConfigSource config, Schema inputSchema, Schema outputSchema, List<Page> input)
+        {
+            return runPlugin(config.deepCopy().set("adaptive", true).set("adaptive_sample_pages", 0), inputSchema, input);
+        }
+    };
+
+    private static List<Page> runPlugin(ConfigSource config, Schema inputSchema, List<Page> input)
+    {
+        MockPageOutput output = new MockPageOutput();
+        ColumnFilterPlugin plugin = new ColumnFilterPlugin();
+        plugin.transaction(config, inputSchema, (taskSource, transactionOutputSchema) -> {
+            PageOutput pageOutput = plugin.open(taskSource, inputSchema, transactionOutputSchema, output);
+            try {
+                for (Page page : input) {
+                    pageOutput.add(page);
+                }
+                pageOutput.finish();
+            }
+            finally {
+                pageOutput.close();
+            }
+        });
+        return output.pages;
+    }
+
+    static class Case
+    {
+        final Schema inputSchema;
+        // section => entries in YAML flow style
+        final Map<String, List<String>> config;
+        final List<Object[]> records;
+
+        Case(Schema inputSchema, Map<String, List<String>> config, List<Object[]> records)
+        {
+            this.inputSchema = inputSchema;
+            this.config = config;
+            this.records = records;
+        }
+
+        List<String> configLines()
+        {
+            List<String> lines = new ArrayList<>();
+            lines.add("type: column");
+            for (Map.Entry<String, List<String>> section : config.entrySet()) {
+                if (!section.getValue().isEmpty()) {
+                    lines.add(section.getKey() + ":");
+                    for (String entry : section.getValue()) {
+                        lines.add("  - " + entry);
+                    }
+                }
+            }
+            return lines;
+        }
+
+        @Override
+        public String toString()
+        {
+            StringBuilder builder = new StringBuilder();
+            builder.append("schema:");
+            for (Column column : inputSchema.getColumns()) {
+                builder.append(' ').append(column.getName()).append(':').append(column.getType());
+            }
+            builder.append("\nconfig:\n");
+            for (String line : configLines()) {
+                builder.append("  ").append(line).append('\n');
+            }
+            builder.append("records:\n");
+            for (Object[] record : records) {
+                builder.append("  [");
+                for (int i = 0; i < record.length; i++) {
+                    builder.append(i == 0 ? "" : ", ");
+                    builder.append(record[i] instanceof Value ? ((Value) record[i]).toJson() : String.valueOf(record[i]));
+                }
+                builder.append("]\n");
+            }
+            return builder.toString();
+        }
+    }
+
+    private final EmbulkTestRuntime runtime;
+    private final Engine reference;
+
+    DifferentialHarness(EmbulkTestRuntime runtime)
+    {
+        this(runtime, REFERENCE);
+    }
+
+    DifferentialHarness(EmbulkTestRuntime runtime, Engine reference)
+    {
+        this.runtime = runtime;
+        this.reference = reference;
+    }
+
+    static Case generate(long seed)
+    {
+        Random random = new Random(seed);
+        int columnCount = 1 + random.nextInt(6);
+        Schema.Builder schemaBuilder = Schema.builder();
+        for (int i = 0; i < columnCount; i++) {
+            schemaBuilder.add("c" + i, TYPES[random.nextInt(TYPES.length)]);
+        }
+        Schema inputSchema = schemaBuilder.build();
+
+        Map<String, List<String>> config = new LinkedHashMap<>();
+        String section = SECTIONS[random.nextInt(SECTIONS.length)];
+        List<String> entries = new ArrayList<>();
+        for (Column column : inputSchema.getColumns()) {
+            if (random.nextInt(3) == 0) {
+                continue;
+            }
+            String name = column.getName();
+            switch (section) {
+                case "columns":
+                    entries.add(random.nextInt(4) == 0
+                            ? String.format("{name: %s, %s}", name, defaultOption(column.getType()))
+                            : String.format("{name: %s}", name));
+                    if (column.getType() == JSON) {
+                        entries.addAll(pickJsonPaths(random, name, "{name: \"$.%s.k1\"}", "{name: \"$.%s.k0.k2\"}", "{name: \"$.%s.arr[*].k0\"}",
+                                "{name: \"$.%s.copy\", src: \"$.%s.k1\"}", "{name: \"$.%s.added\", type: long, default: 1}"));
+                    }
+                    if (random.nextInt(4) == 0) {
+                        entries.add(String.format("{name: renamed_%s, src: %s}", name, name));
+                    }
+                    break;
+                case "add_columns":
+                    if (random.nextBoolean()) {
+                        entries.add(String.format("{name: copy_%s, src: %s}", name, name));
+                    }
+                    else {
+                        Type type = TYPES[random.nextInt(TYPES.length)];
+                        entries.add(String.format("{name: added_%s, type: %s, %s}", name, type, defaultOption(type)));
+                    }
+                    if (column.getType() == JSON) {
+                        entries.addAll(pickJsonPaths(random, name, "{name: \"$.%s.added\", type: string, default: x}",
+                                "{name: \"$.%s.k0.added\", type: long, default: 1}", "{name: \"$.%s.copy\", src: \"$.%s.k1\"}"));
+                    }
+                    break;
+                default:
+                    if (column.getType() == JSON && random.nextBoolean()) {
+                        entries.addAll(pickJsonPaths(random, name, "{name: \"$.%s.k1\"}", "{name: \"$.%s.k0.k2\"}", "{name: \"$.%s.arr[*].k1\"}"));
+                    }
+                    else {
+                        entries.add(String.format("{name: %s}", name));
+                    }
+                    break;
+            }
+        }
+        config.put(section, entries);
+
+        List<Object[]> records = PageGenerator.builder(inputSchema)
+                .seed(random.nextLong())
+                .nullRatio(random.nextInt(3) * 0.25)
+                .stringLength(0, 8)
+                .stringCardinality(random.nextInt(10))
+                .jsonShape(1 + random.nextInt(3), 1 + random.nextInt(4), random.nextInt(3))
+                .build()
+                .records(random.nextInt(40));
+        return new Case(inputSchema, config, records);
+    }
+
+    private static List<String> pickJsonPaths(Random random, String name, String... formats)
+    {
+        List<String> entries = new ArrayList<>();
+        for (String format : formats) {
+            if (random.nextInt(3) == 0) {
+                entries.add(format.replace("%s", name));
+            }
+        }
+        return entries;
+    }
+
+    private static String defaultOption(Type type)
+    {
+        if (type == BOOLEAN) {
+            return "default: true";
+        }
+        else if (type == LONG) {
+            return "default: 1";
+        }
+        else if (type == DOUBLE) {
+            return "default: 0.5";
+        }
+        else if (type == TIMESTAMP) {
+            return "default: \"2015-07-13\", format: \"%Y-%m-%d\"";
+        }
+        else if (type == JSON) {
+            return "default: \"{\\\"k1\\\":1}\"";
+        }
+        return "default: x";
+    }
+
+    // @return null if the engine builds the same output as the reference, or the difference
+    String check(Engine engine, Case testCase)
+    {
+        ConfigSource config;
+        PluginTask task;
+        Schema outputSchema;
+        Schema actualOutputSchema;
+        try {
+            config = configFromLines(testCase.configLines());
+            task = CONFIG_MAPPER.map(config, PluginTask.class);
+            outputSchema = ReferenceColumnVisitor.buildOutputSchema(task, testCase.inputSchema);
+            actualOutputSchema = ColumnFilterPlugin.buildOutputSchema(task, testCase.inputSchema);
+        }
+        catch (ConfigException ex) {
+            return null; // an invalid config for both
+        }
+        if (!outputSchema.equals(actualOutputSchema)) {
+            return String.format("output schema %s by the filter, but %s by %s", actualOutputSchema, outputSchema, reference.getName());
+        }
+
+        List<Page> expected;
+        try {
+            expected = reference.run(task, config, testCase.inputSchema, outputSchema, pages(testCase));
+        }
+        catch (RuntimeException ex) {
+            return null; // not a case of which the output is defined
+        }
+        List<Page> actual;
+        try {
+            actual = engine.run(CONFIG_MAPPER.map(config, PluginTask.class), config, testCase.inputSchema, outputSchema, pages(testCase));
+        }
+        catch (RuntimeException ex) {
+            return String.format("%s threw %s", engine.getName(), ex);
+        }
+
+        List<Object[]> expectedRecords = Pages.toObjects(outputSchema, expected);
+        List<Object[]> actualRecords = Pages.toObjects(outputSchema, actual);
+        if (expectedRecords.size() != actualRecords.size()) {
+            return String.format("%d records by %s, but %d by %s", actualRecords.size(), engine.getName(), expectedRecords.size(), reference.getName());
+        }
+        for (int i = 0; i < expectedRecords.size(); i++) {
+            if (!Arrays.equals(expectedRecords.get(i), actualRecords.get(i))) {
+                return String.format("record %d: %s by %s, but %s by %s", i,
+                        Arrays.toString(actualRecords.get(i)), engine.getName(), Arrays.toString(expectedRecords.get(i)), reference.getName());
+            }
+        }
+        if (expected.size() != actual.size()) {
+            return String.format("%d pages by %s, but %d by %s", actual.size(), engine.getName(), expected.size(), reference.getName());
+        }
+        for (int i = 0; i < expected.size(); i++) {
+            if (!Arrays.equals(bytesOf(expected.get(i)), bytesOf(actual.get(i)))
+                    || !expected.get(i).getStringReferences().equals(actual.get(i).getStringReferences())
+                    || !expected.get(i).getValueReferences().equals(actual.get(i).getValueReferences())) {
+                return String.format("page %d is not byte-identical", i);
+            }
+        }
+        return null;
+    }
+
+    // @return the minimal failed case found from a failed one
+    Case shrink(Engine engine, Case failed)
+    {
+        Case current = failed;
+        int runs = 0;
+        boolean shrunk = true;
+        while (shrunk && runs < MAX_SHRINK_RUNS) {
+            shrunk = false;
+            for (Case candidate : candidates(current)) {
+                runs++;
+                if (check(engine, candidate) != null) {
+                    current = candidate;
+                    shrunk = true;
+                    break;
+                }
+                if (runs >= MAX_SHRINK_RUNS) {
+                    break;
+                }
+            }
+        }
+        return current;
+    }
+
+    // smaller cases than a case, in the order of records, config entries and input columns
+    private static List<Case> candidates(Case testCase)
+    {
+        List<Case> candidates = new ArrayList<>();
+        int size = testCase.records.size();
+        if (size > 1) {
+            candidates.add(new Case(testCase.inputSchema, testCase.config, new ArrayList<>(testCase.records.subList(0, size / 2))));
+            candidates.add(new Case(testCase.inputSchema, testCase.config, new ArrayList<>(testCase.records.subList(size / 2, size))));
+        }
+        for (int i = 0; i < size; i++) {
+            List<Object[]> records = new ArrayList<>(testCase.records);
+            records.remove(i);
+            candidates.add(new Case(testCase.inputSchema, testCase.config, records));
+        }
+        for (Map.Entry<String, List<String>> section : testCase.config.entrySet()) {
+            for (int i = 0; i < section.getValue().size(); i++) {
+                Map<String, List<String>> config = new LinkedHashMap<>(testCase.config);
+                List<String> entries = new ArrayList<>(section.getValue());
+                entries.remove(i);
+                config.put(section.getKey(), entries);
+                candidates.add(new Case(testCase.inputSchema, config, testCase.records));
+            }
+        }
+        int columnCount = testCase.inputSchema.getColumnCount();
+        for (int i = 0; columnCount > 1 && i < columnCount; i++) {
+            Schema.Builder builder = Schema.builder();
+            for (Column column : testCase.inputSchema.getColumns()) {
+                if (column.getIndex() != i) {
+                    builder.add(column.getName(), column.getType());
+                }
+            }
+            List<Object[]> records = new ArrayList<>();
+            for (Object[] record : testCase.records) {
+                Object[] values = new Object[columnCount - 1];
+                System.arraycopy(record, 0, values, 0, i);
+                System.arraycopy(record, i + 1, values, i, columnCount - i - 1);
+                records.add(values);
+            }
+            candidates.add(new Case(builder.build(), testCase.config, records));
+        }
+        return candidates;
+    }
+
+    private List<Page> pages(Case testCase)
+    {
+        Object[] values = new Object[testCase.records.size() * testCase.inputSchema.getColumnCount()];
+        int i = 0;
+        for (Object[] record : testCase.records) {
+            System.arraycopy(record, 0, values, i, record.length);
+            i += record.length;
+        }
+        return PageTestUtils.buildPage(runtime.getBufferAllocator(), testCase.inputSchema, values);
+    }
+
+    private static byte[] bytesOf(Page page)
+    {
+        Buffer buffer = page.buffer();
+        byte[] bytes = new byte[buffer.limit()];
+        buffer.getBytes(0, bytes, 0, bytes.length);
+        return bytes;
+    }
+
+    private static ConfigSource configFromLines(List<String> lines)
+    {
+        ConfigLoader loader = new ConfigLoader(ExecInternal.getModelManager());
+        return loader.fromYamlString(String.join("\n", lines) + "\n");
+    }
+}
@@ -0,0 +1,357 @@
+/*
+ * Copyright 2026 The Embulk project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.embulk.filter.column;
+
+import org.embulk.spi.BufferAllocator;
+import org.embulk.spi.Column;
+import org.embulk.spi.Page;
+import org.embulk.spi.Schema;
+import org.embulk.spi.type.BooleanType;
+import org.embulk.spi.type.DoubleType;
+import org.embulk.spi.type.JsonType;
+import org.embulk.spi.type.LongType;
+import org.embulk.spi.type.StringType;
+import org.embulk.spi.type.TimestampType;
+import org.embulk.spi.type.Type;
+import org.embulk.test.PageTestUtils;
+import org.msgpack.value.Value;
+import org.msgpack.value.ValueFactory;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Deterministic generator of synthetic records and pages for any schema, for tests and benchmarks.
+ *
+ * The same seed generates the same records. Json values are maps of {@code jsonWidth} keys "k0", "k1", ...,
+ * where "k0" nests another map up to {@code jsonDepth} levels, and the rest are long or string values.
+ * The root map also has "arr", an array of {@code jsonArrayLength} maps of {"k0": long, "k1": string}.
+ *
+ * <pre>
+ * PageGenerator generator = PageGenerator.builder(schema).seed(1).nullRatio(0.1).stringCardinality(100).build();
+ * List&lt;Page&gt; pages = generator.pages(runtime.getBufferAllocator(), 10000);
+ * </pre>
+ */
+class PageGenerator
+{
+    enum Distribution
+    {
+        UNIFORM,
+        // Zipf's law with the exponent 1, where the k-th value appears in proportion to 1/k
+        ZIPF
+    }
+
+    private static final long TIMESTAMP_BASE_SECONDS = 1436745600L; // 2015-07-13T00:00:00Z
+    private static final int TIMESTAMP_RANGE_SECONDS = 365 * 24 * 60 * 60;
+
+    private final Schema schema;
+    private final long seed;
+    private final double[] nullRatios;
+    private final int stringMinLength;
+    private final int stringMaxLength;
+    private final int stringCardinality;
+    private final Distribution stringDistribution;
+    private final int jsonDepth;
+    private final int jsonWidth;
+    private final int jsonArrayLength;
+    private final int jsonCardinality;
+
+    // for stringCardinality, and cumulative weights of ZIPF
+    private final String[] stringPool;
+    private final double[] cumulativeWeights;
+
+    static class Builder
+    {
+        private final Schema schema;
+        private long seed = 0L;
+        private double nullRatio = 0.0;
+        private final Map<String, Double> columnNullRatios = new HashMap<>();
+        private int stringMinLength = 8;
+        private int stringMaxLength = 16;
+        private int stringCardinality = 0;
+        private Distribution stringDistribution = Distribution.UNIFORM;
+        private int jsonDepth = 1;
+        private int jsonWidth = 5;
+        private int jsonArrayLength = 0;
+        private int jsonCardinality = 0;
+
+        private Builder(Schema schema)
+        {
+            this.schema = schema;
+        }
+
+        Builder seed(long seed)
+        {
+            this.seed = seed;
+            return this;
+        }
+
+        // ratio of null values in [0.0, 1.0] of all columns
+        Builder nullRatio(double nullRatio)
+        {
+            this.nullRatio = checkRatio(nullRatio);
+            return this;
+        }
+
+        Builder nullRatio(String columnName, double nullRatio)
+        {
+            if (schema.lookupColumn(columnName) == null) {
+                throw new IllegalArgumentException("Unknown column: " + columnName);
+            }
+            columnNullRatios.put(columnName, checkRatio(nullRatio));
+            return this;
+        }
+
+        Builder stringLength(int minLength, int maxLength)
+        {
+            if (minLength < 0 || maxLength < minLength) {
+                throw new IllegalArgumentException(String.format("Invalid string length: [%d, %d]", minLength, maxLength));
+            }
+            this.stringMinLength = minLength;
+            this.stringMaxLength = maxLength;
+            return this;
+        }
+
+        // number of distinct values of string columns, or 0 for (almost) every value to be distinct
+        Builder stringCardinality(int cardinality)
+        {
+            this.stringCardinality = checkNotNegative("cardinality", cardinality);
+            return this;
+        }
+
+        // distribution of string values over stringCardinality
+        Builder stringDistribution(Distribution distribution)
+        {
+            this.stringDistribution = distribution;
+            return this;
+        }
+
+        Builder jsonShape(int depth, int width, int arrayLength)
+        {
+            if (depth < 1 || width < 1) {
+                throw new IllegalArgumentException(String.format("Invalid json shape: depth %d, width %d", depth, width));
+            }
+            this.jsonDepth = depth;
+            this.jsonWidth = width;
+            this.jsonArrayLength = checkNotNegative("arrayLength", arrayLength);
+            return this;
+        }
+
+        // number of distinct json documents, which are shared by records, or 0 for each record to have its own
+        Builder jsonCardinality(int cardinality)
+        {
+            this.jsonCardinality = checkNotNegative("cardinality", cardinality);
+            return this;
+        }
+
+        PageGenerator build()
+        {
+            return new PageGenerator(this);
+        }
+
+        private static double checkRatio(double ratio)
+        {
+            if (ratio < 0.0 || ratio > 1.0) {
+                throw new IllegalArgumentException("Invalid ratio: " + ratio);
+            }
+            return ratio;
+        }
+
+        private static int checkNotNegative(String name, int value)
+        {
+            if (value < 0) {
+                throw new IllegalArgumentException(String.format("Invalid %s: %d", name, value));
+            }
+            return value;
+        }
+    }
+
+    static Builder builder(Schema schema)
+    {
+        return new Builder(schema);
+    }
+
+    private PageGenerator(Builder builder)
+    {
+        this.schema = builder.schema;
+        this.seed = builder.seed;
+        this.nullRatios = new double[schema.getColumnCount()];
+        for (Column column : schema.getColumns()) {
+            Double ratio = builder.columnNullRatios.get(column.getName());
+            nullRatios[column.getIndex()] = ratio != null ? ratio : builder.nullRatio;
+        }
+        this.stringMinLength = builder.stringMinLength;
+        this.stringMaxLength = builder.stringMaxLength;
+        this.stringCardinality = builder.stringCardinality;
+        this.stringDistribution = builder.stringDistribution;
+        this.jsonDepth = builder.jsonDepth;
+        this.jsonWidth = builder.jsonWidth;
+        this.jsonArrayLength = builder.jsonArrayLength;
+        this.jsonCardinality = builder.jsonCardinality;
+
+        Random random = new Random(seed ^ 0x5DEECE66DL);
+        if (stringCardinality > 0) {
+            stringPool = new String[stringCardinality];
+            for (int i = 0; i < stringCardinality; i++) {
+                stringPool[i] = newString(random);
+            }
+        }
+        else {
+            stringPool = null;
+        }
+        if (stringCardinality > 0 && stringDistribution == Distribution.ZIPF) {
+            cumulativeWeights = new double[stringCardinality];
+            double sum = 0.0;
+            for (int i = 0; i < stringCardinality; i++) {
+                sum += 1.0 / (i + 1);
+                cumulativeWeights[i] = sum;
+            }
+        }
+        else {
+            cumulativeWeights = null;
+        }
+    }
+
+    Schema getSchema()
+    {
+        return schema;
+    }
+
+    // @return records of values of columns, which are the same for the same seed and count
+    List<Object[]> records(int count)
+    {
+        Random random = new Random(seed);
+        Value[] jsonPool = null;
+        if (jsonCardinality > 0) {
+            jsonPool = new Value[jsonCardinality];
+            for (int i = 0; i < jsonCardinality; i++) {
+                jsonPool[i] = newJson(random);
+            }
+        }
+        List<Object[]> records = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Object[] record = new Object[schema.getColumnCount()];
+            for (Column column : schema.getColumns()) {
+                int index = column.getIndex();
+                if (nullRatios[index] > 0.0 && random.nextDouble() < nullRatios[index]) {
+                    continue;
+                }
+                Type type = column.getType();
+                if (type instanceof BooleanType) {
+                    record[index] = random.nextBoolean();
+                }
+                else if (type instanceof LongType) {
+                    record[index] = random.nextLong();
+                }
+                else if (type instanceof DoubleType) {
+                    record[index] = random.nextDouble();
+                }
+                else if (type instanceof StringType) {
+                    record[index] = nextString(random);
+                }
+                else if (type instanceof TimestampType) {
+                    record[index] = Instant.ofEpochSecond(TIMESTAMP_BASE_SECONDS + random.nextInt(TIMESTAMP_RANGE_SECONDS));
+                }
+                else if (type instanceof JsonType) {
+                    record[index] = jsonPool != null ? jsonPool[random.nextInt(jsonPool.length)] : newJson(random);
+                }
+            }
+            records.add(record);
+        }
+        return records;
+    }
+
+    // @return values of records in a row, as PageTestUtils.buildPage takes
+    Object[] values(int count)
+    {
+        int columnCount = schema.getColumnCount();
+        Object[] values = new Object[count * columnCount];
+        int i = 0;
+        for (Object[] record : records(count)) {
+            System.arraycopy(record, 0, values, i, columnCount);
+            i += columnCount;
+        }
+        return values;
+    }
+
+    List<Page> pages(BufferAllocator allocator, int count)
+    {
+        return PageTestUtils.buildPage(allocator, schema, values(count));
+    }
+
+    private String nextString(Random random)
+    {
+        if (stringPool == null) {
+            return newString(random);
+        }
+        if (cumulativeWeights == null) {
+            return stringPool[random.nextInt(stringPool.length)];
+        }
+        double weight = random.nextDouble() * cumulativeWeights[cumulativeWeights.length - 1];
+        int index = Arrays.binarySearch(cumulativeWeights, weight);
+        return stringPool[index >= 0 ? index : Math.min(-index - 1, stringPool.length - 1)];
+    }
+
+    private String newString(Random random)
+    {
+        int length = stringMinLength + random.nextInt(stringMaxLength - stringMinLength + 1);
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            chars[i] = (char) ('a' + random.nextInt(26));
+        }
+        return new String(chars);
+    }
+
+    private Value newJson(Random random)
+    {
+        return newJsonMap(random, 0);
+    }
+
+    private Value newJsonMap(Random random, int level)
+    {
+        boolean root = level == 0;
+        Value[] pairs = new Value[(jsonWidth + (root && jsonArrayLength > 0 ? 1 : 0)) * 2];
+        for (int i = 0; i < jsonWidth; i++) {
+            pairs[i * 2] = ValueFactory.newString("k" + i);
+            if (i == 0 && level + 1 < jsonDepth) {
+                pairs[i * 2 + 1] = newJsonMap(random, level + 1);
+            }
+            else if (i % 2 == 0) {
+                pairs[i * 2 + 1] = ValueFactory.newInteger(random.nextInt());
+            }
+            else {
+                pairs[i * 2 + 1] = ValueFactory.newString(nextString(random));
+            }
+        }
+        if (root && jsonArrayLength > 0) {
+            Value[] elements = new Value[jsonArrayLength];
+            for (int i = 0; i < jsonArrayLength; i++) {
+                elements[i] = ValueFactory.newMap(
+                        ValueFactory.newString("k0"), ValueFactory.newInteger(i),
+                        ValueFactory.newString("k1"), ValueFactory.newString(nextString(random)));
+            }
+            pairs[pairs.length - 2] = ValueFactory.newString("arr");
+            pairs[pairs.length - 1] = ValueFactory.newArray(elements, true);
+        }
+        return ValueFactory.newMap(pairs, true);
+    }
+}
@@ -0,0 +1,418 @@
+/*
+ * Copyright 2016 Naotoshi Seo, and the Embulk project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.embulk.filter.column;
+
+import io.github.medjed.jsonpathcompiler.expressions.Utils;
+import io.github.medjed.jsonpathcompiler.expressions.path.PathCompiler;
+import org.embulk.filter.column.ColumnFilterPlugin.ColumnConfig;
+import org.embulk.filter.column.ColumnFilterPlugin.PluginTask;
+import org.embulk.spi.Column;
+import org.embulk.spi.ColumnVisitor;
+import org.embulk.spi.PageBuilder;
+import org.embulk.spi.PageReader;
+import org.embulk.spi.Schema;
+import org.embulk.spi.SchemaConfigException;
+import org.embulk.spi.time.Timestamp;
+import org.embulk.spi.type.BooleanType;
+import org.embulk.spi.type.DoubleType;
+import org.embulk.spi.type.JsonType;
+import org.embulk.spi.type.LongType;
+import org.embulk.spi.type.StringType;
+import org.embulk.spi.type.TimestampType;
+import org.embulk.spi.type.Type;
+import org.embulk.util.json.JsonParser;
+import org.embulk.util.timestamp.TimestampFormatter;
+import org.msgpack.value.Value;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Frozen copy of ColumnVisitorImpl and ColumnFilterPlugin.buildOutputSchema of 0.9.1, which visited records
+ * over PageReader and PageBuilder before plans were compiled in transaction. This is the oracle of
+ * DifferentialHarness, so do not change it with the filter.
+ */
+class ReferenceColumnVisitor implements ColumnVisitor
+{
+    private static final Logger logger = LoggerFactory.getLogger(ColumnFilterPlugin.class);
+    private final PluginTask task;
+    private final Schema inputSchema;
+    private final Schema outputSchema;
+    private final PageReader pageReader;
+    private final PageBuilder pageBuilder;
+    private final HashMap<Column, Column> outputInputColumnMap = new HashMap<>();
+    private final HashMap<Column, Object> outputDefaultMap = new HashMap<>();
+    private final ReferenceJsonVisitor jsonVisitor;
+
+    ReferenceColumnVisitor(PluginTask task, Schema inputSchema, Schema outputSchema, PageReader pageReader, PageBuilder pageBuilder)
+    {
+        this.task = task;
+        this.inputSchema = inputSchema;
+        this.outputSchema = outputSchema;
+        this.pageReader = pageReader;
+        this.pageBuilder = pageBuilder;
+        buildOutputInputColumnMap();
+        buildOutputDefaultMap();
+        this.jsonVisitor = new ReferenceJsonVisitor(task, inputSchema, outputSchema);
+    }
+
+    // Map outputColumn => inputColumn
+    private void buildOutputInputColumnMap()
+    {
+        for (Column outputColumn : outputSchema.getColumns()) {
+            String name    = outputColumn.getName();
+            String srcName = getSrc(name, task.getColumns());
+            if (srcName == null) {
+                srcName = getSrc(name, task.getAddColumns());
+            }
+            if (srcName == null) {
+                srcName = name;
+            }
+            Column inputColumn;
+            try {
+                inputColumn = inputSchema.lookupColumn(srcName);
+            }
+            catch (SchemaConfigException ex) {
+                inputColumn = null;
+            }
+            outputInputColumnMap.put(outputColumn, inputColumn); // NOTE: inputColumn would be null
+        }
+    }
+
+    // Map outputColumn => default value if present
+    private void buildOutputDefaultMap()
+    {
+        for (Column outputColumn : outputSchema.getColumns()) {
+            String name = outputColumn.getName();
+            Type type = outputColumn.getType();
+
+            Object defaultValue = getDefault(task, name, type, task.getColumns());
+            if (defaultValue == null) {
+                defaultValue = getDefault(task, name, type, task.getAddColumns());
+            }
+            if (defaultValue != null) {
+                outputDefaultMap.put(outputColumn, defaultValue);
+            }
+        }
+    }
+
+    static Schema buildOutputSchema(PluginTask task, Schema inputSchema)
+    {
+        List<ColumnConfig> columns = task.getColumns();
+        List<ColumnConfig> addColumns = task.getAddColumns();
+        List<ColumnConfig> dropColumns = task.getDropColumns();
+
+        // Automatically get column type from inputSchema for columns and dropColumns
+        List<Column> newColumns = new ArrayList<>();
+        int i = 0;
+        if (dropColumns.size() > 0) {
+            for (Column inputColumn : inputSchema.getColumns()) {
+                String name = inputColumn.getName();
+                boolean matched = false;
+                for (ColumnConfig dropColumn : dropColumns) {
+                    // skip json path notation to build outputSchema
+                    if (PathCompiler.isProbablyJsonPath(dropColumn.getName())) {
+                        continue;
+                    }
+                    if (dropColumn.getName().equals(name)) {
+                        matched = true;
+                        break;
+                    }
+                }
+                if (! matched) {
+                    Column outputColumn = new Column(i++, name, inputColumn.getType());
+                    newColumns.add(outputColumn);
+                }
+            }
+        }
+        else if (columns.size() > 0) {
+            for (ColumnConfig column : columns) {
+                // skip json path notation to build output schema
+                if (PathCompiler.isProbablyJsonPath(column.getName())) {
+                    continue;
+                }
+                if (column.getSrc().isPresent() && PathCompiler.isProbablyJsonPath(column.getSrc().get())) {
+                    continue;
+                }
+
+                String name                   = column.getName();
+                Optional<Type>   type         = column.getType();
+                Optional<Object> defaultValue = column.getDefault();
+                Optional<String> src          = column.getSrc();
+
+                String srcName = src.isPresent() ? src.get() : name;
+                Column inputColumn;
+                try {
+                    inputColumn = inputSchema.lookupColumn(srcName);
+                }
+                catch (SchemaConfigException ex) {
+                    inputColumn = null;
+                }
+                if (inputColumn != null) { // filter or copy column
+                    Column outputColumn = new Column(i++, name, inputColumn.getType());
+                    newColumns.add(outputColumn);
+                }
+                else if (type.isPresent() && defaultValue.isPresent()) { // add column
+                    Column outputColumn = new Column(i++, name, type.get());
+                    newColumns.add(outputColumn);
+                }
+                else {
+                    throw new SchemaConfigException(String.format("columns: Column src '%s' is not found in inputSchema. Column '%s' does not have \"type\" and \"default\"", srcName, name));
+                }
+            }
+        }
+        else {
+            for (Column column : inputSchema.getColumns()) {
+                Column outputColumn = new Column(i++, column.getName(), column.getType());
+                newColumns.add(outputColumn);
+            }
+        }
+
+        // Add columns to last. If you want to add to head or middle, you can use `columns` option
+        if (addColumns.size() > 0) {
+            for (ColumnConfig column : addColumns) {
+                // skip json path notation to build output schema
+                if (PathCompiler.isProbablyJsonPath(column.getName())) {
+                    continue;
+                }
+                if (column.getSrc().isPresent() && PathCompiler.isProbablyJsonPath(column.getSrc().get())) {
+                    continue;
+                }
+
+                String name                   = column.getName();
+                Optional<Type> type           = column.getType();
+                Optional<Object> defaultValue = column.getDefault();
+                Optional<String> src          = column.getSrc();
+
+                String srcName = null;
+                Column inputColumn = null;
+                if (src.isPresent()) {
+                    srcName = src.get();
+                    try {
+                        inputColumn = inputSchema.lookupColumn(srcName);
+                    }
+                    catch (SchemaConfigException ex) {
+                        inputColumn = null;
+                    }
+                }
+                if (inputColumn != null) { // copy column
+                    Column outputColumn = new Column(i++, name, inputColumn.getType());
+                    newColumns.add(outputColumn);
+                }
+                else if (type.isPresent() && defaultValue.isPresent()) { // add column
+                    Column outputColumn = new Column(i++, name, type.get());
+                    newColumns.add(outputColumn);
+                }
+                else {
+                    throw new SchemaConfigException(String.format("add_columns: Column src '%s' is not found in inputSchema, Column '%s' does not have \"type\" and \"default\"", srcName, name));
+                }
+            }
+        }
+
+        return new Schema(Collections.unmodifiableList(newColumns));
+    }
+
+    static String getSrc(String name, List<ColumnConfig> columnConfigs)
+    {
+        for (ColumnConfig columnConfig : columnConfigs) {
+            if (columnConfig.getName().equals(name) &&
+                    columnConfig.getSrc().isPresent()) {
+                return columnConfig.getSrc().get();
+            }
+        }
+        return null;
+    }
+
+    static Object getDefault(PluginTask task, String name, Type type, List<ColumnConfig> columnConfigs)
+    {
+        for (ColumnConfig columnConfig : columnConfigs) {
+            if (columnConfig.getName().equals(name)) {
+                return getDefault(task, name, type, columnConfig);
+            }
+        }
+        return null;
+    }
+
+    static Object getDefault(PluginTask task, String name, Type type, ColumnConfig columnConfig)
+    {
+        if (type instanceof BooleanType) {
+            if (columnConfig.getDefault().isPresent()) {
+                return (Boolean) columnConfig.getDefault().get();
+            }
+        }
+        else if (type instanceof LongType) {
+            if (columnConfig.getDefault().isPresent()) {
+                return Long.valueOf(columnConfig.getDefault().get().toString());
+            }
+        }
+        else if (type instanceof DoubleType) {
+            if (columnConfig.getDefault().isPresent()) {
+                return new Double(columnConfig.getDefault().get().toString());
+            }
+        }
+        else if (type instanceof StringType) {
+            if (columnConfig.getDefault().isPresent()) {
+                return columnConfig.getDefault().get();
+            }
+        }
+        else if (type instanceof JsonType) {
+            if (columnConfig.getDefault().isPresent()) {
+                JsonParser parser = new JsonParser();
+                return parser.parse((String) columnConfig.getDefault().get());
+            }
+        }
+        else if (type instanceof TimestampType) {
+            if (columnConfig.getDefault().isPresent()) {
+                String time = (String) columnConfig.getDefault().get();
+                String format = columnConfig.getFormat().orElse(task.getDefaultTimestampFormat());
+                String zoneId = columnConfig.getTimeZoneId().orElse(task.getDefaultTimeZoneId());
+                String defaultDate = columnConfig.getDate().orElse(task.getDefaultDate());
+                TimestampFormatter parser = TimestampFormatter
+                        .builder(format, true)
+                        .setDefaultDateFromString(defaultDate)
+                        .setDefaultZoneFromString(zoneId)
+                        .build();
+                try {
+                    Instant defaultValue = parser.parse(time);
+                    return defaultValue;
+                }
+                catch (DateTimeException ex) {
+                    throw new RuntimeException(ex);
+                }
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public void booleanColumn(Column outputColumn)
+    {
+        Column inputColumn = outputInputColumnMap.get(outputColumn);
+        if (inputColumn == null || pageReader.isNull(inputColumn)) {
+            Boolean defaultValue = (Boolean) outputDefaultMap.get(outputColumn);
+            if (defaultValue == null) {
+                pageBuilder.setNull(outputColumn);
+            }
+            else {
+                pageBuilder.setBoolean(outputColumn, defaultValue.booleanValue());
+            }
+        }
+        else {
+            pageBuilder.setBoolean(outputColumn, pageReader.getBoolean(inputColumn));
+        }
+    }
+
+    @Override
+    public void longColumn(Column outputColumn)
+    {
+        Column inputColumn = outputInputColumnMap.get(outputColumn);
+        if (inputColumn == null || pageReader.isNull(inputColumn)) {
+            Long defaultValue = (Long) outputDefaultMap.get(outputColumn);
+            if (defaultValue == null) {
+                pageBuilder.setNull(outputColumn);
+            }
+            else {
+                pageBuilder.setLong(outputColumn, defaultValue.longValue());
+            }
+        }
+        else {
+            pageBuilder.setLong(outputColumn, pageReader.getLong(inputColumn));
+        }
+    }
+
+    @Override
+    public void doubleColumn(Column outputColumn)
+    {
+        Column inputColumn = outputInputColumnMap.get(outputColumn);
+        if (inputColumn == null || pageReader.isNull(inputColumn)) {
+            Double defaultValue = (Double) outputDefaultMap.get(outputColumn);
+            if (defaultValue == null) {
+                pageBuilder.setNull(outputColumn);
+            }
+            else {
+                pageBuilder.setDouble(outputColumn, defaultValue.doubleValue());
+            }
+        }
+        else {
+            pageBuilder.setDouble(outputColumn, pageReader.getDouble(inputColumn));
+        }
+    }
+
+    @Override
+    public void stringColumn(Column outputColumn)
+    {
+        Column inputColumn = outputInputColumnMap.get(outputColumn);
+        if (inputColumn == null || pageReader.isNull(inputColumn)) {
+            String defaultValue = (String) outputDefaultMap.get(outputColumn);
+            if (defaultValue == null) {
+                pageBuilder.setNull(outputColumn);
+            }
+            else {
+                pageBuilder.setString(outputColumn, defaultValue);
+            }
+        }
+        else {
+            pageBuilder.setString(outputColumn, pageReader.getString(inputColumn));
+        }
+    }
+
+    @Override
+    public void jsonColumn(Column outputColumn)
+    {
+        Column inputColumn = outputInputColumnMap.get(outputColumn);
+        if (inputColumn == null || pageReader.isNull(inputColumn)) {
+            Value defaultValue = (Value) outputDefaultMap.get(outputColumn);
+            if (defaultValue == null) {
+                pageBuilder.setNull(outputColumn);
+            }
+            else {
+                String jsonPath = new StringBuilder("$['").append(Utils.escape(outputColumn.getName(), true)).append("']").toString();
+                pageBuilder.setJson(outputColumn, jsonVisitor.visit(jsonPath, defaultValue));
+            }
+        }
+        else {
+            Value value = pageReader.getJson(inputColumn);
+            String jsonPath = new StringBuilder("$['").append(Utils.escape(outputColumn.getName(), true)).append("']").toString();
+            pageBuilder.setJson(outputColumn, jsonVisitor.visit(jsonPath, value));
+        }
+    }
+
+    @Override
+    public void timestampColumn(Column outputColumn)
+    {
+        Column inputColumn = outputInputColumnMap.get(outputColumn);
+        if (inputColumn == null || pageReader.isNull(inputColumn)) {
+            Instant defaultValue = (Instant) outputDefaultMap.get(outputColumn);
+            if (defaultValue == null) {
+                pageBuilder.setNull(outputColumn);
+            }
+            else {
+                pageBuilder.setTimestamp(outputColumn, Timestamp.ofInstant(defaultValue));
+            }
+        }
+        else {
+            pageBuilder.setTimestamp(outputColumn, pageReader.getTimestamp(inputColumn));
+        }
+    }
+}
@@ -0,0 +1,390 @@
+/*
+ * Copyright 2026 The Embulk project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.embulk.filter.column;
+
+import org.embulk.config.ConfigLoader;
+import org.embulk.config.ConfigSource;
+import org.embulk.filter.column.ColumnFilterPlugin.PluginTask;
+import org.embulk.spi.Column;
+import org.embulk.spi.ColumnVisitor;
+import org.embulk.spi.ExecInternal;
+import org.embulk.spi.Page;
+import org.embulk.spi.PageBuilder;
+import org.embulk.spi.PageOutput;
+import org.embulk.spi.PageReader;
+import org.embulk.spi.Schema;
+import org.embulk.spi.time.Timestamp;
+import org.embulk.test.EmbulkTestRuntime;
+import org.embulk.test.PageTestUtils;
+import org.embulk.util.config.ConfigMapper;
+import org.embulk.util.config.ConfigMapperFactory;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.msgpack.value.Value;
+
+import java.time.Instant;
+import java.util.List;
+
+import static org.embulk.spi.type.Types.BOOLEAN;
+import static org.embulk.spi.type.Types.DOUBLE;
+import static org.embulk.spi.type.Types.JSON;
+import static org.embulk.spi.type.Types.LONG;
+import static org.embulk.spi.type.Types.STRING;
+import static org.embulk.spi.type.Types.TIMESTAMP;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Bytes allocated per record by ColumnVisitorImpl and JsonVisitor, against budgets.
+ *
+ * Allocated bytes of the current thread are measured through ThreadMXBean. The budget is of bytes
+ * beyond a minimal visitor which reads and writes the same values through PageReader and PageBuilder,
+ * so that allocations of pages themselves are not counted.
+ *
+ * Scalar columns have budgets of no allocation. Json columns allocate rebuilt containers and jsonpaths
+ * of keys, whose bytes depend on the JVM, so that their budget is the bytes of {@link ReferenceColumnVisitor},
+ * the visitor before the optimizations, measured in the same way on the same records.
+ */
+public class TestAllocationBudget
+{
+    // Budgets of bytes per record of scalar columns
+    static final double SCALAR_PROJECTION_BUDGET = 0.0;
+    static final double NULL_TO_DEFAULT_BUDGET = 0.0;
+    static final double TIMESTAMP_DEFAULT_BUDGET = 0.0; // the Timestamp of PreparedPlan.getDefaultTimestamp
+
+    // bytes per record which are not of the visitors, such as of ThreadMXBean itself
+    private static final double ALLOWANCE = 1.0;
+
+    private static final int RECORDS = 10000;
+    private static final int WARMUP_ITERATIONS = 30;
+    private static final int MEASURED_ITERATIONS = 5;
+
+    private static final ConfigMapperFactory CONFIG_MAPPER_FACTORY = ConfigMapperFactory
+            .builder()
+            .addDefaultModules()
+            .build();
+    private static final ConfigMapper CONFIG_MAPPER = CONFIG_MAPPER_FACTORY.createConfigMapper();
+
+    @Rule
+    public EmbulkTestRuntime runtime = new EmbulkTestRuntime();
+
+    @Before
+    public void assumeSupported()
+    {
+        assumeTrue("ThreadMXBean does not support allocated bytes", ThreadResources.currentThreadAllocatedBytes() >= 0);
+    }
+
+    private PluginTask taskFromYamlString(String... lines)
+    {
+        StringBuilder builder = new StringBuilder();
+        for (String line : lines) {
+            builder.append(line).append("\n");
+        }
+        ConfigLoader loader = new ConfigLoader(ExecInternal.getModelManager());
+        ConfigSource config = loader.fromYamlString(builder.toString());
+        return CONFIG_MAPPER.map(config, PluginTask.class);
+    }
+
+    private static class DiscardPageOutput implements PageOutput
+    {
+        @Override
+        public void add(Page page)
+        {
+            page.release();
+        }
+
+        @Override
+        public void finish()
+        {
+        }
+
+        @Override
+        public void close()
+        {
+        }
+    }
+
+    // Copies values or default values of the plan as they are, without stats nor jsonpaths
+    private static class CopyingColumnVisitor implements ColumnVisitor
+    {
+        private final PreparedPlan plan;
+        private final PageReader pageReader;
+        private final PageBuilder pageBuilder;
+        private final Timestamp[] defaultTimestamps;
+
+        CopyingColumnVisitor(PreparedPlan plan, Schema outputSchema, PageReader pageReader, PageBuilder pageBuilder)
+        {
+            this.plan = plan;
+            this.pageReader = pageReader;
+            this.pageBuilder = pageBuilder;
+            this.defaultTimestamps = new Timestamp[outputSchema.getColumnCount()];
+            for (Column column : outputSchema.getColumns()) {
+                Object defaultValue = plan.getDefaultValue(column);
+                if (defaultValue instanceof Instant) {
+                    defaultTimestamps[column.getIndex()] = Timestamp.ofInstant((Instant) defaultValue);
+                }
+            }
+        }
+
+        private boolean isNull(Column inputColumn)
+        {
+            return inputColumn == null || pageReader.isNull(inputColumn);
+        }
+
+        @Override
+        public void booleanColumn(Column outputColumn)
+        {
+            Column inputColumn = plan.getInputColumn(outputColumn);
+            if (!isNull(inputColumn)) {
+                pageBuilder.setBoolean(outputColumn, pageReader.getBoolean(inputColumn));
+            }
+            else if (plan.getDefaultValue(outputColumn) != null) {
+                pageBuilder.setBoolean(outputColumn, (Boolean) plan.getDefaultValue(outputColumn));
+            }
+            else {
+                pageBuilder.setNull(outputColumn);
+            }
+        }
+
+        @Override
+        public void longColumn(Column outputColumn)
+        {
+            Column inputColumn = plan.getInputColumn(outputColumn);
+            if (!isNull(inputColumn)) {
+                pageBuilder.setLong(outputColumn, pageReader.getLong(inputColumn));
+            }
+            else if (plan.getDefaultValue(outputColumn) != null) {
+                pageBuilder.setLong(outputColumn, (Long) plan.getDefaultValue(outputColumn));
+            }
+            else {
+                pageBuilder.setNull(outputColumn);
+            }
+        }
+
+        @Override
+        public void doubleColumn(Column outputColumn)
+        {
+            Column inputColumn = plan.getInputColumn(outputColumn);
+            if (!isNull(inputColumn)) {
+                pageBuilder.setDouble(outputColumn, pageReader.getDouble(inputColumn));
+            }
+            else if (plan.getDefaultValue(outputColumn) != null) {
+                pageBuilder.setDouble(outputColumn, (Double) plan.getDefaultValue(outputColumn));
+            }
+            else {
+                pageBuilder.setNull(outputColumn);
+            }
+        }
+
+        @Override
+        public void stringColumn(Column outputColumn)
+        {
+            Column inputColumn = plan.getInputColumn(outputColumn);
+            if (!isNull(inputColumn)) {
+                pageBuilder.setString(outputColumn, pageReader.getString(inputColumn));
+            }
+            else if (plan.getDefaultValue(outputColumn) != null) {
+                pageBuilder.setString(outputColumn, (String) plan.getDefaultValue(outputColumn));
+            }
+            else {
+                pageBuilder.setNull(outputColumn);
+            }
+        }
+
+        @Override
+        public void timestampColumn(Column outputColumn)
+        {
+            Column inputColumn = plan.getInputColumn(outputColumn);
+            if (!isNull(inputColumn)) {
+                pageBuilder.setTimestamp(outputColumn, pageReader.getTimestamp(inputColumn));
+            }
+            else if (defaultTimestamps[outputColumn.getIndex()] != null) {
+                pageBuilder.setTimestamp(outputColumn, defaultTimestamps[outputColumn.getIndex()]);
+            }
+            else {
+                pageBuilder.setNull(outputColumn);
+            }
+        }
+
+        @Override
+        public void jsonColumn(Column outputColumn)
+        {
+            Column inputColumn = plan.getInputColumn(outputColumn);
+            if (!isNull(inputColumn)) {
+                pageBuilder.setJson(outputColumn, pageReader.getJson(inputColumn));
+            }
+            else if (plan.getDefaultValue(outputColumn) != null) {
+                pageBuilder.setJson(outputColumn, (Value) plan.getDefaultValue(outputColumn));
+            }
+            else {
+                pageBuilder.setNull(outputColumn);
+            }
+        }
+    }
+
+    // @return bytes per record allocated by ColumnVisitorImpl beyond CopyingColumnVisitor
+    private double allocatedBytesPerRecord(PluginTask task, Schema inputSchema, Object[] values)
+    {
+        return allocatedBytesPerRecord(task, inputSchema, values, false);
+    }
+
+    // @param reference true to measure ReferenceColumnVisitor instead of ColumnVisitorImpl
+    private double allocatedBytesPerRecord(PluginTask task, Schema inputSchema, Object[] values, boolean reference)
+    {
+        Schema outputSchema = ColumnFilterPlugin.buildOutputSchema(task, inputSchema);
+        PreparedPlan plan = new PreparedPlan(new ColumnPlan(task, inputSchema).compile(), inputSchema, outputSchema);
+
+        PageReader pageReader = new PageReader(inputSchema);
+        PageBuilder pageBuilder = new PageBuilder(runtime.getBufferAllocator(), outputSchema, new DiscardPageOutput());
+        ColumnVisitor visitor = reference
+                ? new ReferenceColumnVisitor(task, inputSchema, outputSchema, pageReader, pageBuilder)
+                : new ColumnVisitorImpl(plan, pageReader, pageBuilder, new ColumnStats(outputSchema));
+        long visitorBytes = allocatedBytes(inputSchema, values, outputSchema, pageReader, pageBuilder, visitor);
+        long copyingBytes = allocatedBytes(inputSchema, values, outputSchema, pageReader, pageBuilder,
+                new CopyingColumnVisitor(plan, outputSchema, pageReader, pageBuilder));
+        pageBuilder.close();
+        pageReader.close();
+
+        return (double) (visitorBytes - copyingBytes) / RECORDS;
+    }
+
+    // @return the least bytes allocated for RECORDS records among measured iterations
+    private long allocatedBytes(Schema inputSchema, Object[] values, Schema outputSchema,
+            PageReader pageReader, PageBuilder pageBuilder, ColumnVisitor visitor)
+    {
+        long least = Long.MAX_VALUE;
+        for (int i = 0; i < WARMUP_ITERATIONS + MEASURED_ITERATIONS; i++) {
+            List<Page> pages = PageTestUtils.buildPage(runtime.getBufferAllocator(), inputSchema, values);
+            long started = ThreadResources.currentThreadAllocatedBytes();
+            for (Page page : pages) {
+                pageReader.setPage(page);
+                while (pageReader.nextRecord()) {
+                    outputSchema.visitColumns(visitor);
+                    pageBuilder.addRecord();
+                }
+            }
+            pageBuilder.flush();
+            long allocated = ThreadResources.currentThreadAllocatedBytes() - started;
+            if (i >= WARMUP_ITERATIONS) {
+                least = Math.min(least, allocated);
+            }
+        }
+        return least;
+    }
+
+    private static void assertWithinBudget(double budget, double bytesPerRecord)
+    {
+        assertTrue(String.format("%.1f bytes per record is over the budget %.1f", bytesPerRecord, budget),
+                bytesPerRecord <= budget + ALLOWANCE);
+    }
+
+    @Test
+    public void scalarProjection()
+    {
+        PluginTask task = taskFromYamlString(
+                "type: column",
+                "columns:",
+                "  - {name: boolean}",
+                "  - {name: long}",
+                "  - {name: double}",
+                "  - {name: string}",
+                "  - {name: timestamp}",
+                "  - {name: renamed, src: long}");
+        Schema inputSchema = Schema.builder()
+                .add("boolean", BOOLEAN)
+                .add("long", LONG)
+                .add("double", DOUBLE)
+                .add("string", STRING)
+                .add("timestamp", TIMESTAMP)
+                .add("dropped_long", LONG)
+                .add("dropped_string", STRING)
+                .build();
+        Object[] values = PageGenerator.builder(inputSchema).seed(1).nullRatio(0.1).stringCardinality(100).build().values(RECORDS);
+        assertWithinBudget(SCALAR_PROJECTION_BUDGET, allocatedBytesPerRecord(task, inputSchema, values));
+    }
+
+    @Test
+    public void nullToDefault()
+    {
+        PluginTask task = taskFromYamlString(
+                "type: column",
+                "columns:",
+                "  - {name: boolean, default: true}",
+                "  - {name: long, default: 1}",
+                "  - {name: double, default: 0.5}",
+                "  - {name: string, default: foo}",
+                "add_columns:",
+                "  - {name: added, type: long, default: 2}");
+        Schema inputSchema = Schema.builder()
+                .add("boolean", BOOLEAN)
+                .add("long", LONG)
+                .add("double", DOUBLE)
+                .add("string", STRING)
+                .build();
+        Object[] values = PageGenerator.builder(inputSchema).seed(1).nullRatio(1.0).build().values(RECORDS);
+        assertWithinBudget(NULL_TO_DEFAULT_BUDGET, allocatedBytesPerRecord(task, inputSchema, values));
+    }
+
+    @Test
+    public void nullToDefault_Timestamp()
+    {
+        PluginTask task = taskFromYamlString(
+                "type: column",
+                "columns:",
+                "  - {name: timestamp, default: \"2015-07-13\", format: \"%Y-%m-%d\"}");
+        Schema inputSchema = Schema.builder()
+                .add("timestamp", TIMESTAMP)
+                .build();
+        Object[] values = PageGenerator.builder(inputSchema).seed(1).nullRatio(1.0).build().values(RECORDS);
+        assertWithinBudget(TIMESTAMP_DEFAULT_BUDGET, allocatedBytesPerRecord(task, inputSchema, values));
+    }
+
+    @Test
+    public void jsonKeep()
+    {
+        PluginTask task = taskFromYamlString(
+                "type: column",
+                "columns:",
+                "  - {name: id}",
+                "  - {name: json}",
+                "  - {name: \"$.json.k1\"}",
+                "  - {name: \"$.json.k0.k2\"}");
+        Schema inputSchema = Schema.builder()
+                .add("id", LONG)
+                .add("json", JSON)
+                .build();
+        Object[] values = PageGenerator.builder(inputSchema).seed(1).jsonShape(2, 10, 0).jsonCardinality(100).build().values(RECORDS);
+        assertWithinBudget(allocatedBytesPerRecord(task, inputSchema, values, true), allocatedBytesPerRecord(task, inputSchema, values));
+    }
+
+    @Test
+    public void jsonDrop()
+    {
+        PluginTask task = taskFromYamlString(
+                "type: column",
+                "drop_columns:",
+                "  - {name: \"$.json.k1\"}",
+                "  - {name: \"$.json.k0.k2\"}");
+        Schema inputSchema = Schema.builder()
+                .add("id", LONG)
+                .add("json", JSON)
+                .build();
+        Object[] values = PageGenerator.builder(inputSchema).seed(1).jsonShape(2, 10, 0).jsonCardinality(100).build().values(RECORDS);
+        assertWithinBudget(allocatedBytesPerRecord(task, inputSchema, values, true), allocatedBytesPerRecord(task, inputSchema, values));
+    }
+}
@@ -20,18 +20,33 @@ import com.google.common.collect.Lists;
 import org.embulk.config.ConfigException;
 import org.embulk.config.ConfigLoader;
 import org.embulk.config.ConfigSource;
+import org.embulk.config.TaskReport;
 import org.embulk.config.TaskSource;
 import org.embulk.filter.column.ColumnFilterPlugin.PluginTask;
 import org.embulk.spi.Column;
 import org.embulk.spi.ExecInternal;
 import org.embulk.spi.FilterPlugin;
+import org.embulk.spi.Page;
+import org.embulk.spi.PageOutput;
 import org.embulk.spi.Schema;
 import org.embulk.test.EmbulkTestRuntime;
+import org.embulk.test.PageTestUtils;
+import org.embulk.test.TestPageBuilderReader.MockPageOutput;
 import org.embulk.util.config.ConfigMapper;
 import org.embulk.util.config.ConfigMapperFactory;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
+import org.msgpack.value.ValueFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
 
 import static org.embulk.spi.type.Types.BOOLEAN;
 import static org.embulk.spi.type.Types.DOUBLE;
@@ -40,6 +55,10 @@ import static org.embulk.spi.type.Types.LONG;
 import static org.embulk.spi.type.Types.STRING;
 import static org.embulk.spi.type.Types.TIMESTAMP;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 
 public class TestColumnFilterPlugin
 {
@@ -203,4 +222,325 @@ public class TestColumnFilterPlugin
 
         transaction(config, inputSchema);
     }
+
+    @Test
+    public void transaction_ShipsCompiledPlan()
+    {
+        ConfigSource config = configFromYamlString(
+                "type: column",
+                "columns:",
+                "  - {name: copy, src: a}",
+                "  - {name: d, type: long, default: 10}",
+                "  - {name: $.json.foo}",
+                "add_columns:",
+                "  - {name: \"$.json.bar\", type: string, default: bar}");
+        Schema inputSchema = schema(
+                new Column(0, "a", STRING),
+                new Column(1, "json", JSON));
+
+        plugin.transaction(config, inputSchema, new FilterPlugin.Control()
+        {
+            @Override
+            public void run(TaskSource taskSource, Schema outputSchema)
+            {
+                PluginTask task = CONFIG_MAPPER_FACTORY.createTaskMapper().map(taskSource, PluginTask.class);
+                CompiledPlan plan = task.getCompiledPlan();
+
+                assertEquals(2, outputSchema.size());
+                assertEquals(0, plan.getInputColumnIndex(outputSchema.getColumn(0)));
+                assertEquals(CompiledPlan.NO_INPUT_COLUMN, plan.getInputColumnIndex(outputSchema.getColumn(1)));
+                assertEquals(Long.valueOf(10), plan.getDefaultValue(outputSchema.getColumn(1)));
+                assertTrue(plan.getJsonShouldVisit().contains("$['json']['foo']"));
+                assertEquals("$['json']['foo']", plan.getJsonColumns().get("$['json']").get(0).getPath());
+                assertEquals("bar", plan.getJsonAddColumns().get("$['json']").get(0).getDefaultValue().asStringValue().asString());
+            }
+        });
+    }
+
+    @Test
+    public void open_SharesPreparedPlanAmongTasks()
+    {
+        ConfigSource config = configFromYamlString(
+                "type: column",
+                "columns:",
+                "  - {name: copy, src: a}",
+                "  - {name: $.json.foo}");
+        Schema inputSchema = schema(
+                new Column(0, "a", STRING),
+                new Column(1, "json", JSON));
+
+        plugin.transaction(config, inputSchema, new FilterPlugin.Control()
+        {
+            @Override
+            public void run(TaskSource taskSource, Schema outputSchema)
+            {
+                // each task restores its own task from the TaskSource
+                PluginTask task1 = CONFIG_MAPPER_FACTORY.createTaskMapper().map(taskSource, PluginTask.class);
+                PluginTask task2 = CONFIG_MAPPER_FACTORY.createTaskMapper().map(taskSource, PluginTask.class);
+                assertNotSame(task1.getCompiledPlan(), task2.getCompiledPlan());
+                assertEquals(task1.getCompiledPlan().getFingerprint(), task2.getCompiledPlan().getFingerprint());
+
+                PreparedPlan plan1 = PreparedPlan.of(task1.getCompiledPlan(), inputSchema, outputSchema);
+                PreparedPlan plan2 = PreparedPlan.of(task2.getCompiledPlan(), inputSchema, outputSchema);
+                assertSame(plan1, plan2);
+            }
+        });
+    }
+
+    @Test
+    public void open_CommitsColumnStats()
+    {
+        ConfigSource config = configFromYamlString(
+                "type: column",
+                "columns:",
+                "  - {name: a, default: x}",
+                "  - {name: b}",
+                "  - {name: json}");
+        Schema inputSchema = schema(
+                new Column(0, "a", STRING),
+                new Column(1, "b", STRING),
+                new Column(2, "json", JSON));
+        ConfigSource dropConfig = configFromYamlString(
+                "type: column",
+                "drop_columns:",
+                "  - {name: \"$.json.foo\"}");
+
+        plugin.transaction(config, inputSchema, new FilterPlugin.Control()
+        {
+            @Override
+            public void run(TaskSource taskSource, Schema outputSchema)
+            {
+                MockPageOutput mockPageOutput = new MockPageOutput();
+                PageOutput pageOutput = plugin.open(taskSource, inputSchema, outputSchema, mockPageOutput);
+                for (Page page : PageTestUtils.buildPage(runtime.getBufferAllocator(), inputSchema,
+                        "abc", null, ValueFactory.newMap(ValueFactory.newString("foo"), ValueFactory.newInteger(1)),
+                        null, "de", null)) {
+                    pageOutput.add(page);
+                }
+                pageOutput.finish();
+                pageOutput.close();
+
+                PluginTask task = CONFIG_MAPPER_FACTORY.createTaskMapper().map(taskSource, PluginTask.class);
+                List<TaskReport> taskReports = ColumnStats.collect(task.getTransactionId());
+                assertEquals(1, taskReports.size());
+                ColumnStats stats = new ColumnStats(outputSchema);
+                stats.merge(taskReports.get(0));
+                assertEquals(2, stats.records);
+                assertEquals(1, stats.pagesIn);
+                assertEquals(1, stats.pagesOut);
+                assertEquals(1, stats.defaults[0]); // a
+                assertEquals(4, stats.stringChars[0]); // "abc" and "x"
+                assertEquals(3, stats.columnBytesIn[0]); // "abc"
+                assertEquals(4, stats.columnBytesOut[0]); // "abc" and "x"
+                assertEquals(1, stats.nulls[1]); // b
+                assertEquals(2, stats.stringChars[1]);
+                assertEquals(2, stats.columnBytesIn[1]);
+                assertEquals(2, stats.columnBytesOut[1]);
+                assertEquals(0, stats.columnBytesIn[2]); // json bytes are counted only with instrument: true
+                assertEquals(1, stats.nulls[2]); // json
+            }
+        });
+
+        plugin.transaction(dropConfig, inputSchema, new FilterPlugin.Control()
+        {
+            @Override
+            public void run(TaskSource taskSource, Schema outputSchema)
+            {
+                PageOutput pageOutput = plugin.open(taskSource, inputSchema, outputSchema, new MockPageOutput());
+                for (Page page : PageTestUtils.buildPage(runtime.getBufferAllocator(), inputSchema,
+                        "abc", null, ValueFactory.newMap(ValueFactory.newString("foo"), ValueFactory.newInteger(1)))) {
+                    pageOutput.add(page);
+                }
+                pageOutput.finish();
+                pageOutput.close();
+
+                PluginTask task = CONFIG_MAPPER_FACTORY.createTaskMapper().map(taskSource, PluginTask.class);
+                ColumnStats stats = new ColumnStats(outputSchema);
+                stats.merge(ColumnStats.collect(task.getTransactionId()).get(0));
+                assertEquals(1, stats.jsonDroppedKeys[2]);
+            }
+        });
+    }
+
+    @Test
+    public void commit_OnlyTransactionsInThisJvm()
+    {
+        Schema outputSchema = Schema.builder().add("a", STRING).build();
+        // a task of a transaction in another JVM
+        assertFalse(ColumnStats.commit("another", new Object(), new ColumnStats(outputSchema).toTaskReport()));
+        assertTrue(ColumnStats.collect("another").isEmpty());
+
+        ColumnStats.begin("this");
+        assertTrue(ColumnStats.commit("this", new Object(), new ColumnStats(outputSchema).toTaskReport()));
+        assertEquals(1, ColumnStats.collect("this").size());
+        assertFalse(ColumnStats.commit("this", new Object(), new ColumnStats(outputSchema).toTaskReport()));
+    }
+
+    @Test
+    public void commit_OverwritesReportOfSameOutput()
+    {
+        Schema outputSchema = Schema.builder().add("a", STRING).build();
+        Object output = new Object();
+        ColumnStats stats = new ColumnStats(outputSchema);
+        ColumnStats.begin("retried");
+        stats.records = 1;
+        assertTrue(ColumnStats.commit("retried", output, stats.toTaskReport()));
+        stats.records = 2;
+        assertTrue(ColumnStats.commit("retried", output, stats.toTaskReport()));
+        assertTrue(ColumnStats.commit("retried", new Object(), stats.toTaskReport()));
+
+        List<TaskReport> taskReports = ColumnStats.collect("retried");
+        assertEquals(2, taskReports.size());
+        ColumnStats merged = new ColumnStats(outputSchema);
+        for (TaskReport taskReport : taskReports) {
+            merged.merge(taskReport);
+        }
+        assertEquals(4, merged.records);
+    }
+
+    @Test
+    public void utf8Length()
+    {
+        assertEquals(0, ColumnStats.utf8Length(""));
+        assertEquals(3, ColumnStats.utf8Length("abc"));
+        assertEquals(2, ColumnStats.utf8Length("\u00e9"));
+        assertEquals(3, ColumnStats.utf8Length("\u3042"));
+        assertEquals(4, ColumnStats.utf8Length("\ud83d\ude00"));
+        assertEquals(3, ColumnStats.utf8Length("\ud83d"));
+        assertEquals("\u00e9\u3042\ud83d\ude00".getBytes(StandardCharsets.UTF_8).length,
+                ColumnStats.utf8Length("\u00e9\u3042\ud83d\ude00"));
+    }
+
+    @Test
+    public void transaction_RegistersMBeanUntilTasksEnd() throws Exception
+    {
+        final ObjectName[] registered = new ObjectName[1];
+        ConfigSource config = configFromYamlString(
+                "type: column",
+                "columns:",
+                "  - {name: a, default: x}");
+        Schema inputSchema = schema(
+                new Column(0, "a", STRING));
+
+        plugin.transaction(config, inputSchema, new FilterPlugin.Control()
+        {
+            @Override
+            public void run(TaskSource taskSource, Schema outputSchema)
+            {
+                PluginTask task = CONFIG_MAPPER_FACTORY.createTaskMapper().map(taskSource, PluginTask.class);
+                ObjectName name;
+                try {
+                    name = ObjectName.getInstance("org.embulk.filter.column:type=ColumnFilter,name=" + ObjectName.quote(task.getTransactionId()));
+                }
+                catch (MalformedObjectNameException ex) {
+                    throw new AssertionError(ex);
+                }
+                registered[0] = name;
+                MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+                assertTrue(server.isRegistered(name));
+
+                PageOutput pageOutput1 = plugin.open(taskSource, inputSchema, outputSchema, new MockPageOutput());
+                PageOutput pageOutput2 = plugin.open(taskSource, inputSchema, outputSchema, new MockPageOutput());
+                for (Page page : PageTestUtils.buildPage(runtime.getBufferAllocator(), inputSchema, "abc", null)) {
+                    pageOutput1.add(page);
+                }
+                try {
+                    assertEquals(2L, server.getAttribute(name, "Records"));
+                    assertEquals(1L, server.getAttribute(name, "PagesIn"));
+                    assertEquals(1L, server.getAttribute(name, "DefaultFills"));
+                    assertEquals(2, server.getAttribute(name, "RunningTasks"));
+                }
+                catch (JMException ex) {
+                    throw new AssertionError(ex);
+                }
+                pageOutput1.finish();
+                pageOutput1.close();
+                pageOutput2.finish();
+                pageOutput2.close();
+
+                // counters are kept for the next task, which runs after the others with a thread
+                PageOutput pageOutput3 = plugin.open(taskSource, inputSchema, outputSchema, new MockPageOutput());
+                for (Page page : PageTestUtils.buildPage(runtime.getBufferAllocator(), inputSchema, "def")) {
+                    pageOutput3.add(page);
+                }
+                pageOutput3.finish();
+                pageOutput3.close();
+                try {
+                    assertEquals(3L, server.getAttribute(name, "Records"));
+                    assertEquals(2L, server.getAttribute(name, "PagesIn"));
+                    assertEquals(0, server.getAttribute(name, "RunningTasks"));
+                }
+                catch (JMException ex) {
+                    throw new AssertionError(ex);
+                }
+            }
+        });
+        assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(registered[0]));
+    }
+
+    @Test
+    public void explain()
+    {
+        PluginTask task = taskFromYamlString(
+                "type: column",
+                "columns:",
+                "  - {name: copy, src: a}",
+                "  - {name: d, type: long, default: 10}",
+                "  - {name: json}",
+                "  - {name: other}",
+                "  - {name: \"$.json.foo\"}",
+                "add_columns:",
+                "  - {name: \"$.json.bar\", type: string, default: bar}");
+        Schema inputSchema = schema(
+                new Column(0, "a", STRING),
+                new Column(1, "json", JSON),
+                new Column(2, "other", JSON));
+        ColumnPlan plan = new ColumnPlan(task, inputSchema);
+
+        List<String> lines = plan.explain(plan.compile());
+        assertEquals("column 0 'copy' (string) <= input column 0 'a': typed copy", lines.get(0));
+        assertEquals("column 1 'd' (long) <= no input column, default 10 from columns: always default", lines.get(1));
+        assertEquals("column 2 'json' (json) <= input column 1 'json': json visited by jsonpaths", lines.get(2));
+        assertEquals("column 3 'other' (json) <= input column 2 'other': json passed through", lines.get(3));
+        // ancestors are filled automatically
+        assertEquals("jsonpath $: columns [$['json']] add_columns [$['json']]", lines.get(4));
+        assertEquals("jsonpath $['json']: columns [$['json']['foo']] add_columns [$['json']['bar']]", lines.get(5));
+        assertEquals(6, lines.size());
+    }
+
+    @Test
+    public void open_AccountsResources()
+    {
+        ConfigSource config = configFromYamlString(
+                "type: column",
+                "account_resources: true",
+                "columns:",
+                "  - {name: a}");
+        Schema inputSchema = schema(
+                new Column(0, "a", STRING));
+
+        plugin.transaction(config, inputSchema, new FilterPlugin.Control()
+        {
+            @Override
+            public void run(TaskSource taskSource, Schema outputSchema)
+            {
+                PageOutput pageOutput = plugin.open(taskSource, inputSchema, outputSchema, new MockPageOutput());
+                for (Page page : PageTestUtils.buildPage(runtime.getBufferAllocator(), inputSchema, "abc", "def", null)) {
+                    pageOutput.add(page);
+                }
+                pageOutput.finish();
+                pageOutput.close();
+
+                PluginTask task = CONFIG_MAPPER_FACTORY.createTaskMapper().map(taskSource, PluginTask.class);
+                TaskReport taskReport = ColumnStats.collect(task.getTransactionId()).get(0);
+                assertTrue(taskReport.has("resources"));
+                if (ThreadResources.isSupported()) {
+                    ColumnStats stats = new ColumnStats(outputSchema, false, true);
+                    stats.merge(taskReport);
+                    assertTrue(stats.cpuNanos >= 0);
+                    assertTrue(stats.allocatedBytes > 0);
+                }
+            }
+        });
+    }
 }
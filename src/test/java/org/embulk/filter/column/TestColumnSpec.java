@@ -0,0 +1,218 @@
+/*
+ * Copyright 2026 The Embulk project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.embulk.filter.column;
+
+import org.embulk.config.ConfigException;
+import org.embulk.config.ConfigLoader;
+import org.embulk.config.ConfigSource;
+import org.embulk.filter.column.ColumnFilterPlugin.PluginTask;
+import org.embulk.spi.ExecInternal;
+import org.embulk.spi.Schema;
+import org.embulk.test.EmbulkTestRuntime;
+import org.embulk.util.config.ConfigMapper;
+import org.embulk.util.config.ConfigMapperFactory;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.embulk.spi.type.Types.BOOLEAN;
+import static org.embulk.spi.type.Types.JSON;
+import static org.embulk.spi.type.Types.LONG;
+import static org.embulk.spi.type.Types.STRING;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class TestColumnSpec
+{
+    private static final ConfigMapperFactory CONFIG_MAPPER_FACTORY = ConfigMapperFactory
+            .builder()
+            .addDefaultModules()
+            .build();
+    private static final ConfigMapper CONFIG_MAPPER = CONFIG_MAPPER_FACTORY.createConfigMapper();
+
+    @Rule
+    public EmbulkTestRuntime runtime = new EmbulkTestRuntime();
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private PluginTask taskFromYamlString(String... lines)
+    {
+        StringBuilder builder = new StringBuilder();
+        for (String line : lines) {
+            builder.append(line).append("\n");
+        }
+        String yamlString = builder.toString();
+
+        ConfigLoader loader = new ConfigLoader(ExecInternal.getModelManager());
+        ConfigSource config = loader.fromYamlString(yamlString);
+        return CONFIG_MAPPER.map(config, PluginTask.class);
+    }
+
+    private String writeFile(String fileName, List<String> lines) throws IOException
+    {
+        File file = folder.newFile(fileName);
+        Files.write(file.toPath(), lines, StandardCharsets.UTF_8);
+        return file.getAbsolutePath();
+    }
+
+    @Test
+    public void readFile_Csv() throws IOException
+    {
+        List<String> lines = new ArrayList<>();
+        lines.add("name,src,type,default,format");
+        lines.add("id,,,,");
+        lines.add("copy,src,,,");
+        lines.add("flag,,boolean,true,");
+        lines.add("\"$['json']['a,b']\",,string,\"say \"\"hi\"\"\",");
+        List<ColumnSpec> specs = ColumnSpec.readFile(writeFile("columns.csv", lines));
+
+        assertEquals(4, specs.size());
+        assertEquals("id", specs.get(0).getName());
+        assertFalse(specs.get(0).getSrc().isPresent());
+        assertFalse(specs.get(0).getDefault().isPresent());
+        assertEquals("src", specs.get(1).getSrc().get());
+        assertEquals(BOOLEAN, specs.get(2).getType().get());
+        assertEquals(Boolean.TRUE, specs.get(2).getDefault().get());
+        assertEquals("$['json']['a,b']", specs.get(3).getName());
+        assertEquals(STRING, specs.get(3).getType().get());
+        assertEquals("say \"hi\"", specs.get(3).getDefault().get());
+    }
+
+    @Test
+    public void readFile_JsonLines() throws IOException
+    {
+        List<String> lines = new ArrayList<>();
+        lines.add("{\"name\": \"id\"}");
+        lines.add("");
+        lines.add("{\"name\": \"copy\", \"src\": \"src\"}");
+        lines.add("{\"name\": \"count\", \"type\": \"long\", \"default\": 10}");
+        lines.add("{\"name\": \"doc\", \"type\": \"json\", \"default\": {\"foo\": \"bar\"}}");
+        List<ColumnSpec> specs = ColumnSpec.readFile(writeFile("columns.jsonl", lines));
+
+        assertEquals(4, specs.size());
+        assertEquals("id", specs.get(0).getName());
+        assertEquals("src", specs.get(1).getSrc().get());
+        assertEquals(Long.valueOf(10), specs.get(2).getDefault().get());
+        assertEquals(JSON, specs.get(3).getType().get());
+        assertEquals("{\"foo\":\"bar\"}", specs.get(3).getDefault().get());
+    }
+
+    @Test(expected = ConfigException.class)
+    public void readFile_UnknownExtension() throws IOException
+    {
+        List<String> lines = new ArrayList<>();
+        lines.add("name");
+        ColumnSpec.readFile(writeFile("columns.txt", lines));
+    }
+
+    @Test(expected = ConfigException.class)
+    public void readFile_NameIsRequired() throws IOException
+    {
+        List<String> lines = new ArrayList<>();
+        lines.add("{\"src\": \"id\"}");
+        ColumnSpec.readFile(writeFile("columns.jsonl", lines));
+    }
+
+    @Test
+    public void buildOutputSchema_ColumnsFile() throws IOException
+    {
+        List<String> lines = new ArrayList<>();
+        lines.add("name,src,type,default");
+        lines.add("b,,,");
+        lines.add("copy,a,,");
+        lines.add("added,,long,1");
+        PluginTask task = taskFromYamlString(
+                "type: column",
+                "columns:",
+                "  - {name: a}",
+                "columns_file: " + writeFile("columns.csv", lines));
+        Schema inputSchema = Schema.builder()
+                .add("a", STRING)
+                .add("b", STRING)
+                .add("c", STRING)
+                .build();
+
+        Schema outputSchema = ColumnFilterPlugin.buildOutputSchema(task, inputSchema);
+        assertEquals(4, outputSchema.size());
+        assertEquals("a", outputSchema.getColumn(0).getName());
+        assertEquals("b", outputSchema.getColumn(1).getName());
+        assertEquals("copy", outputSchema.getColumn(2).getName());
+        assertEquals("added", outputSchema.getColumn(3).getName());
+        assertEquals(LONG, outputSchema.getColumn(3).getType());
+    }
+
+    @Test
+    public void buildOutputSchema_DropColumnsFile() throws IOException
+    {
+        List<String> lines = new ArrayList<>();
+        lines.add("{\"name\": \"b\"}");
+        PluginTask task = taskFromYamlString(
+                "type: column",
+                "drop_columns_file: " + writeFile("drop_columns.jsonl", lines));
+        Schema inputSchema = Schema.builder()
+                .add("a", STRING)
+                .add("b", STRING)
+                .build();
+
+        Schema outputSchema = ColumnFilterPlugin.buildOutputSchema(task, inputSchema);
+        assertEquals(1, outputSchema.size());
+        assertEquals("a", outputSchema.getColumn(0).getName());
+    }
+
+    @Test
+    public void compile_ColumnsFileSameAsInline() throws IOException
+    {
+        // PlanBenchmark measures the time of both
+        int size = 2000;
+        List<String> yamlLines = new ArrayList<>();
+        yamlLines.add("type: column");
+        yamlLines.add("columns:");
+        List<String> csvLines = new ArrayList<>();
+        csvLines.add("name,src");
+        Schema.Builder builder = Schema.builder().add("json", JSON);
+        for (int i = 0; i < size; i++) {
+            builder.add("c" + i, LONG);
+            if (i % 2 == 0) {
+                yamlLines.add(String.format("  - {name: r%d, src: c%d}", i, i));
+                csvLines.add(String.format("r%d,c%d", i, i));
+            }
+            else {
+                yamlLines.add(String.format("  - {name: \"$.json.k%d\"}", i));
+                csvLines.add(String.format("$.json.k%d,", i));
+            }
+        }
+        Schema inputSchema = builder.build();
+        String columnsFile = writeFile("columns.csv", csvLines);
+
+        PluginTask inlineTask = taskFromYamlString(yamlLines.toArray(new String[0]));
+        CompiledPlan inlinePlan = new ColumnPlan(inlineTask, inputSchema).compile();
+        PluginTask fileTask = taskFromYamlString("type: column", "columns_file: " + columnsFile);
+        CompiledPlan filePlan = new ColumnPlan(fileTask, inputSchema).compile();
+
+        assertEquals(inlinePlan.getInputColumnIndexes(), filePlan.getInputColumnIndexes());
+        assertEquals(inlinePlan.getJsonShouldVisit().size(), filePlan.getJsonShouldVisit().size());
+        assertEquals(inlinePlan.getFingerprint(), filePlan.getFingerprint());
+    }
+}
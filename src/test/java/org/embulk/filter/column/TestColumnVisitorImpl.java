@@ -37,6 +37,7 @@ import org.junit.Test;
 import org.msgpack.value.ValueFactory;
 
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.List;
 
 import static org.embulk.spi.type.Types.BOOLEAN;
@@ -45,7 +46,9 @@ import static org.embulk.spi.type.Types.JSON;
 import static org.embulk.spi.type.Types.LONG;
 import static org.embulk.spi.type.Types.STRING;
 import static org.embulk.spi.type.Types.TIMESTAMP;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 public class TestColumnVisitorImpl
 {
@@ -82,6 +85,12 @@ public class TestColumnVisitorImpl
     }
 
     private List<Object[]> filter(PluginTask task, Schema inputSchema, Object ... objects)
+    {
+        return filter(task, inputSchema, null, PageTestUtils.buildPage(runtime.getBufferAllocator(), inputSchema, objects));
+    }
+
+    // pageNulls is null not to scan null cells of pages
+    private List<Object[]> filter(PluginTask task, Schema inputSchema, PageNulls pageNulls, List<Page> pages)
     {
         MockPageOutput output = new MockPageOutput();
         Schema outputSchema = ColumnFilterPlugin.buildOutputSchema(task, inputSchema);
@@ -89,8 +98,11 @@ public class TestColumnVisitorImpl
         PageReader pageReader = new PageReader(inputSchema);
         ColumnVisitorImpl visitor = new ColumnVisitorImpl(task, inputSchema, outputSchema, pageReader, pageBuilder);
 
-        List<Page> pages = PageTestUtils.buildPage(runtime.getBufferAllocator(), inputSchema, objects);
         for (Page page : pages) {
+            if (pageNulls != null) {
+                assertTrue(pageNulls.scan(page));
+                visitor.setPageNulls(pageNulls);
+            }
             pageReader.setPage(page);
 
             while (pageReader.nextRecord()) {
@@ -195,6 +207,41 @@ public class TestColumnVisitorImpl
         }
     }
 
+    @Test
+    public void visit_Columns_WithDefault_PageNulls()
+    {
+        PluginTask task = taskFromYamlString(
+                "type: column",
+                "columns:",
+                "  - {name: all_null, type: long, default: 1}",
+                "  - {name: not_null, type: long, default: 2}",
+                "  - {name: sparse, type: string, default: sparse}",
+                "  - {name: sparse_json, type: json, default: \"{\\\"foo\\\":\\\"bar\\\"}\" }",
+                "  - {name: sparse_no_default}");
+        Schema inputSchema = Schema.builder()
+                .add("all_null", LONG)
+                .add("not_null", LONG)
+                .add("sparse", STRING)
+                .add("sparse_json", JSON)
+                .add("sparse_no_default", TIMESTAMP)
+                .build();
+        PageGenerator generator = PageGenerator.builder(inputSchema)
+                .nullRatio(0.95)
+                .nullRatio("all_null", 1.0)
+                .nullRatio("not_null", 0.0)
+                .jsonShape(1, 2, 0)
+                .build();
+
+        List<Object[]> expected = filter(task, inputSchema, null, generator.pages(runtime.getBufferAllocator(), 5000));
+        List<Object[]> records = filter(task, inputSchema, new PageNulls(inputSchema), generator.pages(runtime.getBufferAllocator(), 5000));
+
+        assertEquals(5000, records.size());
+        for (int i = 0; i < records.size(); i++) {
+            assertArrayEquals(expected.get(i), records.get(i));
+        }
+        assertEquals(Long.valueOf(1), records.get(0)[0]);
+    }
+
     @Test
     public void visit_Columns_WithSrc()
     {
@@ -316,4 +363,35 @@ public class TestColumnVisitorImpl
             assertEquals("src", record[1]);
         }
     }
+
+    @Test
+    public void startup_ManyColumns()
+    {
+        // PlanBenchmark measures the time of this
+        int size = 10000;
+        List<String> lines = new ArrayList<>();
+        lines.add("type: column");
+        lines.add("columns:");
+        Schema.Builder builder = Schema.builder();
+        for (int i = 0; i < size; i++) {
+            builder.add("c" + i, LONG);
+            lines.add(String.format("  - {name: r%d, src: c%d}", i, i));
+        }
+        lines.add("add_columns:");
+        for (int i = 0; i < size; i++) {
+            lines.add(String.format("  - {name: a%d, type: long, default: %d}", i, i));
+        }
+        PluginTask task = taskFromYamlString(lines.toArray(new String[0]));
+        Schema inputSchema = builder.build();
+
+        Schema outputSchema = ColumnFilterPlugin.buildOutputSchema(task, inputSchema);
+        PageBuilder pageBuilder = new PageBuilder(runtime.getBufferAllocator(), outputSchema, new MockPageOutput());
+        new ColumnVisitorImpl(task, inputSchema, outputSchema, new PageReader(inputSchema), pageBuilder);
+        pageBuilder.close();
+
+        assertEquals(size * 2, outputSchema.size());
+        assertEquals("r0", outputSchema.getColumn(0).getName());
+        assertEquals("a0", outputSchema.getColumn(size).getName());
+        assertEquals("a9999", outputSchema.getColumn(size * 2 - 1).getName());
+    }
 }
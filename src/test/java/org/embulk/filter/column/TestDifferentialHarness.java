@@ -0,0 +1,113 @@
+/*
+ * Copyright 2026 The Embulk project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.embulk.filter.column;
+
+import org.embulk.config.ConfigSource;
+import org.embulk.filter.column.ColumnFilterPlugin.PluginTask;
+import org.embulk.spi.Page;
+import org.embulk.spi.Schema;
+import org.embulk.test.EmbulkTestRuntime;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+public class TestDifferentialHarness
+{
+    // -Dorg.embulk.filter.column.differential.cases=10000 to run more cases
+    private static final int CASES = Integer.getInteger("org.embulk.filter.column.differential.cases", 200);
+
+    @Rule
+    public EmbulkTestRuntime runtime = new EmbulkTestRuntime();
+
+    @Test
+    public void check_PluginAgainstReference()
+    {
+        DifferentialHarness harness = new DifferentialHarness(runtime);
+        for (long seed = 0; seed < CASES; seed++) {
+            DifferentialHarness.Case testCase = DifferentialHarness.generate(seed);
+            String difference = harness.check(DifferentialHarness.PLUGIN, testCase);
+            if (difference != null) {
+                DifferentialHarness.Case shrunk = harness.shrink(DifferentialHarness.PLUGIN, testCase);
+                fail(String.format("seed %d: %s%nminimal case: %s%n%s", seed, difference, harness.check(DifferentialHarness.PLUGIN, shrunk), shrunk));
+            }
+        }
+    }
+
+    @Test
+    public void check_AdaptiveAgainstReference()
+    {
+        DifferentialHarness harness = new DifferentialHarness(runtime);
+        for (long seed = 0; seed < CASES; seed++) {
+            DifferentialHarness.Case testCase = DifferentialHarness.generate(seed);
+            String difference = harness.check(DifferentialHarness.ADAPTIVE, testCase);
+            if (difference != null) {
+                DifferentialHarness.Case shrunk = harness.shrink(DifferentialHarness.ADAPTIVE, testCase);
+                fail(String.format("seed %d: %s%nminimal case: %s%n%s", seed, difference, harness.check(DifferentialHarness.ADAPTIVE, shrunk), shrunk));
+            }
+        }
+    }
+
+    @Test
+    public void generate_Deterministic()
+    {
+        assertEquals(DifferentialHarness.generate(7).toString(), DifferentialHarness.generate(7).toString());
+    }
+
+    @Test
+    public void shrink_ToMinimalCase()
+    {
+        // an engine which loses the last record
+        DifferentialHarness.Engine broken = new DifferentialHarness.Engine()
+        {
+            @Override
+            public String getName()
+            {
+                return "broken";
+            }
+
+            @Override
+            public List<Page> run(PluginTask task, ConfigSource config, Schema inputSchema, Schema outputSchema, List<Page> input)
+            {
+                List<Page> pages = DifferentialHarness.REFERENCE.run(task, config, inputSchema, outputSchema, input);
+                if (!pages.isEmpty()) {
+                    pages.remove(pages.size() - 1).release();
+                }
+                return pages;
+            }
+        };
+        DifferentialHarness harness = new DifferentialHarness(runtime);
+        DifferentialHarness.Case failed = null;
+        for (long seed = 0; failed == null; seed++) {
+            DifferentialHarness.Case testCase = DifferentialHarness.generate(seed);
+            if (testCase.records.size() > 10 && harness.check(broken, testCase) != null) {
+                failed = testCase;
+            }
+        }
+
+        DifferentialHarness.Case shrunk = harness.shrink(broken, failed);
+        assertNotNull(harness.check(broken, shrunk));
+        assertEquals(1, shrunk.records.size());
+        assertEquals(1, shrunk.inputSchema.getColumnCount());
+        assertNull(harness.check(DifferentialHarness.PLUGIN, shrunk));
+    }
+}
@@ -0,0 +1,186 @@
+/*
+ * Copyright 2026 The Embulk project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.embulk.filter.column;
+
+import org.embulk.config.ConfigException;
+import org.embulk.config.ConfigLoader;
+import org.embulk.config.ConfigSource;
+import org.embulk.filter.column.ColumnFilterPlugin.PluginTask;
+import org.embulk.spi.ExecInternal;
+import org.embulk.spi.Page;
+import org.embulk.spi.PageBuilder;
+import org.embulk.spi.PageReader;
+import org.embulk.spi.Schema;
+import org.embulk.spi.util.Pages;
+import org.embulk.test.EmbulkTestRuntime;
+import org.embulk.test.PageTestUtils;
+import org.embulk.test.TestPageBuilderReader.MockPageOutput;
+import org.embulk.util.config.ConfigMapper;
+import org.embulk.util.config.ConfigMapperFactory;
+import org.junit.Rule;
+import org.junit.Test;
+import org.msgpack.value.Value;
+import org.msgpack.value.ValueFactory;
+
+import java.util.List;
+
+import static org.embulk.spi.type.Types.JSON;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+public class TestJsonBudget
+{
+    private static final ConfigMapper CONFIG_MAPPER = ConfigMapperFactory.builder().addDefaultModules().build().createConfigMapper();
+
+    @Rule
+    public EmbulkTestRuntime runtime = new EmbulkTestRuntime();
+
+    private static PluginTask taskFromYamlString(String... lines)
+    {
+        StringBuilder builder = new StringBuilder();
+        for (String line : lines) {
+            builder.append(line).append("\n");
+        }
+        ConfigSource config = new ConfigLoader(ExecInternal.getModelManager()).fromYamlString(builder.toString());
+        return CONFIG_MAPPER.map(config, PluginTask.class);
+    }
+
+    // {"drop": 0, "a": [{"k": 0}, {"k": 1}, ...]} whose "a" is of the size, of 2 visited nodes for each element
+    private static Value document(int size)
+    {
+        Value[] elements = new Value[size];
+        for (int i = 0; i < size; i++) {
+            elements[i] = ValueFactory.newMap(ValueFactory.newString("k"), ValueFactory.newInteger(i));
+        }
+        return ValueFactory.newMap(
+                ValueFactory.newString("drop"), ValueFactory.newInteger(0),
+                ValueFactory.newString("a"), ValueFactory.newArray(elements));
+    }
+
+    private List<Object[]> filter(PluginTask task, JsonBudget jsonBudget, Schema inputSchema, Object... objects)
+    {
+        MockPageOutput output = new MockPageOutput();
+        Schema outputSchema = ColumnFilterPlugin.buildOutputSchema(task, inputSchema);
+        PageBuilder pageBuilder = new PageBuilder(runtime.getBufferAllocator(), outputSchema, output);
+        PageReader pageReader = new PageReader(inputSchema);
+        ColumnVisitorImpl visitor = new ColumnVisitorImpl(task, inputSchema, outputSchema, pageReader, pageBuilder);
+        visitor.setJsonBudget(jsonBudget);
+        for (Page page : PageTestUtils.buildPage(runtime.getBufferAllocator(), inputSchema, objects)) {
+            pageReader.setPage(page);
+            while (pageReader.nextRecord()) {
+                outputSchema.visitColumns(visitor);
+                pageBuilder.addRecord();
+            }
+        }
+        pageBuilder.finish();
+        pageBuilder.close();
+        return Pages.toObjects(outputSchema, output.pages);
+    }
+
+    @Test
+    public void addNode_ChecksEveryInterval()
+    {
+        // a budget of 0 is over at the first check, timed from start()
+        JsonBudget subject = new JsonBudget(0, JsonBudget.Action.SET_NULL);
+        subject.start();
+        for (int i = 0; i < JsonBudget.CHECK_INTERVAL - 1; i++) {
+            subject.addNode();
+        }
+        try {
+            subject.addNode();
+            fail("JsonBudget.Exceeded is expected");
+        }
+        catch (JsonBudget.Exceeded ex) {
+        }
+
+        // not checked out of start() and stop()
+        subject.stop();
+        for (int i = 0; i < JsonBudget.CHECK_INTERVAL * 4; i++) {
+            subject.addNode();
+        }
+    }
+
+    @Test
+    public void visit_Actions()
+    {
+        Schema inputSchema = Schema.builder().add("doc", JSON).build();
+        PluginTask task = taskFromYamlString(
+                "type: column",
+                "columns:",
+                "  - {name: doc, type: json, default: \"{\\\"default\\\": true}\"}",
+                "  - {name: \"$.doc.a[*].k\"}");
+        Value small = document(1);
+        Value large = document(JsonBudget.CHECK_INTERVAL);
+
+        List<Object[]> records = filter(task, new JsonBudget(0, JsonBudget.Action.PASS_THROUGH), inputSchema, small, large);
+        assertEquals(ValueFactory.newMap(ValueFactory.newString("a"), small.asMapValue().map().get(ValueFactory.newString("a"))), records.get(0)[0]);
+        assertEquals(large, records.get(1)[0]);
+
+        records = filter(task, new JsonBudget(0, JsonBudget.Action.SET_NULL), inputSchema, small, large);
+        assertNull(records.get(1)[0]);
+
+        // the same as of a null value, whose default value is visited out of the budget
+        records = filter(task, new JsonBudget(0, JsonBudget.Action.DEFAULT), inputSchema, large, null);
+        assertNotNull(records.get(1)[0]);
+        assertEquals(records.get(1)[0], records.get(0)[0]);
+    }
+
+    @Test
+    public void visit_PassedThroughNodesCounted()
+    {
+        Schema inputSchema = Schema.builder().add("doc", JSON).build();
+        // "$.doc" is visited for "$.doc.k0.drop", and its other keys are passed through
+        PluginTask task = taskFromYamlString(
+                "type: column",
+                "drop_columns:",
+                "  - {name: \"$.doc.k0.drop\"}");
+        Value[] keyValues = new Value[JsonBudget.CHECK_INTERVAL * 2];
+        for (int i = 0; i < JsonBudget.CHECK_INTERVAL; i++) {
+            keyValues[i * 2] = ValueFactory.newString("k" + i);
+            keyValues[i * 2 + 1] = ValueFactory.newInteger(i);
+        }
+        Value wide = ValueFactory.newMap(keyValues);
+        Value narrow = ValueFactory.newMap(ValueFactory.newString("k0"), ValueFactory.newInteger(0));
+
+        List<Object[]> records = filter(task, new JsonBudget(0, JsonBudget.Action.SET_NULL), inputSchema, narrow, wide);
+        assertEquals(narrow, records.get(0)[0]);
+        assertNull(records.get(1)[0]);
+    }
+
+    @Test
+    public void of_Task()
+    {
+        assertNull(JsonBudget.of(taskFromYamlString("type: column")));
+        assertEquals(JsonBudget.Action.DEFAULT, JsonBudget.of(taskFromYamlString("type: column", "json_time_budget_ms: 10")).getAction());
+        assertEquals(JsonBudget.Action.SET_NULL,
+                JsonBudget.of(taskFromYamlString("type: column", "json_time_budget_ms: 10", "json_budget_action: set_null")).getAction());
+        try {
+            JsonBudget.of(taskFromYamlString("type: column", "json_budget_action: drop"));
+            fail("ConfigException is expected");
+        }
+        catch (ConfigException ex) {
+        }
+        try {
+            JsonBudget.of(taskFromYamlString("type: column", "json_time_budget_ms: 0"));
+            fail("ConfigException is expected");
+        }
+        catch (ConfigException ex) {
+        }
+    }
+}
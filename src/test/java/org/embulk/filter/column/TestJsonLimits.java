@@ -0,0 +1,225 @@
+/*
+ * Copyright 2026 The Embulk project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.embulk.filter.column;
+
+import org.embulk.config.ConfigException;
+import org.embulk.config.ConfigLoader;
+import org.embulk.config.ConfigSource;
+import org.embulk.filter.column.ColumnFilterPlugin.PluginTask;
+import org.embulk.spi.ExecInternal;
+import org.embulk.spi.Page;
+import org.embulk.spi.PageBuilder;
+import org.embulk.spi.PageReader;
+import org.embulk.spi.Schema;
+import org.embulk.spi.util.Pages;
+import org.embulk.test.EmbulkTestRuntime;
+import org.embulk.test.PageTestUtils;
+import org.embulk.test.TestPageBuilderReader.MockPageOutput;
+import org.embulk.util.config.ConfigMapper;
+import org.embulk.util.config.ConfigMapperFactory;
+import org.junit.Rule;
+import org.junit.Test;
+import org.msgpack.value.Value;
+import org.msgpack.value.ValueFactory;
+
+import java.util.List;
+
+import static org.embulk.spi.type.Types.JSON;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TestJsonLimits
+{
+    private static final ConfigMapper CONFIG_MAPPER = ConfigMapperFactory.builder().addDefaultModules().build().createConfigMapper();
+
+    @Rule
+    public EmbulkTestRuntime runtime = new EmbulkTestRuntime();
+
+    private static PluginTask taskFromYamlString(String... lines)
+    {
+        StringBuilder builder = new StringBuilder();
+        for (String line : lines) {
+            builder.append(line).append("\n");
+        }
+        ConfigSource config = new ConfigLoader(ExecInternal.getModelManager()).fromYamlString(builder.toString());
+        return CONFIG_MAPPER.map(config, PluginTask.class);
+    }
+
+    private static Value array(int size)
+    {
+        Value[] elements = new Value[size];
+        for (int i = 0; i < size; i++) {
+            elements[i] = ValueFactory.newInteger(i);
+        }
+        return ValueFactory.newArray(elements);
+    }
+
+    // {"k": {"k": ... {"k": 0}}} of the depth
+    private static Value nested(int depth)
+    {
+        Value value = ValueFactory.newInteger(0);
+        for (int i = 0; i < depth; i++) {
+            value = ValueFactory.newMap(ValueFactory.newString("k"), value);
+        }
+        return value;
+    }
+
+    private List<Object[]> filter(PluginTask task, JsonLimits jsonLimits, Schema inputSchema, Object... objects)
+    {
+        MockPageOutput output = new MockPageOutput();
+        Schema outputSchema = ColumnFilterPlugin.buildOutputSchema(task, inputSchema);
+        PageBuilder pageBuilder = new PageBuilder(runtime.getBufferAllocator(), outputSchema, output);
+        PageReader pageReader = new PageReader(inputSchema);
+        ColumnVisitorImpl visitor = new ColumnVisitorImpl(task, inputSchema, outputSchema, pageReader, pageBuilder);
+        visitor.setJsonLimits(jsonLimits);
+        for (Page page : PageTestUtils.buildPage(runtime.getBufferAllocator(), inputSchema, objects)) {
+            pageReader.setPage(page);
+            while (pageReader.nextRecord()) {
+                outputSchema.visitColumns(visitor);
+                pageBuilder.addRecord();
+            }
+        }
+        pageBuilder.finish();
+        pageBuilder.close();
+        return Pages.toObjects(outputSchema, output.pages);
+    }
+
+    @Test
+    public void check_WithinLimits()
+    {
+        JsonLimits subject = new JsonLimits(1000, 3, 10, JsonLimits.Action.TRUNCATE);
+        assertNull(subject.check(ValueFactory.newString("scalar")));
+        assertNull(subject.check(array(10)));
+        assertNull(subject.check(nested(3)));
+    }
+
+    @Test
+    public void check_Violations()
+    {
+        JsonLimits subject = new JsonLimits(100, 3, 10, JsonLimits.Action.TRUNCATE);
+        assertEquals(JsonLimits.Violation.ARRAY_ELEMENTS, subject.check(array(11)));
+        assertEquals(JsonLimits.Violation.DEPTH, subject.check(nested(4)));
+        // a string of 100 bytes is of 102 bytes in msgpack
+        assertEquals(JsonLimits.Violation.BYTES, subject.check(ValueFactory.newString(new String(new char[100]).replace('\0', 'a'))));
+        // nested arrays are counted each
+        assertEquals(JsonLimits.Violation.ARRAY_ELEMENTS, subject.check(ValueFactory.newArray(array(1), array(11))));
+    }
+
+    @Test
+    public void check_ContainerSizeBeforeElements()
+    {
+        JsonLimits subject = new JsonLimits(100, 3, 10, JsonLimits.Action.TRUNCATE);
+        // 60 entries are of 120 bytes or more, found before the depth of the first one
+        Value[] keyValues = new Value[120];
+        for (int i = 0; i < 60; i++) {
+            keyValues[i * 2] = ValueFactory.newString("k" + i);
+            keyValues[i * 2 + 1] = nested(5);
+        }
+        assertEquals(JsonLimits.Violation.BYTES, subject.check(ValueFactory.newMap(keyValues)));
+
+        // scalars are not sized without max_json_bytes
+        JsonLimits depthOnly = new JsonLimits(Long.MAX_VALUE, 3, Integer.MAX_VALUE, JsonLimits.Action.TRUNCATE);
+        assertNull(depthOnly.check(ValueFactory.newArray(ValueFactory.newString(new String(new char[1000]).replace('\0', 'a')))));
+        assertEquals(JsonLimits.Violation.DEPTH, depthOnly.check(nested(4)));
+    }
+
+    @Test
+    public void truncate_WithinLimits()
+    {
+        JsonLimits subject = new JsonLimits(20, 2, 5, JsonLimits.Action.TRUNCATE);
+        // 1 byte of the header and 1 byte of each small integer
+        assertEquals(array(5), subject.truncate(array(100)));
+        assertEquals(ValueFactory.newMap(ValueFactory.newString("k"), ValueFactory.newMap(ValueFactory.newString("k"), ValueFactory.newNil())),
+                subject.truncate(nested(3)));
+
+        Value truncated = subject.truncate(ValueFactory.newArray(array(5), array(5), array(5), array(5)));
+        assertNull(subject.check(truncated));
+        // the last array is cut to its header of a byte
+        assertEquals(ValueFactory.newArray(array(5), array(5), array(5), ValueFactory.newArray()), truncated);
+
+        assertEquals(ValueFactory.newNil(), subject.truncate(ValueFactory.newString(new String(new char[30]).replace('\0', 'a'))));
+    }
+
+    @Test
+    public void visit_Actions()
+    {
+        Schema inputSchema = Schema.builder().add("doc", JSON).build();
+        PluginTask task = taskFromYamlString(
+                "type: column",
+                "drop_columns:",
+                "  - {name: \"$.doc.drop\"}");
+        Value small = ValueFactory.newMap(ValueFactory.newString("drop"), ValueFactory.newInteger(0), ValueFactory.newString("a"), array(2));
+        Value large = ValueFactory.newMap(ValueFactory.newString("drop"), ValueFactory.newInteger(0), ValueFactory.newString("a"), array(4));
+        Value visited = ValueFactory.newMap(ValueFactory.newString("a"), array(2));
+
+        List<Object[]> records = filter(task, new JsonLimits(Long.MAX_VALUE, Integer.MAX_VALUE, 2, JsonLimits.Action.TRUNCATE), inputSchema, small, large);
+        assertEquals(visited, records.get(0)[0]);
+        assertEquals(visited, records.get(1)[0]);
+
+        records = filter(task, new JsonLimits(Long.MAX_VALUE, Integer.MAX_VALUE, 2, JsonLimits.Action.DEFAULT), inputSchema, small, large);
+        assertEquals(visited, records.get(0)[0]);
+        assertNull(records.get(1)[0]);
+
+        records = filter(task, new JsonLimits(Long.MAX_VALUE, Integer.MAX_VALUE, 2, JsonLimits.Action.PASS_THROUGH), inputSchema, small, large);
+        assertEquals(visited, records.get(0)[0]);
+        assertEquals(large, records.get(1)[0]);
+    }
+
+    @Test
+    public void visit_CountsNodesNotVisited()
+    {
+        Schema inputSchema = Schema.builder().add("doc", JSON).build();
+        PluginTask task = taskFromYamlString(
+                "type: column",
+                "drop_columns:",
+                "  - {name: \"$.doc.drop\"}");
+        Value value = ValueFactory.newMap(ValueFactory.newString("drop"), nested(2), ValueFactory.newString("a"), array(3));
+        Value visited = ValueFactory.newMap(ValueFactory.newString("a"), array(3));
+        long bytes = JsonLimits.bytesOf(value);
+
+        List<Object[]> records = filter(task, new JsonLimits(bytes, 3, Integer.MAX_VALUE, JsonLimits.Action.DEFAULT), inputSchema, value);
+        assertEquals(visited, records.get(0)[0]);
+        // the dropped subtree is walked for its bytes and depth
+        records = filter(task, new JsonLimits(bytes - 1, 3, Integer.MAX_VALUE, JsonLimits.Action.DEFAULT), inputSchema, value);
+        assertNull(records.get(0)[0]);
+        records = filter(task, new JsonLimits(Long.MAX_VALUE, 2, Integer.MAX_VALUE, JsonLimits.Action.DEFAULT), inputSchema, value);
+        assertNull(records.get(0)[0]);
+    }
+
+    @Test
+    public void of_Task()
+    {
+        assertNull(JsonLimits.of(taskFromYamlString("type: column")));
+        assertTrue(JsonLimits.of(taskFromYamlString("type: column", "max_json_depth: 10")) != null);
+        assertEquals(JsonLimits.Action.PASS_THROUGH,
+                JsonLimits.of(taskFromYamlString("type: column", "max_array_elements: 10", "json_limit_action: pass_through")).getAction());
+        try {
+            JsonLimits.of(taskFromYamlString("type: column", "json_limit_action: drop"));
+            fail("ConfigException is expected");
+        }
+        catch (ConfigException ex) {
+        }
+        try {
+            JsonLimits.of(taskFromYamlString("type: column", "max_json_bytes: -1"));
+            fail("ConfigException is expected");
+        }
+        catch (ConfigException ex) {
+        }
+    }
+}
@@ -35,10 +35,13 @@ import org.msgpack.value.ValueFactory;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 
 import static org.embulk.spi.type.Types.JSON;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 public class TestJsonVisitor
@@ -877,4 +880,151 @@ public class TestJsonVisitor
 
         jsonVisitor(task, inputSchema);
     }
+
+    @Test
+    public void buildJsonSchema_ManyJsonPaths()
+    {
+        int size = 3000;
+        List<String> lines = new ArrayList<>();
+        lines.add("type: column");
+        lines.add("columns:");
+        for (int i = 0; i < size; i++) {
+            lines.add(String.format("  - {name: $.json1.k%d.v}", i));
+        }
+        PluginTask task = taskFromYamlString(lines.toArray(new String[0]));
+        Schema inputSchema = Schema.builder()
+                .add("json1", JSON)
+                .build();
+
+        // PlanBenchmark measures the time of this
+        long compileCount = JsonPathUtil.getCompileCount();
+        JsonVisitor subject = jsonVisitor(task, inputSchema);
+        long compiled = JsonPathUtil.getCompileCount() - compileCount;
+
+        assertEquals(size, subject.jsonColumns.get("$['json1']").size());
+        // each distinct jsonpath is compiled at most once: $.json1.k0.v, $['json1']['k0']['v'], $['json1']['k0'], and $['json1']
+        assertTrue(compiled <= size * 3 + 1);
+    }
+
+    @Test
+    public void visit_WithStats()
+    {
+        PluginTask task = taskFromYamlString(
+                "type: column",
+                "drop_columns:",
+                "  - {name: \"$.json1.a.b\"}",
+                "add_columns:",
+                "  - {name: \"$.json1.a.d\", type: string, default: d}");
+        Schema inputSchema = Schema.builder()
+                .add("json1", JSON)
+                .add("json2", JSON)
+                .build();
+        Schema outputSchema = ColumnFilterPlugin.buildOutputSchema(task, inputSchema);
+        ColumnStats stats = new ColumnStats(outputSchema);
+        JsonVisitor subject = jsonVisitor(task, inputSchema).withStats(stats);
+
+        // {"a": {"b": "b", "c": [1, 2, 3]}}
+        Value c = ValueFactory.newArray(ValueFactory.newInteger(1), ValueFactory.newInteger(2), ValueFactory.newInteger(3));
+        Value a = ValueFactory.newMap(
+                ValueFactory.newString("b"), ValueFactory.newString("b"),
+                ValueFactory.newString("c"), c);
+        Value json1 = ValueFactory.newMap(ValueFactory.newString("a"), a);
+        stats.beginJsonValue();
+        subject.visit("$['json1']", json1);
+        stats.endJsonValue(outputSchema.getColumn(0));
+
+        stats.beginJsonValue();
+        subject.visit("$['json2']", json1);
+        stats.endJsonValue(outputSchema.getColumn(1));
+
+        assertEquals(1, stats.jsonValues[0]);
+        // json1, json1.a, and json1.a.d, but json1.a.c is passed through
+        assertEquals(3, stats.jsonNodesVisited[0]);
+        assertEquals(1, stats.jsonNodesPassedThrough[0]);
+        assertEquals(1, stats.jsonDroppedKeys[0]);
+        assertEquals(1, stats.jsonDefaults[0]);
+        assertEquals(2, stats.jsonMaxDepth[0]);
+        assertEquals(2, stats.jsonMaxWidth[0]);
+        assertEquals(2, stats.jsonContainers[0]);
+
+        assertEquals(0, stats.jsonNodesVisited[1]);
+        assertEquals(1, stats.jsonNodesPassedThrough[1]);
+        assertEquals(0, stats.jsonMaxDepth[1]);
+    }
+
+    @Test
+    public void visit_NotRewritten_ReturnsValueItself()
+    {
+        PluginTask task = taskFromYamlString(
+                "type: column",
+                "drop_columns:",
+                "  - {name: \"$.json1.secret\"}",
+                "  - {name: \"$.json1.a.secret\"}");
+        Schema inputSchema = Schema.builder()
+                .add("json1", JSON)
+                .build();
+        JsonVisitor subject = jsonVisitor(task, inputSchema);
+
+        // {"a": {"b": 1}, "c": [1, 2]}
+        Value a = ValueFactory.newMap(ValueFactory.newString("b"), ValueFactory.newInteger(1));
+        Value c = ValueFactory.newArray(ValueFactory.newInteger(1), ValueFactory.newInteger(2));
+        Value unchanged = ValueFactory.newMap(ValueFactory.newString("a"), a, ValueFactory.newString("c"), c);
+        assertSame(unchanged, subject.visit("$['json1']", unchanged));
+
+        // {"a": {"b": 1, "secret": 2}, "c": [1, 2]}
+        Value secret = ValueFactory.newMap(ValueFactory.newString("b"), ValueFactory.newInteger(1), ValueFactory.newString("secret"), ValueFactory.newInteger(2));
+        Value nested = ValueFactory.newMap(ValueFactory.newString("a"), secret, ValueFactory.newString("c"), c);
+        Value visited = subject.visit("$['json1']", nested);
+        assertNotSame(nested, visited);
+        assertEquals(unchanged, visited);
+        // the subtree not rewritten is not rebuilt
+        assertSame(c, visited.asMapValue().map().get(ValueFactory.newString("c")));
+    }
+
+    @Test
+    public void visit_ReusedStack_SameAsReference()
+    {
+        List<String[]> configs = new ArrayList<>();
+        configs.add(new String[] {
+            "type: column",
+            "drop_columns:",
+            "  - {name: \"$.json1.k1\"}",
+            "  - {name: \"$.json1.k0.k2\"}",
+            "  - {name: \"$.json1.arr[*].k1\"}"});
+        configs.add(new String[] {
+            "type: column",
+            "columns:",
+            "  - {name: \"$.json1.k1\"}",
+            "  - {name: \"$.json1.k0.k0.k1\"}",
+            "  - {name: \"$.json1.arr[*].k0\"}",
+            "  - {name: \"$.json1.copy\", src: \"$.json1.k1\"}",
+            "  - {name: \"$.json1.added\", type: long, default: 1}"});
+        configs.add(new String[] {
+            "type: column",
+            "add_columns:",
+            "  - {name: \"$.json1.added\", type: string, default: x}",
+            "  - {name: \"$.json1.k0.added\", type: long, default: 1}",
+            "  - {name: \"$.json1.arr[3]\", type: long, default: 1}"});
+        Schema inputSchema = Schema.builder()
+                .add("json1", JSON)
+                .build();
+        Object[] values = PageGenerator.builder(inputSchema)
+                .nullRatio(0.0)
+                .jsonShape(3, 4, 100)
+                .build()
+                .values(200);
+        for (String[] config : configs) {
+            PluginTask task = taskFromYamlString(config);
+            Schema outputSchema = ColumnFilterPlugin.buildOutputSchema(task, inputSchema);
+            ReferenceJsonVisitor reference = new ReferenceJsonVisitor(task, inputSchema, outputSchema);
+            // a visitor of a task reuses its stack for all values
+            JsonVisitor subject = jsonVisitor(task, inputSchema).withStats(new ColumnStats(outputSchema));
+            for (Object value : values) {
+                Value expected = reference.visit("$['json1']", (Value) value);
+                Value actual = subject.visit("$['json1']", (Value) value);
+                assertEquals(expected, actual);
+                assertEquals(expected.toString(), actual.toString());
+            }
+        }
+    }
 }
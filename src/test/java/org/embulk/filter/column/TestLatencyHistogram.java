@@ -0,0 +1,70 @@
+/*
+ * Copyright 2026 The Embulk project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.embulk.filter.column;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TestLatencyHistogram
+{
+    @Test
+    public void indexOf_LowestEquivalentValue()
+    {
+        long[] values = {0L, 1L, 15L, 16L, 17L, 31L, 32L, 33L, 1000L, 123456789L, Long.MAX_VALUE};
+        for (long value : values) {
+            int index = LatencyHistogram.indexOf(value);
+            assertTrue(LatencyHistogram.lowestEquivalentValue(index) <= value);
+            assertTrue(value <= LatencyHistogram.highestEquivalentValue(index));
+        }
+        assertEquals(16, LatencyHistogram.indexOf(16L));
+        assertEquals(32, LatencyHistogram.lowestEquivalentValue(LatencyHistogram.indexOf(33L)));
+    }
+
+    @Test
+    public void getValueAtPercentile()
+    {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long i = 1; i <= 1000; i++) {
+            histogram.record(i * 1000);
+        }
+        assertEquals(1000, histogram.getTotalCount());
+        assertEquals(1000000, histogram.getMax());
+        long p50 = histogram.getValueAtPercentile(50.0);
+        long p99 = histogram.getValueAtPercentile(99.0);
+        assertTrue(Math.abs(p50 - 500000) <= 500000 / 16);
+        assertTrue(Math.abs(p99 - 990000) <= 990000 / 16);
+        assertEquals(1000000, histogram.getValueAtPercentile(100.0));
+    }
+
+    @Test
+    public void toList_FromList()
+    {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(10);
+        histogram.record(2000);
+        histogram.record(2001);
+
+        LatencyHistogram merged = new LatencyHistogram();
+        merged.merge(LatencyHistogram.fromList(histogram.toList()));
+        merged.merge(LatencyHistogram.fromList(histogram.toList()));
+        assertEquals(6, merged.getTotalCount());
+        assertEquals(2001, merged.getMax());
+        assertEquals(10, merged.getValueAtPercentile(33.0));
+    }
+}
@@ -0,0 +1,213 @@
+/*
+ * Copyright 2026 The Embulk project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.embulk.filter.column;
+
+import org.embulk.config.ConfigLoader;
+import org.embulk.config.ConfigSource;
+import org.embulk.filter.column.ColumnFilterPlugin.PluginTask;
+import org.embulk.spi.ExecInternal;
+import org.embulk.spi.Page;
+import org.embulk.spi.PageBuilder;
+import org.embulk.spi.PageReader;
+import org.embulk.spi.Schema;
+import org.embulk.spi.util.Pages;
+import org.embulk.test.EmbulkTestRuntime;
+import org.embulk.test.PageTestUtils;
+import org.embulk.test.TestPageBuilderReader.MockPageOutput;
+import org.embulk.util.config.ConfigMapper;
+import org.embulk.util.config.ConfigMapperFactory;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.embulk.spi.type.Types.LONG;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TestNullScanWindow
+{
+    @Rule
+    public EmbulkTestRuntime runtime = new EmbulkTestRuntime();
+
+    private static final ConfigMapperFactory CONFIG_MAPPER_FACTORY = ConfigMapperFactory
+            .builder()
+            .addDefaultModules()
+            .build();
+    private static final ConfigMapper CONFIG_MAPPER = CONFIG_MAPPER_FACTORY.createConfigMapper();
+
+    private PluginTask taskFromYamlString(String... lines)
+    {
+        StringBuilder builder = new StringBuilder();
+        for (String line : lines) {
+            builder.append(line).append("\n");
+        }
+        ConfigLoader loader = new ConfigLoader(ExecInternal.getModelManager());
+        ConfigSource config = loader.fromYamlString(builder.toString());
+        return CONFIG_MAPPER.map(config, PluginTask.class);
+    }
+
+    // Runs pages through ColumnVisitorImpl as PageOutput.add does, with a NullScanWindow if windowSize is positive
+    private class Run
+    {
+        final NullScanWindow nullScanWindow;
+        final List<Object[]> records;
+        int scannedPages;
+
+        Run(PluginTask task, Schema inputSchema, int windowSize, List<List<Object[]>> pageRecords)
+        {
+            Schema outputSchema = ColumnFilterPlugin.buildOutputSchema(task, inputSchema);
+            PreparedPlan plan = new PreparedPlan(new ColumnPlan(task, inputSchema).compile(), inputSchema, outputSchema);
+            MockPageOutput output = new MockPageOutput();
+            PageBuilder pageBuilder = new PageBuilder(runtime.getBufferAllocator(), outputSchema, output);
+            PageReader pageReader = new PageReader(inputSchema);
+            this.nullScanWindow = windowSize > 0 ? new NullScanWindow(plan, inputSchema, outputSchema, windowSize) : null;
+            ColumnVisitorImpl visitor = new ColumnVisitorImpl(plan, pageReader, pageBuilder, new ColumnStats(outputSchema));
+            PageNulls pageNulls = new PageNulls(inputSchema);
+
+            for (List<Object[]> records : pageRecords) {
+                List<Object> values = new ArrayList<>();
+                for (Object[] record : records) {
+                    for (Object value : record) {
+                        values.add(value);
+                    }
+                }
+                for (Page page : PageTestUtils.buildPage(runtime.getBufferAllocator(), inputSchema, values.toArray())) {
+                    if (nullScanWindow != null) {
+                        if (nullScanWindow.isScanning()) {
+                            assertTrue(pageNulls.scan(page));
+                            visitor.setPageNulls(pageNulls);
+                            nullScanWindow.addScannedPage(pageNulls);
+                            scannedPages++;
+                        }
+                        else {
+                            visitor.setPageNulls(null);
+                            nullScanWindow.addSkippedPage();
+                        }
+                    }
+                    pageReader.setPage(page);
+                    while (pageReader.nextRecord()) {
+                        outputSchema.visitColumns(visitor);
+                        pageBuilder.addRecord();
+                    }
+                }
+            }
+            pageBuilder.finish();
+            pageBuilder.close();
+            pageReader.close();
+            this.records = Pages.toObjects(outputSchema, output.pages);
+        }
+    }
+
+    private static void assertSameRecords(List<Object[]> expected, List<Object[]> actual)
+    {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertArrayEquals(expected.get(i), actual.get(i));
+        }
+    }
+
+    private PluginTask sparseAndDenseTask()
+    {
+        return taskFromYamlString(
+                "type: column",
+                "columns:",
+                "  - {name: sparse, default: 0}",
+                "  - {name: dense}");
+    }
+
+    private static Schema sparseAndDenseSchema()
+    {
+        return Schema.builder()
+                .add("sparse", LONG)
+                .add("dense", LONG)
+                .build();
+    }
+
+    // @return pages of which both columns have nulls and values
+    private static List<List<Object[]>> mixedPages(int pages)
+    {
+        List<List<Object[]>> mixed = new ArrayList<>();
+        for (int p = 0; p < pages; p++) {
+            List<Object[]> records = new ArrayList<>();
+            for (int i = 0; i < 100; i++) {
+                records.add(new Object[] {i % 20 == 0 ? Long.valueOf(i) : null, i % 2 == 0 ? Long.valueOf(i) : null});
+            }
+            mixed.add(records);
+        }
+        return mixed;
+    }
+
+    @Test
+    public void scanning_StopsWithoutUniformColumns()
+    {
+        PluginTask task = sparseAndDenseTask();
+        Schema inputSchema = sparseAndDenseSchema();
+        List<List<Object[]>> uniform = new ArrayList<>();
+        for (int p = 0; p < 3; p++) {
+            List<Object[]> records = new ArrayList<>();
+            for (int i = 0; i < 100; i++) {
+                records.add(new Object[] {null, Long.valueOf(i)});
+            }
+            uniform.add(records);
+        }
+
+        Run uniformRun = new Run(task, inputSchema, 1, uniform);
+        assertTrue(uniformRun.nullScanWindow.isScanning());
+        assertSameRecords(new Run(task, inputSchema, 0, uniform).records, uniformRun.records);
+        assertEquals(Long.valueOf(0), uniformRun.records.get(0)[0]);
+
+        List<List<Object[]>> mixed = mixedPages(3);
+        Run mixedRun = new Run(task, inputSchema, 1, mixed);
+        assertFalse(mixedRun.nullScanWindow.isScanning());
+        assertEquals(1, mixedRun.scannedPages);
+        assertSameRecords(new Run(task, inputSchema, 0, mixed).records, mixedRun.records);
+    }
+
+    @Test
+    public void scanning_RetriesAfterSkippedWindows()
+    {
+        PluginTask task = sparseAndDenseTask();
+        Schema inputSchema = sparseAndDenseSchema();
+        // a window of 2 pages scanned, and then another after 2 * RETRY_WINDOWS pages skipped
+        List<List<Object[]>> mixed = mixedPages(2 + 2 * NullScanWindow.RETRY_WINDOWS + 2);
+
+        Run mixedRun = new Run(task, inputSchema, 2, mixed);
+        assertEquals(4, mixedRun.scannedPages);
+        assertFalse(mixedRun.nullScanWindow.isScanning());
+        assertSameRecords(new Run(task, inputSchema, 0, mixed).records, mixedRun.records);
+    }
+
+    @Test
+    public void scanning_NeverRetriesAfterUnscannablePage()
+    {
+        PluginTask task = sparseAndDenseTask();
+        Schema inputSchema = sparseAndDenseSchema();
+        Schema outputSchema = ColumnFilterPlugin.buildOutputSchema(task, inputSchema);
+        PreparedPlan plan = new PreparedPlan(new ColumnPlan(task, inputSchema).compile(), inputSchema, outputSchema);
+        NullScanWindow subject = new NullScanWindow(plan, inputSchema, outputSchema, 2);
+        subject.addUnscannablePage();
+        assertFalse(subject.isScanning());
+        for (int i = 0; i < 4 * NullScanWindow.RETRY_WINDOWS; i++) {
+            subject.addSkippedPage();
+        }
+        assertFalse(subject.isScanning());
+    }
+}
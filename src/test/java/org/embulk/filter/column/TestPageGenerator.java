@@ -0,0 +1,155 @@
+/*
+ * Copyright 2026 The Embulk project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.embulk.filter.column;
+
+import org.embulk.spi.Page;
+import org.embulk.spi.Schema;
+import org.embulk.spi.util.Pages;
+import org.embulk.test.EmbulkTestRuntime;
+import org.junit.Rule;
+import org.junit.Test;
+import org.msgpack.value.MapValue;
+import org.msgpack.value.Value;
+import org.msgpack.value.ValueFactory;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.embulk.spi.type.Types.BOOLEAN;
+import static org.embulk.spi.type.Types.DOUBLE;
+import static org.embulk.spi.type.Types.JSON;
+import static org.embulk.spi.type.Types.LONG;
+import static org.embulk.spi.type.Types.STRING;
+import static org.embulk.spi.type.Types.TIMESTAMP;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TestPageGenerator
+{
+    @Rule
+    public EmbulkTestRuntime runtime = new EmbulkTestRuntime();
+
+    private static final Schema SCHEMA = Schema.builder()
+            .add("boolean", BOOLEAN)
+            .add("long", LONG)
+            .add("double", DOUBLE)
+            .add("string", STRING)
+            .add("timestamp", TIMESTAMP)
+            .add("json", JSON)
+            .build();
+
+    @Test
+    public void values_Deterministic()
+    {
+        PageGenerator generator = PageGenerator.builder(SCHEMA).seed(1).nullRatio(0.2).build();
+        assertArrayEquals(generator.values(100), generator.values(100));
+        assertArrayEquals(generator.values(100), PageGenerator.builder(SCHEMA).seed(1).nullRatio(0.2).build().values(100));
+        assertFalse(Arrays.equals(generator.values(100), PageGenerator.builder(SCHEMA).seed(2).nullRatio(0.2).build().values(100)));
+    }
+
+    @Test
+    public void records_NullRatio()
+    {
+        List<Object[]> records = PageGenerator.builder(SCHEMA)
+                .nullRatio(0.3)
+                .nullRatio("string", 1.0)
+                .nullRatio("json", 0.0)
+                .build()
+                .records(10000);
+        int nulls = 0;
+        for (Object[] record : records) {
+            if (record[1] == null) {
+                nulls++;
+            }
+            assertNull(record[3]);
+            assertNotNull(record[5]);
+        }
+        assertTrue("nulls: " + nulls, 2700 < nulls && nulls < 3300);
+    }
+
+    @Test
+    public void records_StringCardinality()
+    {
+        Schema schema = Schema.builder().add("string", STRING).build();
+        List<Object[]> records = PageGenerator.builder(schema)
+                .stringLength(3, 5)
+                .stringCardinality(10)
+                .stringDistribution(PageGenerator.Distribution.ZIPF)
+                .build()
+                .records(10000);
+        Map<Object, Integer> counts = new HashMap<>();
+        for (Object[] record : records) {
+            String value = (String) record[0];
+            assertTrue(value, 3 <= value.length() && value.length() <= 5);
+            counts.merge(value, 1, Integer::sum);
+        }
+        assertTrue(counts.size() <= 10);
+        // the first value appears 1/H(10) = 34% of all, and the last one 3.4%
+        int max = 0;
+        int min = Integer.MAX_VALUE;
+        for (int count : counts.values()) {
+            max = Math.max(max, count);
+            min = Math.min(min, count);
+        }
+        assertTrue("max: " + max + ", min: " + min, max > min * 5);
+    }
+
+    @Test
+    public void records_JsonShape()
+    {
+        Schema schema = Schema.builder().add("json", JSON).build();
+        List<Object[]> records = PageGenerator.builder(schema)
+                .jsonShape(3, 4, 2)
+                .jsonCardinality(5)
+                .build()
+                .records(100);
+        Set<Object> distinct = new HashSet<>();
+        for (Object[] record : records) {
+            distinct.add(record[0]);
+        }
+        assertTrue(distinct.size() <= 5);
+
+        MapValue root = ((Value) records.get(0)[0]).asMapValue();
+        assertEquals(5, root.size()); // k0 to k3, and arr
+        assertEquals(2, root.map().get(ValueFactory.newString("arr")).asArrayValue().size());
+        MapValue level1 = root.map().get(ValueFactory.newString("k0")).asMapValue();
+        assertEquals(4, level1.size());
+        MapValue level2 = level1.map().get(ValueFactory.newString("k0")).asMapValue();
+        assertEquals(4, level2.size());
+        assertTrue(level2.map().get(ValueFactory.newString("k0")).isIntegerValue());
+    }
+
+    @Test
+    public void pages()
+    {
+        PageGenerator generator = PageGenerator.builder(SCHEMA).seed(3).nullRatio(0.1).build();
+        List<Page> pages = generator.pages(runtime.getBufferAllocator(), 1000);
+        List<Object[]> records = Pages.toObjects(SCHEMA, pages);
+        assertEquals(1000, records.size());
+        List<Object[]> expected = generator.records(1000);
+        assertEquals(expected.get(999)[1], records.get(999)[1]);
+        assertEquals(expected.get(999)[3], records.get(999)[3]);
+    }
+}
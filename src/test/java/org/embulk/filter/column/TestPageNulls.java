@@ -0,0 +1,136 @@
+/*
+ * Copyright 2026 The Embulk project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.embulk.filter.column;
+
+import org.embulk.spi.Column;
+import org.embulk.spi.Page;
+import org.embulk.spi.PageReader;
+import org.embulk.spi.Schema;
+import org.embulk.test.EmbulkTestRuntime;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.embulk.spi.type.Types.BOOLEAN;
+import static org.embulk.spi.type.Types.DOUBLE;
+import static org.embulk.spi.type.Types.JSON;
+import static org.embulk.spi.type.Types.LONG;
+import static org.embulk.spi.type.Types.STRING;
+import static org.embulk.spi.type.Types.TIMESTAMP;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TestPageNulls
+{
+    @Rule
+    public EmbulkTestRuntime runtime = new EmbulkTestRuntime();
+
+    private static Schema schema(int columns)
+    {
+        Schema.Builder builder = Schema.builder();
+        for (int i = 0; i < columns; i++) {
+            switch (i % 6) {
+                case 0:
+                    builder.add("c" + i, BOOLEAN);
+                    break;
+                case 1:
+                    builder.add("c" + i, LONG);
+                    break;
+                case 2:
+                    builder.add("c" + i, DOUBLE);
+                    break;
+                case 3:
+                    builder.add("c" + i, STRING);
+                    break;
+                case 4:
+                    builder.add("c" + i, TIMESTAMP);
+                    break;
+                default:
+                    builder.add("c" + i, JSON);
+                    break;
+            }
+        }
+        return builder.build();
+    }
+
+    // Compares PageNulls with PageReader.isNull of every cell
+    private void assertSameWithPageReader(Schema schema, double nullRatio)
+    {
+        List<Page> pages = PageGenerator.builder(schema)
+                .seed(schema.getColumnCount())
+                .nullRatio(nullRatio)
+                .jsonShape(1, 2, 0)
+                .build()
+                .pages(runtime.getBufferAllocator(), 3000);
+        PageNulls pageNulls = new PageNulls(schema);
+        try (PageReader pageReader = new PageReader(schema)) {
+            for (Page page : pages) {
+                assertTrue(pageNulls.scan(page));
+                pageReader.setPage(page);
+                int[] nullCounts = new int[schema.getColumnCount()];
+                int record = 0;
+                while (pageReader.nextRecord()) {
+                    for (Column column : schema.getColumns()) {
+                        if (pageReader.isNull(column)) {
+                            nullCounts[column.getIndex()]++;
+                        }
+                    }
+                    record++;
+                }
+                assertEquals(record, pageNulls.getRecordCount());
+                for (Column column : schema.getColumns()) {
+                    int index = column.getIndex();
+                    assertEquals(nullCounts[index], pageNulls.getNullCount(index));
+                    assertEquals(nullCounts[index] == record, pageNulls.isAllNull(index));
+                    assertEquals(nullCounts[index] != 0, pageNulls.hasNull(index));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void scan_NarrowSchema()
+    {
+        for (double nullRatio : new double[] {0.0, 0.1, 0.5, 1.0}) {
+            assertSameWithPageReader(schema(6), nullRatio);
+        }
+    }
+
+    @Test
+    public void scan_WideSchema()
+    {
+        // over a word of 64 columns, and the last word is partial
+        for (int columns : new int[] {63, 64, 65, 130}) {
+            assertSameWithPageReader(schema(columns), 0.3);
+        }
+    }
+
+    @Test
+    public void scan_UnexpectedLayout()
+    {
+        PageNulls pageNulls = new PageNulls(schema(6));
+        assertFalse(pageNulls.scan(new byte[2], 0, 2));
+        // 1 record, but no bytes of the record
+        assertFalse(pageNulls.scan(new byte[] {1, 0, 0, 0}, 0, 4));
+        // no records, but bytes after them
+        assertFalse(pageNulls.scan(new byte[] {0, 0, 0, 0, 0}, 0, 5));
+        assertTrue(pageNulls.scan(new byte[] {9, 0, 0, 0, 0}, 1, 4));
+        assertEquals(0, pageNulls.getRecordCount());
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2026 The Embulk project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.embulk.filter.column;
+
+import org.embulk.spi.Column;
+import org.junit.Test;
+import org.msgpack.value.Value;
+import org.msgpack.value.ValueFactory;
+
+import java.util.List;
+
+import static org.embulk.spi.type.Types.JSON;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TestSlowJsonSampler
+{
+    @Test
+    public void offer_KeepsSlowest()
+    {
+        Column column = new Column(0, "json", JSON);
+        SlowJsonSampler subject = new SlowJsonSampler(3);
+        for (long i = 0; i < 100; i++) {
+            // 50 is the slowest, and 49 and 51 follow
+            long nanos = 1000 - Math.abs(50 - i) * 10;
+            subject.offer(column, i, ValueFactory.newInteger(i), nanos, 0);
+        }
+
+        List<SlowJsonSampler.Sample> samples = subject.getSamples();
+        assertEquals(3, samples.size());
+        assertEquals(50, samples.get(0).record);
+        assertEquals(1000, samples.get(0).nanos);
+        assertEquals(990, samples.get(1).nanos);
+        assertEquals(990, samples.get(2).nanos);
+        assertEquals("json", samples.get(0).columnName);
+        assertEquals("50", samples.get(0).value);
+    }
+
+    @Test
+    public void offer_TruncatesValue()
+    {
+        Value[] elements = new Value[1000];
+        for (int i = 0; i < elements.length; i++) {
+            elements[i] = ValueFactory.newInteger(i);
+        }
+        Value value = ValueFactory.newArray(elements);
+        SlowJsonSampler subject = new SlowJsonSampler(1);
+        subject.offer(new Column(0, "json", JSON), 0, value, 1, 1);
+
+        SlowJsonSampler.Sample sample = subject.getSamples().get(0);
+        assertEquals(value.toJson().length(), sample.size);
+        assertEquals(1, sample.depth);
+        assertTrue(sample.value.endsWith("..."));
+        assertEquals(SlowJsonSampler.MAX_VALUE_CHARS + 3, sample.value.length());
+    }
+}
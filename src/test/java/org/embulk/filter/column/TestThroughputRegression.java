@@ -0,0 +1,461 @@
+/*
+ * Copyright 2026 The Embulk project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.embulk.filter.column;
+
+import org.embulk.config.ConfigLoader;
+import org.embulk.config.ConfigSource;
+import org.embulk.config.TaskSource;
+import org.embulk.spi.ExecInternal;
+import org.embulk.spi.Page;
+import org.embulk.spi.PageOutput;
+import org.embulk.spi.Schema;
+import org.embulk.spi.type.Type;
+import org.embulk.spi.type.Types;
+import org.embulk.test.EmbulkTestRuntime;
+import org.embulk.test.PageTestUtils;
+import org.embulk.util.json.JsonParser;
+import org.embulk.util.timestamp.TimestampFormatter;
+import org.junit.Rule;
+import org.junit.Test;
+import org.msgpack.value.Value;
+import org.msgpack.value.ValueFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.embulk.spi.type.Types.DOUBLE;
+import static org.embulk.spi.type.Types.JSON;
+import static org.embulk.spi.type.Types.LONG;
+import static org.embulk.spi.type.Types.STRING;
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * End-to-end throughput of ColumnFilterPlugin through transaction and open, over every example/*.yml
+ * and larger generated configs.
+ *
+ * This runs only by ./gradlew throughputTest, which writes records/sec and bytes/sec of each scenario
+ * into the results file, and fails if records/sec of a scenario is lower than its baseline by more
+ * than the threshold of -PthroughputThreshold. Scenarios without a baseline are not checked, and then
+ * the test is reported as skipped by Assume.
+ * -PupdateThroughputBaseline writes the results into the baseline instead.
+ */
+public class TestThroughputRegression
+{
+    static final String BASELINE_PROPERTY = "org.embulk.filter.column.throughput.baseline";
+    static final String RESULTS_PROPERTY = "org.embulk.filter.column.throughput.results";
+    static final String THRESHOLD_PROPERTY = "org.embulk.filter.column.throughput.threshold";
+    static final String UPDATE_BASELINE_PROPERTY = "org.embulk.filter.column.throughput.update_baseline";
+
+    private static final int RECORDS = 100000;
+    // distinct rows of generated scenarios, which are repeated up to records
+    private static final int GENERATED_ROWS = 1000;
+    private static final int WARMUP_ITERATIONS = 3;
+    private static final int MEASURED_ITERATIONS = 5;
+
+    @Rule
+    public EmbulkTestRuntime runtime = new EmbulkTestRuntime();
+
+    private static class Scenario
+    {
+        final String name;
+        final Schema inputSchema;
+        final List<ConfigSource> filters;
+        final Object[] values;
+        final int records;
+
+        // repeats rows up to records
+        Scenario(String name, Schema inputSchema, List<ConfigSource> filters, List<Object[]> rows, int records)
+        {
+            this.name = name;
+            this.inputSchema = inputSchema;
+            this.filters = filters;
+            this.values = new Object[records * inputSchema.getColumnCount()];
+            this.records = records;
+            for (int i = 0; i < records; i++) {
+                Object[] row = rows.get(i % rows.size());
+                System.arraycopy(row, 0, values, i * row.length, row.length);
+            }
+        }
+    }
+
+    private static class Result
+    {
+        long records;
+        long bytes;
+        double recordsPerSecond;
+        double bytesPerSecond;
+    }
+
+    private static class DiscardPageOutput implements PageOutput
+    {
+        @Override
+        public void add(Page page)
+        {
+            page.release();
+        }
+
+        @Override
+        public void finish()
+        {
+        }
+
+        @Override
+        public void close()
+        {
+        }
+    }
+
+    @Test
+    public void throughput() throws IOException
+    {
+        File baselineFile = new File(System.getProperty(BASELINE_PROPERTY, "src/test/resources/throughput_baseline.json"));
+        File resultsFile = new File(System.getProperty(RESULTS_PROPERTY, "build/reports/throughput/results.json"));
+        double threshold = Double.parseDouble(System.getProperty(THRESHOLD_PROPERTY, "0.2"));
+
+        List<Scenario> scenarios = new ArrayList<>();
+        File[] examples = new File("example").listFiles((dir, name) -> name.endsWith(".yml"));
+        if (examples != null) {
+            Arrays.sort(examples);
+            for (File example : examples) {
+                scenarios.add(exampleScenario(example));
+            }
+        }
+        scenarios.add(wideScenario());
+        scenarios.add(jsonScenario());
+
+        Map<String, Result> results = new LinkedHashMap<>();
+        for (Scenario scenario : scenarios) {
+            Result result = measure(scenario);
+            results.put(scenario.name, result);
+            System.out.println(String.format("%s: %.0f records/sec, %.0f bytes/sec", scenario.name, result.recordsPerSecond, result.bytesPerSecond));
+        }
+        writeResults(resultsFile, results);
+        if (Boolean.parseBoolean(System.getProperty(UPDATE_BASELINE_PROPERTY, "false"))) {
+            writeResults(baselineFile, results);
+            return;
+        }
+
+        List<String> regressions = new ArrayList<>();
+        List<String> unchecked = new ArrayList<>();
+        Map<String, Double> baseline = readBaseline(baselineFile);
+        for (Map.Entry<String, Result> entry : results.entrySet()) {
+            Double expected = baseline.get(entry.getKey());
+            if (expected == null) {
+                unchecked.add(entry.getKey());
+                continue;
+            }
+            double ratio = entry.getValue().recordsPerSecond / expected;
+            if (ratio < 1.0 - threshold) {
+                regressions.add(String.format("%s: %.0f records/sec against baseline %.0f (%.1f%%)",
+                        entry.getKey(), entry.getValue().recordsPerSecond, expected, (ratio - 1.0) * 100.0));
+            }
+        }
+        if (!regressions.isEmpty()) {
+            fail(String.format("Throughput regressed by more than %.0f%%:%n%s", threshold * 100.0, String.join("\n", regressions)));
+        }
+        assumeTrue(String.format("No baseline in %s, to be recorded by -PupdateThroughputBaseline: %s", baselineFile, String.join(", ", unchecked)),
+                unchecked.isEmpty());
+    }
+
+    private Result measure(Scenario scenario)
+    {
+        double[] recordsPerSecond = new double[MEASURED_ITERATIONS];
+        long bytes = 0;
+        for (int i = 0; i < WARMUP_ITERATIONS + MEASURED_ITERATIONS; i++) {
+            List<Page> pages = PageTestUtils.buildPage(runtime.getBufferAllocator(), scenario.inputSchema, scenario.values);
+            bytes = 0;
+            for (Page page : pages) {
+                bytes += page.buffer().limit();
+            }
+            long started = System.nanoTime();
+            run(scenario, pages);
+            long elapsed = System.nanoTime() - started;
+            if (i >= WARMUP_ITERATIONS) {
+                recordsPerSecond[i - WARMUP_ITERATIONS] = scenario.records * 1e9 / elapsed;
+            }
+        }
+        Arrays.sort(recordsPerSecond);
+        Result result = new Result();
+        result.records = scenario.records;
+        result.bytes = bytes;
+        result.recordsPerSecond = recordsPerSecond[MEASURED_ITERATIONS / 2]; // median
+        result.bytesPerSecond = result.recordsPerSecond * bytes / scenario.records;
+        return result;
+    }
+
+    // runs transaction of each filter in the chain, and then pushes pages through open of them
+    private void run(Scenario scenario, List<Page> pages)
+    {
+        List<TaskSource> taskSources = new ArrayList<>();
+        List<Schema> schemas = new ArrayList<>();
+        schemas.add(scenario.inputSchema);
+        transaction(scenario.filters, taskSources, schemas, () -> {
+            PageOutput output = new DiscardPageOutput();
+            for (int i = taskSources.size() - 1; i >= 0; i--) {
+                output = new ColumnFilterPlugin().open(taskSources.get(i), schemas.get(i), schemas.get(i + 1), output);
+            }
+            try {
+                for (Page page : pages) {
+                    output.add(page);
+                }
+                output.finish();
+            }
+            finally {
+                output.close();
+            }
+        });
+    }
+
+    private void transaction(List<ConfigSource> filters, List<TaskSource> taskSources, List<Schema> schemas, Runnable control)
+    {
+        int index = taskSources.size();
+        if (index == filters.size()) {
+            control.run();
+            return;
+        }
+        new ColumnFilterPlugin().transaction(filters.get(index), schemas.get(index), (taskSource, outputSchema) -> {
+            taskSources.add(taskSource);
+            schemas.add(outputSchema);
+            transaction(filters, taskSources, schemas, control);
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private Scenario exampleScenario(File example) throws IOException
+    {
+        ConfigLoader loader = new ConfigLoader(ExecInternal.getModelManager());
+        ConfigSource config = loader.fromYamlString(new String(Files.readAllBytes(example.toPath()), StandardCharsets.UTF_8));
+        ConfigSource in = config.getNested("in");
+        ConfigSource parser = in.getNested("parser");
+
+        Schema.Builder builder = Schema.builder();
+        List<TimestampFormatter> formatters = new ArrayList<>();
+        for (Map<String, Object> column : (List<Map<String, Object>>) parser.get(List.class, "columns")) {
+            Type type = typeOf((String) column.get("type"));
+            builder.add((String) column.get("name"), type);
+            Object format = column.get("format");
+            formatters.add(format == null ? null : TimestampFormatter.builder((String) format, true).setDefaultZoneFromString("UTC").build());
+        }
+        Schema inputSchema = builder.build();
+
+        List<ConfigSource> filters = new ArrayList<>();
+        for (Map<String, Object> filter : (List<Map<String, Object>>) config.get(List.class, "filters")) {
+            ConfigSource filterConfig = runtime.getExec().newConfigSource();
+            for (Map.Entry<String, Object> entry : filter.entrySet()) {
+                filterConfig.set(entry.getKey(), entry.getValue());
+            }
+            filters.add(filterConfig);
+        }
+
+        List<Object[]> rows = readRows(new File(in.get(String.class, "path_prefix")), parser, inputSchema, formatters);
+        return new Scenario(example.getPath(), inputSchema, filters, rows, RECORDS);
+    }
+
+    // reads the data file of an example, with delimiter, quotes of '"', escapes of '\' and null_string of the csv parser
+    private List<Object[]> readRows(File file, ConfigSource parser, Schema schema, List<TimestampFormatter> formatters) throws IOException
+    {
+        String delimiter = parser.get(String.class, "delimiter", ",");
+        char separator = "\\t".equals(delimiter) ? '\t' : delimiter.charAt(0);
+        String nullString = parser.get(String.class, "null_string", null);
+        int skipHeaderLines = parser.get(Integer.class, "skip_header_lines", 0);
+        String commentLineMarker = parser.get(String.class, "comment_line_marker", null);
+        JsonParser jsonParser = new JsonParser();
+
+        List<Object[]> rows = new ArrayList<>();
+        List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+        for (String line : lines.subList(Math.min(skipHeaderLines, lines.size()), lines.size())) {
+            if (line.isEmpty() || (commentLineMarker != null && line.startsWith(commentLineMarker))) {
+                continue;
+            }
+            List<String> fields = splitLine(line, separator);
+            Object[] row = new Object[schema.getColumnCount()];
+            for (int i = 0; i < row.length && i < fields.size(); i++) {
+                String field = fields.get(i);
+                if (field == null || field.isEmpty() || field.equals(nullString)) {
+                    continue;
+                }
+                Type type = schema.getColumnType(i);
+                if (type == Types.BOOLEAN) {
+                    row[i] = Boolean.valueOf(field);
+                }
+                else if (type == LONG) {
+                    row[i] = Long.valueOf(field);
+                }
+                else if (type == DOUBLE) {
+                    row[i] = Double.valueOf(field);
+                }
+                else if (type == JSON) {
+                    row[i] = jsonParser.parse(field);
+                }
+                else if (type == Types.TIMESTAMP) {
+                    row[i] = formatters.get(i).parse(field);
+                }
+                else {
+                    row[i] = field;
+                }
+            }
+            rows.add(row);
+        }
+        return rows;
+    }
+
+    private static List<String> splitLine(String line, char separator)
+    {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted && c == '\\' && i + 1 < line.length()) {
+                field.append(line.charAt(++i));
+            }
+            else if (c == '"') {
+                quoted = !quoted;
+            }
+            else if (!quoted && c == separator) {
+                fields.add(field.toString());
+                field.setLength(0);
+            }
+            else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+    private static Type typeOf(String name)
+    {
+        switch (name) {
+            case "boolean":
+                return Types.BOOLEAN;
+            case "long":
+                return LONG;
+            case "double":
+                return DOUBLE;
+            case "string":
+                return STRING;
+            case "timestamp":
+                return Types.TIMESTAMP;
+            case "json":
+                return JSON;
+            default:
+                throw new IllegalArgumentException("Unknown type: " + name);
+        }
+    }
+
+    // 200 columns of long, string and double, where columns keeps and renames half of them
+    private Scenario wideScenario()
+    {
+        int width = 200;
+        int records = RECORDS / 10;
+        Schema.Builder builder = Schema.builder();
+        List<String> lines = new ArrayList<>();
+        lines.add("type: column");
+        lines.add("columns:");
+        for (int i = 0; i < width; i++) {
+            builder.add("c" + i, i % 3 == 0 ? LONG : i % 3 == 1 ? STRING : DOUBLE);
+            if (i % 2 == 0) {
+                lines.add(String.format("  - {name: r%d, src: c%d}", i, i));
+            }
+        }
+        Schema inputSchema = builder.build();
+
+        List<Object[]> rows = PageGenerator.builder(inputSchema)
+                .nullRatio(0.1)
+                .stringCardinality(1000)
+                .build()
+                .records(GENERATED_ROWS);
+        return new Scenario("generated/wide", inputSchema, Arrays.asList(configFromYamlLines(lines)), rows, records);
+    }
+
+    // json documents of 3 levels of maps with 20 keys and an array of 20 maps, where paths are kept, dropped and added
+    private Scenario jsonScenario()
+    {
+        Schema inputSchema = Schema.builder().add("id", LONG).add("json", JSON).build();
+        List<String> lines = new ArrayList<>();
+        lines.add("type: column");
+        lines.add("add_columns:");
+        lines.add("  - {name: \"$.json.k0.k0.added\", type: string, default: added}");
+        lines.add("drop_columns:");
+        lines.add("  - {name: \"$.json.k1\"}");
+        lines.add("  - {name: \"$.json.arr[*].k1\"}");
+
+        List<Object[]> rows = PageGenerator.builder(inputSchema)
+                .jsonShape(3, 20, 20)
+                .stringCardinality(100)
+                .build()
+                .records(GENERATED_ROWS);
+        return new Scenario("generated/json", inputSchema, Arrays.asList(configFromYamlLines(lines)), rows, RECORDS);
+    }
+
+    private ConfigSource configFromYamlLines(List<String> lines)
+    {
+        ConfigLoader loader = new ConfigLoader(ExecInternal.getModelManager());
+        return loader.fromYamlString(String.join("\n", lines) + "\n");
+    }
+
+    private static Map<String, Double> readBaseline(File file) throws IOException
+    {
+        Map<String, Double> baseline = new LinkedHashMap<>();
+        if (!file.exists()) {
+            return baseline;
+        }
+        Value json = new JsonParser().parse(new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8));
+        Value scenarios = json.asMapValue().map().get(ValueFactory.newString("scenarios"));
+        if (scenarios == null) {
+            return baseline;
+        }
+        for (Map.Entry<Value, Value> scenario : scenarios.asMapValue().map().entrySet()) {
+            Value recordsPerSecond = scenario.getValue().asMapValue().map().get(ValueFactory.newString("records_per_second"));
+            if (recordsPerSecond != null) {
+                baseline.put(scenario.getKey().asStringValue().asString(), recordsPerSecond.asNumberValue().toDouble());
+            }
+        }
+        return baseline;
+    }
+
+    private static void writeResults(File file, Map<String, Result> results) throws IOException
+    {
+        Map<Value, Value> scenarios = new LinkedHashMap<>();
+        for (Map.Entry<String, Result> entry : results.entrySet()) {
+            Result result = entry.getValue();
+            Map<Value, Value> map = new LinkedHashMap<>();
+            map.put(ValueFactory.newString("records"), ValueFactory.newInteger(result.records));
+            map.put(ValueFactory.newString("bytes"), ValueFactory.newInteger(result.bytes));
+            map.put(ValueFactory.newString("records_per_second"), ValueFactory.newFloat(result.recordsPerSecond));
+            map.put(ValueFactory.newString("bytes_per_second"), ValueFactory.newFloat(result.bytesPerSecond));
+            scenarios.put(ValueFactory.newString(entry.getKey()), ValueFactory.newMap(map));
+        }
+        Map<Value, Value> json = new LinkedHashMap<>();
+        json.put(ValueFactory.newString("scenarios"), ValueFactory.newMap(scenarios));
+
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null) {
+            Files.createDirectories(parent.toPath());
+        }
+        Files.write(file.toPath(), (ValueFactory.newMap(json).toJson() + "\n").getBytes(StandardCharsets.UTF_8));
+    }
+}